@@ -0,0 +1,107 @@
+package io.github.leleueri.keyring.benchmarks;
+
+import io.github.leleueri.keyring.MainVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.JksOptions;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.ServerSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.leleueri.keyring.ConfigConstants.*;
+
+/**
+ * Latency of a GET of a key by a single client, on a connection kept alive or on a new connection per request
+ * (keepAlive=false : the TCP and TLS handshakes are part of each request), with the "default" or the "performance"
+ * HTTP profile of the server. The same key is read by all the requests, it is served from the cache : the
+ * latency is the one of the connection and of the HTTP processing.
+ *
+ * With tls=mtls the client authenticates with its certificate (ssl.client.authentication), the stores are generated
+ * by {@link Fixtures#tlsStores()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = Fixtures.JVM_ARGS)
+public class ConnectionBenchmark {
+
+    @Param({"1000"})
+    public int size;
+
+    @Param({"none", "tls", "mtls"})
+    public String tls;
+
+    @Param({SERVER_HTTP_PROFILE_DEFAULT, SERVER_HTTP_PROFILE_PERFORMANCE})
+    public String profile;
+
+    @Param({"true", "false"})
+    public boolean keepAlive;
+
+    private String keystore;
+    private String alias;
+    private Vertx vertx;
+    private HttpClient client;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        keystore = Fixtures.keystoreCopy(size);
+        alias = Fixtures.alias(0);
+        JsonObject config = Fixtures.config(keystore, port).put(SERVER_HTTP_PROFILE, profile);
+        HttpClientOptions clientOptions = new HttpClientOptions().setKeepAlive(keepAlive).setMaxPoolSize(1)
+                .setDefaultHost("localhost").setDefaultPort(port);
+        if (!tls.equals("none")) {
+            String[] stores = Fixtures.tlsStores();
+            config.put(SERVER_USE_SSL, true)
+                    .put(SERVER_SSL_KEYSTORE_TYPE, SERVER_SSL_TYPE_JKS)
+                    .put(SERVER_SSL_KEYSTORE_PATH, stores[0])
+                    .put(SERVER_SSL_KEYSTORE_PWD, Fixtures.PWD);
+            clientOptions.setSsl(true).setTrustStoreOptions(new JksOptions().setPath(stores[1]).setPassword(Fixtures.PWD));
+            if (tls.equals("mtls")) {
+                config.put(SERVER_SSL_CLIENT_AUTH, true)
+                        .put(SERVER_SSL_TRUSTSTORE_TYPE, SERVER_SSL_TYPE_JKS)
+                        .put(SERVER_SSL_TRUSTSTORE_PATH, stores[0])
+                        .put(SERVER_SSL_TRUSTSTORE_PWD, Fixtures.PWD);
+                clientOptions.setKeyStoreOptions(new JksOptions().setPath(stores[1]).setPassword(Fixtures.PWD));
+            }
+        }
+        vertx = Vertx.vertx();
+        CompletableFuture<String> deployed = new CompletableFuture<>();
+        vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config), r -> {
+            if (r.succeeded()) {
+                deployed.complete(r.result());
+            } else {
+                deployed.completeExceptionally(r.cause());
+            }
+        });
+        deployed.get(1, TimeUnit.MINUTES);
+        client = vertx.createHttpClient(clientOptions);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.close();
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        vertx.close(r -> closed.complete(null));
+        closed.get(1, TimeUnit.MINUTES);
+        Fixtures.delete(keystore);
+    }
+
+    @Benchmark
+    public int get() throws Exception {
+        CompletableFuture<Integer> status = new CompletableFuture<>();
+        client.getNow("/keyring/secret-key/" + alias,
+                response -> response.bodyHandler(body -> status.complete(response.statusCode())));
+        return status.get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,103 @@
+package io.github.leleueri.keyring.benchmarks;
+
+import io.github.leleueri.keyring.KeystoreReaderVerticle;
+import io.github.leleueri.keyring.KeystoreVerticle;
+import io.github.leleueri.keyring.bean.ListQuery;
+import io.github.leleueri.keyring.bean.SecretKey;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.github.leleueri.keyring.KeystoreVerticle.*;
+
+/**
+ * Round trips through the event bus to the keystore verticles, as done by the HTTP verticle.
+ * Run it with several threads (-t) to measure the concurrency of the reader verticles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = Fixtures.JVM_ARGS)
+public class EventBusBenchmark {
+
+    @Param({"1000"})
+    public int size;
+
+    private String keystore;
+    private String[] aliases;
+    private Vertx vertx;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        keystore = Fixtures.keystoreCopy(size);
+        aliases = Fixtures.aliases(size);
+        vertx = Vertx.vertx();
+        DeploymentOptions options = new DeploymentOptions().setWorker(true).setConfig(Fixtures.config(keystore, 0));
+        CompletableFuture<String> deployed = new CompletableFuture<>();
+        vertx.deployVerticle(KeystoreVerticle.class.getName(), options, writer -> {
+            if (writer.failed()) {
+                deployed.completeExceptionally(writer.cause());
+                return;
+            }
+            DeploymentOptions readers = new DeploymentOptions(options).setInstances(Runtime.getRuntime().availableProcessors());
+            vertx.deployVerticle(KeystoreReaderVerticle.class.getName(), readers, r -> {
+                if (r.succeeded()) {
+                    deployed.complete(r.result());
+                } else {
+                    deployed.completeExceptionally(r.cause());
+                }
+            });
+        });
+        deployed.get(1, TimeUnit.MINUTES);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        vertx.close(r -> closed.complete(null));
+        closed.get(1, TimeUnit.MINUTES);
+        Fixtures.delete(keystore);
+    }
+
+    private Object request(String address, Object body) throws Exception {
+        CompletableFuture<Object> reply = new CompletableFuture<>();
+        vertx.eventBus().send(address, body, r -> {
+            if (r.succeeded()) {
+                reply.complete(((Message<?>) r.result()).body());
+            } else {
+                reply.completeExceptionally(r.cause());
+            }
+        });
+        return reply.get(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public Object getSecretKey() throws Exception {
+        return request(GET_SECRET_KEY, Fixtures.randomAlias(aliases));
+    }
+
+    @Benchmark
+    public Object listAliases() throws Exception {
+        ListQuery query = new ListQuery();
+        query.setCursor(Fixtures.randomAlias(aliases));
+        query.setLimit(100);
+        return request(LIST_ALIASES, query);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object postSecretKey() throws Exception {
+        SecretKey key = Fixtures.newKey("bench-" + sequence.incrementAndGet());
+        return request(POST_SECRET_KEY, key);
+    }
+}
@@ -0,0 +1,229 @@
+package io.github.leleueri.keyring.benchmarks;
+
+import io.github.leleueri.keyring.bean.SecretKey;
+import io.github.leleueri.keyring.metrics.KeyringMetrics;
+import io.github.leleueri.keyring.provider.KeyStorage;
+import io.github.leleueri.keyring.provider.KeystoreProvider;
+import io.github.leleueri.keyring.provider.LogStorage;
+import io.github.leleueri.keyring.provider.MappedStorage;
+import io.github.leleueri.keyring.provider.SecretKeyCache;
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static io.github.leleueri.keyring.ConfigConstants.*;
+
+/**
+ * Keystores used by the benchmarks.
+ *
+ * A keystore of N keys (aliases "key-00000000" to "key-<N-1>") is generated once and kept in the fixture directory
+ * (system property "keyring.bench.fixtures", default target/fixtures), each benchmark trial works on a copy.
+ * Sealing a JCEKS key is slow by design, the benchmarks are forked with a lower iteration count (see
+ * {@link #JVM_ARGS}) so the largest keystores can be generated in minutes instead of hours.
+ */
+public final class Fixtures {
+
+    public static final String PWD = "benchmarkpassword";
+    public static final String KEY_PWD = "benchmarkkeypassword";
+
+    /**
+     * Arguments of the forked JVMs : 10000 is the lowest iteration count accepted by the JCEKS key protection
+     * (200000 by default).
+     */
+    public static final String JVM_ARGS = "-Djdk.jceks.iterationCount=10000";
+
+    private static final int IMPORT_BATCH = 1000;
+
+    private static final Logger LOGGER = Logger.getLogger(Fixtures.class.getName());
+
+    private Fixtures() {
+    }
+
+    public static String alias(int index) {
+        return String.format("key-%08d", index);
+    }
+
+    /**
+     * @return the aliases of a keystore of the given size, built once so the benchmarks don't measure their formatting
+     */
+    public static String[] aliases(int size) {
+        String[] aliases = new String[size];
+        for (int i = 0; i < size; i++) {
+            aliases[i] = alias(i);
+        }
+        return aliases;
+    }
+
+    public static String randomAlias(String[] aliases) {
+        return aliases[ThreadLocalRandom.current().nextInt(aliases.length)];
+    }
+
+    public static SecretKey newKey(String alias) {
+        byte[] material = new byte[16];
+        ThreadLocalRandom.current().nextBytes(material);
+        SecretKey key = new SecretKey();
+        key.setAlias(alias);
+        key.setAlgorithm("AES");
+        key.setB64Key(Base64.getEncoder().encodeToString(material));
+        return key;
+    }
+
+    /**
+     * @return the path of a copy of the keystore of the given size, in a new temporary directory
+     */
+    public static String keystoreCopy(int size) throws IOException {
+        Path fixture = fixture(size);
+        Path directory = Files.createTempDirectory("keyring-bench");
+        Path copy = directory.resolve(fixture.getFileName());
+        Files.copy(fixture, copy, StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(Paths.get(fixture + ".index"), Paths.get(copy + ".index"), StandardCopyOption.REPLACE_EXISTING);
+        return copy.toString();
+    }
+
+    /**
+     * @param type "LOG" (see {@link LogStorage}) or "MMAP" (see {@link MappedStorage})
+     * @return the path of a new storage of the given size, in a new temporary directory. Unlike a JCEKS keystore,
+     * these storages are fast to write so they are not kept as fixtures.
+     */
+    public static String storage(String type, int size) throws IOException {
+        Path directory = Files.createTempDirectory("keyring-bench");
+        String path = directory.resolve("keyring-" + size + ".db").toString();
+        try (KeystoreProvider provider = new KeystoreProvider(openStorage(type, path), new SecretKeyCache(0, 0), new KeyringMetrics())) {
+            for (int i = 0; i < size; i += IMPORT_BATCH) {
+                List<SecretKey> batch = new ArrayList<>(IMPORT_BATCH);
+                for (int j = i; j < Math.min(size, i + IMPORT_BATCH); j++) {
+                    batch.add(newKey(alias(j)));
+                }
+                provider.importSecretKeys(batch);
+            }
+        }
+        return path;
+    }
+
+    /**
+     * @return the path of a copy of a storage created by {@link #storage(String, int)}, with all its files, in a new
+     * temporary directory
+     */
+    public static String storageCopy(String path) throws IOException {
+        Path source = Paths.get(path);
+        Path directory = Files.createTempDirectory("keyring-bench");
+        try (Stream<Path> files = Files.list(source.getParent())) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, directory.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        return directory.resolve(source.getFileName()).toString();
+    }
+
+    /**
+     * JKS stores of a server (CN=localhost) and of a client, generated once with keytool in the fixture directory.
+     * Each store holds its key pair and the certificate of the peer, it is used as key store and as trust store.
+     *
+     * @return the path of the server store and the path of the client store, their password is {@link #PWD}
+     */
+    public static synchronized String[] tlsStores() throws IOException, InterruptedException {
+        Path directory = Paths.get(System.getProperty("keyring.bench.fixtures", "target/fixtures")).resolve("tls");
+        Path server = directory.resolve("server.jks");
+        Path client = directory.resolve("client.jks");
+        if (!Files.exists(server) || !Files.exists(client)) {
+            Files.createDirectories(directory);
+            for (Path file : new Path[]{server, client}) {
+                Files.deleteIfExists(file);
+            }
+            LOGGER.info("Generate the TLS stores of the benchmarks");
+            keytool("-genkeypair", "-alias", "server", "-keyalg", "RSA", "-keysize", "2048", "-validity", "3650",
+                    "-dname", "CN=localhost", "-ext", "SAN=dns:localhost", "-keystore", server.toString());
+            keytool("-genkeypair", "-alias", "client", "-keyalg", "RSA", "-keysize", "2048", "-validity", "3650",
+                    "-dname", "CN=keyring-bench-client", "-keystore", client.toString());
+            Path serverCert = directory.resolve("server.cer");
+            Path clientCert = directory.resolve("client.cer");
+            keytool("-exportcert", "-alias", "server", "-keystore", server.toString(), "-file", serverCert.toString());
+            keytool("-exportcert", "-alias", "client", "-keystore", client.toString(), "-file", clientCert.toString());
+            keytool("-importcert", "-noprompt", "-alias", "client", "-keystore", server.toString(), "-file", clientCert.toString());
+            keytool("-importcert", "-noprompt", "-alias", "server", "-keystore", client.toString(), "-file", serverCert.toString());
+        }
+        return new String[]{server.toString(), client.toString()};
+    }
+
+    private static void keytool(String... args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "keytool").toString());
+        command.addAll(Arrays.asList(args));
+        command.addAll(Arrays.asList("-storetype", "JKS", "-storepass", PWD, "-keypass", PWD));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output;
+        try (Scanner scanner = new Scanner(process.getInputStream()).useDelimiter("\\A")) {
+            output = scanner.hasNext() ? scanner.next() : "";
+        }
+        if (process.waitFor() != 0) {
+            throw new IOException("keytool " + args[0] + " failed : " + output);
+        }
+    }
+
+    public static KeyStorage openStorage(String type, String path) {
+        if (type.equals("MMAP")) {
+            return new MappedStorage(path, KEY_PWD, 10_000, new KeyringMetrics());
+        }
+        return new LogStorage(path, KEY_PWD, 10_000, new KeyringMetrics());
+    }
+
+    public static void delete(String keystoreCopy) throws IOException {
+        Path directory = Paths.get(keystoreCopy).getParent();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    private static synchronized Path fixture(int size) throws IOException {
+        Path directory = Paths.get(System.getProperty("keyring.bench.fixtures", "target/fixtures"));
+        Path fixture = directory.resolve("keyring-" + size + ".jceks");
+        if (Files.exists(fixture) && Files.exists(Paths.get(fixture + ".index"))) {
+            return fixture;
+        }
+        Files.createDirectories(directory);
+        LOGGER.info("Generate the keystore fixture of " + size + " keys, it may take a while");
+
+        // generated under a temporary name so an interrupted generation is not taken as a fixture
+        Path generated = directory.resolve("generating-" + size + ".jceks");
+        Files.deleteIfExists(generated);
+        Files.deleteIfExists(Paths.get(generated + ".index"));
+        try (KeystoreProvider provider = new KeystoreProvider("JCEKS", PWD, generated.toString(), KEY_PWD)) {
+            for (int i = 0; i < size; i += IMPORT_BATCH) {
+                List<SecretKey> batch = new ArrayList<>(IMPORT_BATCH);
+                for (int j = i; j < Math.min(size, i + IMPORT_BATCH); j++) {
+                    batch.add(newKey(alias(j)));
+                }
+                provider.importSecretKeys(batch);
+            }
+        }
+        Files.move(Paths.get(generated + ".index"), Paths.get(fixture + ".index"), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(generated, fixture, StandardCopyOption.REPLACE_EXISTING);
+        return fixture;
+    }
+
+    /**
+     * @return the configuration of the keyring verticles for a keystore
+     */
+    public static JsonObject config(String keystore, int port) {
+        return new JsonObject()
+                .put(SERVER_HTTP_PORT, port)
+                .put(APP_KEYSTORE_PATH, keystore)
+                .put(APP_KEYSTORE_PWD, PWD)
+                .put(APP_KEYSTORE_SECRET_KEY_PWD, KEY_PWD);
+    }
+}
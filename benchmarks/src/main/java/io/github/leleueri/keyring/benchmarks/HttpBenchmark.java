@@ -0,0 +1,139 @@
+package io.github.leleueri.keyring.benchmarks;
+
+import io.github.leleueri.keyring.ConfigConstants;
+import io.github.leleueri.keyring.MainVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.ServerSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End to end load of the HTTP API : each benchmark thread is a client waiting for its response before sending
+ * the next request (closed loop), through a pool of keep-alive connections.
+ *
+ * The "mixed" group runs 7 readers for 1 writer, "get" only reads. "multiGet" reads batchSize keys per request, to
+ * compare with batchSize requests of "get".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = Fixtures.JVM_ARGS)
+public class HttpBenchmark {
+
+    @Param({"1000"})
+    public int size;
+
+    /**
+     * Instances of the HTTP verticle, 0 for the default (the number of cores)
+     */
+    @Param({"0"})
+    public int httpInstances;
+
+    @Param({"32"})
+    public int batchSize;
+
+    private String keystore;
+    private String[] aliases;
+    private Vertx vertx;
+    private HttpClient client;
+    private int port;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        keystore = Fixtures.keystoreCopy(size);
+        aliases = Fixtures.aliases(size);
+        vertx = Vertx.vertx();
+        CompletableFuture<String> deployed = new CompletableFuture<>();
+        JsonObject config = Fixtures.config(keystore, port);
+        if (httpInstances > 0) {
+            config.put(ConfigConstants.SERVER_HTTP_INSTANCES, httpInstances);
+        }
+        vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config), r -> {
+            if (r.succeeded()) {
+                deployed.complete(r.result());
+            } else {
+                deployed.completeExceptionally(r.cause());
+            }
+        });
+        deployed.get(1, TimeUnit.MINUTES);
+        client = vertx.createHttpClient(new HttpClientOptions().setKeepAlive(true).setMaxPoolSize(64)
+                .setDefaultHost("localhost").setDefaultPort(port));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.close();
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        vertx.close(r -> closed.complete(null));
+        closed.get(1, TimeUnit.MINUTES);
+        Fixtures.delete(keystore);
+    }
+
+    private int getKey() throws Exception {
+        CompletableFuture<Integer> status = new CompletableFuture<>();
+        client.getNow("/keyring/secret-key/" + Fixtures.randomAlias(aliases),
+                response -> response.bodyHandler(body -> status.complete(response.statusCode())));
+        return status.get(10, TimeUnit.SECONDS);
+    }
+
+    private int getKeys() throws Exception {
+        CompletableFuture<Integer> status = new CompletableFuture<>();
+        String[] batch = new String[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            batch[i] = Fixtures.randomAlias(aliases);
+        }
+        client.post("/keyring/secret-keys/get", response -> response.bodyHandler(b -> status.complete(response.statusCode())))
+                .end(Json.encode(batch));
+        return status.get(10, TimeUnit.SECONDS);
+    }
+
+    private int postKey() throws Exception {
+        CompletableFuture<Integer> status = new CompletableFuture<>();
+        String body = Json.encode(Fixtures.newKey("bench-" + sequence.incrementAndGet()));
+        client.post("/keyring/secret-keys", response -> response.bodyHandler(b -> status.complete(response.statusCode())))
+                .putHeader("content-type", "application/json")
+                .end(body);
+        return status.get(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int get() throws Exception {
+        return getKey();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int multiGet() throws Exception {
+        return getKeys();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(7)
+    public int mixedGet() throws Exception {
+        return getKey();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public int mixedPost() throws Exception {
+        return postKey();
+    }
+}
@@ -0,0 +1,86 @@
+package io.github.leleueri.keyring.benchmarks;
+
+import io.github.leleueri.keyring.metrics.KeyringMetrics;
+import io.github.leleueri.keyring.provider.JceksStorage;
+import io.github.leleueri.keyring.provider.KeystoreProvider;
+import io.github.leleueri.keyring.provider.SecretKeyCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write path of the JCEKS storage ({@link JceksStorage}) across keystore sizes.
+ *
+ * deleteSecretKey doesn't seal any key, it measures the persistence alone : the whole keystore file in SNAPSHOT
+ * mode, a journal record in JOURNAL mode. reloadKeystore is the load of the keystore file, which the SNAPSHOT writes
+ * no longer pay after persisting : the in memory keystore stays the reference.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = Fixtures.JVM_ARGS)
+public class KeystoreWriteBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    @Param({"SNAPSHOT", "JOURNAL"})
+    public JceksStorage.StorageMode mode;
+
+    private String keystore;
+    private byte[] content;
+    private KeystoreProvider provider;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        keystore = Fixtures.keystoreCopy(size);
+        content = Files.readAllBytes(Paths.get(keystore));
+        JceksStorage storage = new JceksStorage("JCEKS", Fixtures.PWD, keystore, Fixtures.KEY_PWD, mode, 10_000, new KeyringMetrics());
+        provider = new KeystoreProvider(storage, new SecretKeyCache(0, 0), new KeyringMetrics());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        provider.close();
+        Fixtures.delete(keystore);
+    }
+
+    @Benchmark
+    public String addSecretKey() {
+        return provider.addSecretKey(Fixtures.newKey("bench-" + sequence.incrementAndGet()));
+    }
+
+    /**
+     * Key added before each invocation of deleteSecretKey, the addition is not measured.
+     */
+    @State(Scope.Thread)
+    public static class AddedKey {
+        private String alias;
+
+        @Setup(Level.Invocation)
+        public void add(KeystoreWriteBenchmark benchmark) {
+            alias = benchmark.provider.addSecretKey(Fixtures.newKey("bench-" + benchmark.sequence.incrementAndGet()));
+        }
+    }
+
+    @Benchmark
+    public void deleteSecretKey(AddedKey added) {
+        provider.deleteSecretKey(added.alias);
+    }
+
+    @Benchmark
+    public KeyStore reloadKeystore() throws Exception {
+        KeyStore loaded = KeyStore.getInstance("JCEKS");
+        loaded.load(new ByteArrayInputStream(content), Fixtures.PWD.toCharArray());
+        return loaded;
+    }
+}
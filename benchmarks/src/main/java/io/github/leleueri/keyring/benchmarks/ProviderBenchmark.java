@@ -0,0 +1,117 @@
+package io.github.leleueri.keyring.benchmarks;
+
+import io.github.leleueri.keyring.bean.ListQuery;
+import io.github.leleueri.keyring.bean.SecretKey;
+import io.github.leleueri.keyring.metrics.KeyringMetrics;
+import io.github.leleueri.keyring.provider.KeystoreProvider;
+import io.github.leleueri.keyring.provider.SecretKeyCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Operations of the {@link KeystoreProvider} across keystore sizes, without the event bus.
+ *
+ * The decoded key cache is disabled by default (parameter cacheSize) so getSecretKey measures the unsealing.
+ * With the JCEKS storage the writes persist the whole keystore, their latency grows with the size of the keystore.
+ * With the LOG storage (see {@link io.github.leleueri.keyring.provider.LogStorage}) and the MMAP storage (see
+ * {@link io.github.leleueri.keyring.provider.MappedStorage}) they append to a journal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = Fixtures.JVM_ARGS)
+public class ProviderBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int size;
+
+    @Param({"0"})
+    public int cacheSize;
+
+    @Param({"JCEKS", "LOG", "MMAP"})
+    public String storage;
+
+    @Param({"100"})
+    public int pageSize;
+
+    private String keystore;
+    private String[] aliases;
+    private KeystoreProvider provider;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        aliases = Fixtures.aliases(size);
+        if (!storage.equals("JCEKS")) {
+            keystore = Fixtures.storage(storage, size);
+            provider = new KeystoreProvider(Fixtures.openStorage(storage, keystore), new SecretKeyCache(cacheSize, 0), new KeyringMetrics());
+        } else {
+            keystore = Fixtures.keystoreCopy(size);
+            provider = new KeystoreProvider("JCEKS", Fixtures.PWD, keystore, Fixtures.KEY_PWD, new SecretKeyCache(cacheSize, 0));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        provider.close();
+        Fixtures.delete(keystore);
+    }
+
+    @Benchmark
+    public SecretKey getSecretKey() {
+        return provider.findSecretKey(Fixtures.randomAlias(aliases));
+    }
+
+    /**
+     * A page of keys from a random position, each key of the page is unsealed.
+     */
+    @Benchmark
+    public SortedMap<String, SecretKey> listSecretKeys() {
+        ListQuery query = new ListQuery();
+        query.setCursor(Fixtures.randomAlias(aliases));
+        query.setLimit(pageSize);
+        return provider.listSecretKeys(query);
+    }
+
+    /**
+     * All the aliases, read from the index.
+     */
+    @Benchmark
+    public List<String> listAlias() {
+        return provider.listAlias(new ListQuery());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String addSecretKey() {
+        return provider.addSecretKey(Fixtures.newKey("bench-" + sequence.incrementAndGet()));
+    }
+
+    /**
+     * Key added before each invocation of deleteSecretKey, the addition is not measured.
+     */
+    @State(Scope.Thread)
+    public static class AddedKey {
+        private String alias;
+
+        @Setup(Level.Invocation)
+        public void add(ProviderBenchmark benchmark) {
+            alias = benchmark.provider.addSecretKey(Fixtures.newKey("bench-" + benchmark.sequence.incrementAndGet()));
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void deleteSecretKey(AddedKey added) {
+        provider.deleteSecretKey(added.alias);
+    }
+}
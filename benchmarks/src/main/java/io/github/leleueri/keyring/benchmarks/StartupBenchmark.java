@@ -0,0 +1,102 @@
+package io.github.leleueri.keyring.benchmarks;
+
+import io.github.leleueri.keyring.MainVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.ServerSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.leleueri.keyring.ConfigConstants.*;
+
+/**
+ * Time to the first successful GET of a key : from the deployment of the {@link MainVerticle} to the first 200
+ * response, the key being requested every millisecond (each 503 of a lazy startup is followed by a new request).
+ *
+ * Each invocation starts a new Vert.x instance on a fresh copy of the keystore.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = Fixtures.JVM_ARGS)
+public class StartupBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"JCEKS", "LOG", "MMAP"})
+    public String storage;
+
+    @Param({"eager", "lazy"})
+    public String startup;
+
+    private String fixture;
+    private String keystore;
+    private String alias;
+    private Vertx vertx;
+    private int port;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws Exception {
+        if (!storage.equals("JCEKS")) {
+            fixture = Fixtures.storage(storage, size);
+        }
+        alias = Fixtures.alias(size / 2);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        keystore = fixture == null ? Fixtures.keystoreCopy(size) : Fixtures.storageCopy(fixture);
+        vertx = Vertx.vertx();
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws Exception {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        vertx.close(r -> closed.complete(null));
+        closed.get(1, TimeUnit.MINUTES);
+        Fixtures.delete(keystore);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws Exception {
+        if (fixture != null) {
+            Fixtures.delete(fixture);
+        }
+    }
+
+    @Benchmark
+    public int firstGet() throws Exception {
+        JsonObject config = Fixtures.config(keystore, port)
+                .put(APP_KEYSTORE_TYPE, storage)
+                .put(APP_KEYSTORE_STARTUP, startup);
+        CompletableFuture<Integer> status = new CompletableFuture<>();
+        vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config), r -> {
+            if (r.succeeded()) {
+                get(vertx.createHttpClient(), status);
+            } else {
+                status.completeExceptionally(r.cause());
+            }
+        });
+        return status.get(10, TimeUnit.MINUTES);
+    }
+
+    private void get(HttpClient client, CompletableFuture<Integer> status) {
+        client.getNow(port, "localhost", "/keyring/secret-key/" + alias, response -> {
+            if (response.statusCode() == 503) {
+                vertx.setTimer(1, id -> get(client, status));
+            } else {
+                status.complete(response.statusCode());
+            }
+        });
+    }
+}
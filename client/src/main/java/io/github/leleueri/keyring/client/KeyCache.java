@@ -0,0 +1,62 @@
+package io.github.leleueri.keyring.client;
+
+import javax.crypto.SecretKey;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of the keys read by a {@link KeyringClient}, the freshness of the entries is checked by the
+ * client.
+ */
+final class KeyCache {
+
+    static final class Entry {
+        final SecretKey key;
+        final String etag;
+        final long loadedAt;
+
+        Entry(SecretKey key, String etag, long loadedAt) {
+            this.key = key;
+            this.etag = etag;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final int maxSize;
+    private final LinkedHashMap<String, Entry> entries;
+
+    KeyCache(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > KeyCache.this.maxSize;
+            }
+        };
+    }
+
+    synchronized Entry get(String alias) {
+        return entries.get(alias);
+    }
+
+    synchronized void put(String alias, Entry entry) {
+        if (maxSize > 0) {
+            entries.put(alias, entry);
+        }
+    }
+
+    synchronized void invalidate(String alias) {
+        entries.remove(alias);
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,390 @@
+package io.github.leleueri.keyring.client;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Client of the REST API of the keyring, the keys are returned as {@link SecretKey} ready for the JCE.
+ *
+ * The keys read are kept in a bounded LRU cache (see {@link KeyringClientOptions}) :
+ * <ul>
+ *     <li>a key younger than the TTL is returned without contacting the server,</li>
+ *     <li>a key older than the TTL but still in the stale window is returned at once and revalidated in background
+ *     (with its ETag, the server answers 304 if the key is unchanged),</li>
+ *     <li>the concurrent reads of a key not cached share the same request to the server : a cold start sends one
+ *     request per alias whatever the number of threads reading it.</li>
+ * </ul>
+ * With the watch enabled, the client follows the changes of the server with a long poll (GET /keyring/changes) and
+ * invalidates the keys changed or deleted as soon as they are committed. If the changes are lost (410), the whole
+ * cache is invalidated.
+ *
+ * The methods may be called from any thread, the requests are sent from the context of the client. The returned
+ * futures are completed on an event loop : a caller must not block in their callbacks.
+ */
+public class KeyringClient implements AutoCloseable {
+
+    private static final String SECRET_KEY_PATH = "/keyring/secret-key/";
+    private static final String SECRET_KEYS_PATH = "/keyring/secret-keys";
+    private static final String ALIASES_PATH = "/keyring/aliases";
+    private static final String CHANGES_PATH = "/keyring/changes";
+
+    private final Vertx vertx;
+    private final boolean ownVertx;
+    private final Context context;
+    private final HttpClient httpClient;
+    private final KeyringClientOptions options;
+
+    private final KeyCache cache;
+    // loads in progress by alias, a load removed by an invalidation is not cached once completed
+    private final ConcurrentMap<String, CompletableFuture<SecretKey>> loading = new ConcurrentHashMap<>();
+
+    // revision of the server given by the last changes read, updated from the context of the client
+    private volatile long revision = -1;
+    private long watchTimer = -1;
+    private volatile boolean closed;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final Logger LOGGER = Logger.getLogger(getClass().getName());
+
+    /**
+     * Creates a client with its own Vert.x instance, closed with the client.
+     */
+    public KeyringClient(KeyringClientOptions options) {
+        this(Vertx.vertx(), true, options);
+    }
+
+    /**
+     * Creates a client using the given Vert.x instance, left open when the client is closed.
+     */
+    public KeyringClient(Vertx vertx, KeyringClientOptions options) {
+        this(vertx, false, options);
+    }
+
+    private KeyringClient(Vertx vertx, boolean ownVertx, KeyringClientOptions options) {
+        if (options.getTtl() < 0 || options.getStaleTtl() < 0) {
+            throw new IllegalArgumentException("The TTL and the stale TTL must be positive");
+        }
+        this.vertx = vertx;
+        this.ownVertx = ownVertx;
+        this.options = options;
+        this.cache = new KeyCache(options.getCacheSize());
+        this.context = vertx.getOrCreateContext();
+        this.httpClient = vertx.createHttpClient(options.getHttpClientOptions());
+        if (options.isWatch()) {
+            context.runOnContext(v -> watch());
+        }
+    }
+
+    /**
+     * @return the key of the alias, null if the alias is unknown
+     */
+    public CompletableFuture<SecretKey> getSecretKey(String alias) {
+        KeyCache.Entry entry = cache.get(alias);
+        if (entry != null) {
+            long age = System.currentTimeMillis() - entry.loadedAt;
+            if (age < options.getTtl()) {
+                hits.incrementAndGet();
+                return CompletableFuture.completedFuture(entry.key);
+            }
+            if (age < options.getTtl() + options.getStaleTtl()) {
+                staleHits.incrementAndGet();
+                load(alias, entry);
+                return CompletableFuture.completedFuture(entry.key);
+            }
+        }
+        return load(alias, entry);
+    }
+
+    /**
+     * Reads a key from the server, unless it is already being read.
+     *
+     * @param previous cached entry of the key, revalidated with its ETag
+     */
+    private CompletableFuture<SecretKey> load(String alias, KeyCache.Entry previous) {
+        CompletableFuture<SecretKey> future = new CompletableFuture<>();
+        CompletableFuture<SecretKey> current = loading.putIfAbsent(alias, future);
+        if (current != null) {
+            coalesced.incrementAndGet();
+            return current;
+        }
+        loads.incrementAndGet();
+        String etag = previous == null ? null : previous.etag;
+        request(SECRET_KEY_PATH + encodePath(alias), etag, options.getRequestTimeout(), (response, body) -> {
+            switch (response.statusCode()) {
+                case 200:
+                    loaded(alias, future, new KeyCache.Entry(toSecretKey(new JsonObject(body.toString())),
+                            response.getHeader(HttpHeaders.ETAG.toString()), System.currentTimeMillis()), null);
+                    break;
+                case 304:
+                    loaded(alias, future, new KeyCache.Entry(previous.key, previous.etag, System.currentTimeMillis()), null);
+                    break;
+                case 404:
+                    loaded(alias, future, null, null);
+                    break;
+                default:
+                    loaded(alias, future, null, new KeyringClientException(response.statusCode(), body.toString()));
+            }
+        }, failure -> loaded(alias, future, null, failure));
+        return future;
+    }
+
+    private void loaded(String alias, CompletableFuture<SecretKey> future, KeyCache.Entry entry, Throwable failure) {
+        // the result of a load invalidated in the meantime may be outdated, it is only returned to its callers
+        if (loading.remove(alias, future)) {
+            if (entry != null) {
+                cache.put(alias, entry);
+            } else if (failure == null) {
+                cache.invalidate(alias);
+            }
+        }
+        if (failure != null) {
+            future.completeExceptionally(failure);
+        } else {
+            future.complete(entry == null ? null : entry.key);
+        }
+    }
+
+    /**
+     * Reads all the keys of the server, they are cached unless a change was received while they were read : the
+     * response may have been built before this change.
+     *
+     * @return the keys indexed by alias
+     */
+    public CompletableFuture<Map<String, SecretKey>> getSecretKeys() {
+        CompletableFuture<Map<String, SecretKey>> future = new CompletableFuture<>();
+        long requestRevision = revision;
+        request(SECRET_KEYS_PATH, null, options.getRequestTimeout(), (response, body) -> {
+            if (response.statusCode() == 204) {
+                future.complete(Collections.emptyMap());
+            } else if (response.statusCode() == 200) {
+                long now = System.currentTimeMillis();
+                Map<String, SecretKey> keys = new LinkedHashMap<>();
+                JsonObject entries = new JsonObject(body.toString());
+                for (String alias : entries.fieldNames()) {
+                    keys.put(alias, toSecretKey(entries.getJsonObject(alias)));
+                }
+                if (revision == requestRevision) {
+                    for (Map.Entry<String, SecretKey> key : keys.entrySet()) {
+                        if (!loading.containsKey(key.getKey())) {
+                            cache.put(key.getKey(), new KeyCache.Entry(key.getValue(), null, now));
+                        }
+                    }
+                }
+                future.complete(keys);
+            } else {
+                future.completeExceptionally(new KeyringClientException(response.statusCode(), body.toString()));
+            }
+        }, future::completeExceptionally);
+        return future;
+    }
+
+    /**
+     * @return the aliases of the server, in their natural order
+     */
+    public CompletableFuture<List<String>> getAliases() {
+        CompletableFuture<List<String>> future = new CompletableFuture<>();
+        request(ALIASES_PATH, null, options.getRequestTimeout(), (response, body) -> {
+            if (response.statusCode() == 204) {
+                future.complete(Collections.emptyList());
+            } else if (response.statusCode() == 200) {
+                List<String> aliases = new ArrayList<>();
+                for (Object alias : new JsonArray(body.toString())) {
+                    aliases.add((String) alias);
+                }
+                future.complete(aliases);
+            } else {
+                future.completeExceptionally(new KeyringClientException(response.statusCode(), body.toString()));
+            }
+        }, future::completeExceptionally);
+        return future;
+    }
+
+    /**
+     * Removes a key from the cache, its next read is sent to the server.
+     */
+    public void invalidate(String alias) {
+        invalidations.incrementAndGet();
+        loading.remove(alias);
+        cache.invalidate(alias);
+    }
+
+    /**
+     * Removes all the keys from the cache.
+     */
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        loading.clear();
+        cache.clear();
+    }
+
+    /**
+     * Long poll of the changes of the server. The first request gives the current revision : the keys cached
+     * before it may be outdated, they are invalidated. A response that can't be read is retried like a failed
+     * request.
+     */
+    private void watch() {
+        if (closed) {
+            return;
+        }
+        String uri = revision < 0 ? CHANGES_PATH : CHANGES_PATH + "?since=" + revision + "&wait=" + options.getWatchWait();
+        long timeout = options.getWatchWait() * 1000L + options.getRequestTimeout();
+        request(uri, null, timeout, (response, body) -> {
+            if (response.statusCode() != 200 && response.statusCode() != 410) {
+                LOGGER.warning("Unable to read the changes of the keyring, status " + response.statusCode());
+                retryWatch();
+                return;
+            }
+            JsonObject page = new JsonObject(body.toString());
+            if (revision < 0 || response.statusCode() == 410) {
+                invalidateAll();
+            } else {
+                for (Object change : page.getJsonArray("changes")) {
+                    invalidate(((JsonObject) change).getString("alias"));
+                }
+            }
+            revision = page.getLong("revision");
+            watch();
+        }, failure -> {
+            LOGGER.warning("Unable to read the changes of the keyring : " + failure.getMessage());
+            retryWatch();
+        });
+    }
+
+    private void retryWatch() {
+        if (!closed) {
+            watchTimer = vertx.setTimer(options.getWatchRetryDelay(), id -> watch());
+        }
+    }
+
+    /**
+     * Sends a GET request from the context of the client, exactly one of the handlers is called : the failure
+     * handler is also called if the response handler throws (malformed body).
+     */
+    private void request(String uri, String ifNoneMatch, long timeout, BiConsumer<HttpClientResponse, Buffer> responseHandler,
+                         Consumer<Throwable> failureHandler) {
+        context.runOnContext(v -> {
+            boolean[] done = new boolean[1];
+            Consumer<Throwable> failed = failure -> {
+                if (!done[0]) {
+                    done[0] = true;
+                    failureHandler.accept(failure);
+                }
+            };
+            HttpClientRequest request = httpClient.get(uri, response -> {
+                response.exceptionHandler(failed::accept);
+                response.bodyHandler(body -> {
+                    if (!done[0]) {
+                        done[0] = true;
+                        try {
+                            responseHandler.accept(response, body);
+                        } catch (RuntimeException e) {
+                            failureHandler.accept(e);
+                        }
+                    }
+                });
+            });
+            request.exceptionHandler(failed::accept);
+            request.setTimeout(timeout);
+            if (ifNoneMatch != null) {
+                request.putHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+            }
+            request.end();
+        });
+    }
+
+    private static SecretKey toSecretKey(JsonObject key) {
+        return new SecretKeySpec(Base64.getDecoder().decode(key.getString("b64Key")), key.getString("algorithm"));
+    }
+
+    private static String encodePath(String alias) {
+        try {
+            return URLEncoder.encode(alias, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the reads answered from the cache with a key younger than the TTL
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the reads answered from the cache with a key being revalidated
+     */
+    public long getStaleHits() {
+        return staleHits.get();
+    }
+
+    /**
+     * @return the requests of a key sent to the server
+     */
+    public long getLoads() {
+        return loads.get();
+    }
+
+    /**
+     * @return the reads which joined a request of the same key in progress
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return the invalidations of a key or of the whole cache
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * @return the number of keys cached
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        context.runOnContext(v -> {
+            vertx.cancelTimer(watchTimer);
+            httpClient.close();
+            if (ownVertx) {
+                vertx.close();
+            }
+        });
+    }
+}
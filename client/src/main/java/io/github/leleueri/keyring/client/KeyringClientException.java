@@ -0,0 +1,21 @@
+package io.github.leleueri.keyring.client;
+
+/**
+ * Unexpected response of the keyring server.
+ */
+public class KeyringClientException extends RuntimeException {
+
+    private final int status;
+
+    public KeyringClientException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    /**
+     * @return the HTTP status of the response
+     */
+    public int getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,131 @@
+package io.github.leleueri.keyring.client;
+
+import io.vertx.core.http.HttpClientOptions;
+
+/**
+ * Options of a {@link KeyringClient}.
+ *
+ * The connections to the server are kept alive and pooled : by default at most 16 connections, one of them is held
+ * by the long poll of the changes when the watch is enabled.
+ */
+public class KeyringClientOptions {
+
+    public static final int DEFAULT_CACHE_SIZE = 1000;
+    public static final long DEFAULT_TTL = 60_000;
+    public static final long DEFAULT_STALE_TTL = 300_000;
+    public static final long DEFAULT_REQUEST_TIMEOUT = 10_000;
+    public static final int DEFAULT_WATCH_WAIT = 30;
+    public static final long DEFAULT_WATCH_RETRY_DELAY = 1_000;
+
+    private HttpClientOptions httpClientOptions = new HttpClientOptions()
+            .setDefaultHost("localhost")
+            .setDefaultPort(8080)
+            .setKeepAlive(true)
+            .setMaxPoolSize(16);
+    private int cacheSize = DEFAULT_CACHE_SIZE;
+    private long ttl = DEFAULT_TTL;
+    private long staleTtl = DEFAULT_STALE_TTL;
+    private long requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+    private boolean watch = true;
+    private int watchWait = DEFAULT_WATCH_WAIT;
+    private long watchRetryDelay = DEFAULT_WATCH_RETRY_DELAY;
+
+    public HttpClientOptions getHttpClientOptions() {
+        return httpClientOptions;
+    }
+
+    /**
+     * @param httpClientOptions options of the HTTP client : server (default host and port), TLS, pool of connections
+     */
+    public KeyringClientOptions setHttpClientOptions(HttpClientOptions httpClientOptions) {
+        this.httpClientOptions = httpClientOptions;
+        return this;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * @param cacheSize maximum number of keys kept by the client, the least recently used keys are evicted first
+     * (0 disables the cache)
+     */
+    public KeyringClientOptions setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+        return this;
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    /**
+     * @param ttl time in milliseconds during which a cached key is returned without contacting the server
+     */
+    public KeyringClientOptions setTtl(long ttl) {
+        this.ttl = ttl;
+        return this;
+    }
+
+    public long getStaleTtl() {
+        return staleTtl;
+    }
+
+    /**
+     * @param staleTtl time in milliseconds, after the TTL, during which a cached key is still returned at once while
+     * it is revalidated in background (stale-while-revalidate) ; after it, a read waits for the server
+     */
+    public KeyringClientOptions setStaleTtl(long staleTtl) {
+        this.staleTtl = staleTtl;
+        return this;
+    }
+
+    public long getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * @param requestTimeout time in milliseconds after which a request without response fails
+     */
+    public KeyringClientOptions setRequestTimeout(long requestTimeout) {
+        this.requestTimeout = requestTimeout;
+        return this;
+    }
+
+    public boolean isWatch() {
+        return watch;
+    }
+
+    /**
+     * @param watch true to follow the changes of the server (GET /keyring/changes) and invalidate the keys changed
+     * at once, rather than at the end of their TTL
+     */
+    public KeyringClientOptions setWatch(boolean watch) {
+        this.watch = watch;
+        return this;
+    }
+
+    public int getWatchWait() {
+        return watchWait;
+    }
+
+    /**
+     * @param watchWait time in seconds a request of the changes waits for the next change on the server
+     */
+    public KeyringClientOptions setWatchWait(int watchWait) {
+        this.watchWait = watchWait;
+        return this;
+    }
+
+    public long getWatchRetryDelay() {
+        return watchRetryDelay;
+    }
+
+    /**
+     * @param watchRetryDelay time in milliseconds before the next request of the changes after a failure
+     */
+    public KeyringClientOptions setWatchRetryDelay(long watchRetryDelay) {
+        this.watchRetryDelay = watchRetryDelay;
+        return this;
+    }
+}
@@ -0,0 +1,216 @@
+package io.github.leleueri.keyring.client;
+
+import io.github.leleueri.keyring.MainVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.net.ServerSocket;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.github.leleueri.keyring.ConfigConstants.*;
+
+/**
+ * Client against a keyring server deployed in the same Vert.x instance.
+ */
+@RunWith(VertxUnitRunner.class)
+public class TestKeyringClient {
+
+    private Vertx vertx;
+    private int port;
+    private HttpClient httpClient;
+    private KeyringClient client;
+
+    @Before
+    public void setUp(TestContext context) throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        final String path = "target/KeyringClientKeystore.jceks";
+        Paths.get(path).toFile().delete();
+
+        DeploymentOptions options = new DeploymentOptions()
+                .setConfig(new JsonObject().put(SERVER_HTTP_PORT, port)
+                        .put(APP_KEYSTORE_PATH, path)
+                        .put(APP_KEYSTORE_PWD, "simplemotdepasse")
+                        .put(APP_KEYSTORE_SECRET_KEY_PWD, "simplemotdepassecle"));
+
+        vertx = Vertx.vertx();
+        vertx.deployVerticle(MainVerticle.class.getName(), options, context.asyncAssertSuccess());
+        httpClient = vertx.createHttpClient();
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        if (client != null) {
+            client.close();
+        }
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    private KeyringClientOptions options() {
+        return new KeyringClientOptions()
+                .setHttpClientOptions(new HttpClientOptions().setDefaultPort(port).setKeepAlive(true).setMaxPoolSize(4))
+                .setWatchWait(5);
+    }
+
+    private SecretKey postKey(TestContext context, String alias) throws Exception {
+        KeyGenerator keyGen = KeyGenerator.getInstance("AES");
+        keyGen.init(128);
+        SecretKey key = keyGen.generateKey();
+        JsonObject body = new JsonObject().put("alias", alias).put("algorithm", "AES").put("format", key.getFormat())
+                .put("b64Key", Base64.getEncoder().encodeToString(key.getEncoded()));
+        final Async async = context.async();
+        httpClient.post(port, "localhost", "/keyring/secret-keys").putHeader("Content-Type", "application/json")
+                .handler(response -> {
+                    context.assertEquals(201, response.statusCode());
+                    async.complete();
+                }).end(body.encode());
+        async.awaitSuccess();
+        return key;
+    }
+
+    private void deleteKey(TestContext context, String alias) {
+        final Async async = context.async();
+        httpClient.delete(port, "localhost", "/keyring/secret-key/" + alias, response -> {
+            context.assertEquals(204, response.statusCode());
+            async.complete();
+        }).end();
+        async.awaitSuccess();
+    }
+
+    @Test
+    public void testCacheAndCoalescing(TestContext context) throws Exception {
+        client = new KeyringClient(vertx, options().setWatch(false));
+        SecretKey key = postKey(context, "client1");
+
+        // the concurrent reads of a key not cached share one request
+        List<CompletableFuture<SecretKey>> reads = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            reads.add(client.getSecretKey("client1"));
+        }
+        for (CompletableFuture<SecretKey> read : reads) {
+            context.assertTrue(Arrays.equals(key.getEncoded(), read.get().getEncoded()));
+        }
+        context.assertEquals(1L, client.getLoads());
+        context.assertEquals(19L, client.getCoalesced());
+
+        // then the key is read from the cache
+        context.assertEquals("AES", client.getSecretKey("client1").get().getAlgorithm());
+        context.assertEquals(1L, client.getHits());
+        context.assertEquals(1L, client.getLoads());
+
+        context.assertNull(client.getSecretKey("unknown").get());
+        context.assertEquals(1, client.getCacheSize());
+
+        postKey(context, "client2");
+        Map<String, SecretKey> keys = client.getSecretKeys().get();
+        context.assertEquals(2, keys.size());
+        context.assertEquals(2, client.getCacheSize());
+        context.assertTrue(client.getAliases().get().contains("client2"));
+    }
+
+    @Test
+    public void testStaleWhileRevalidate(TestContext context) throws Exception {
+        client = new KeyringClient(vertx, options().setWatch(false).setTtl(500).setStaleTtl(60_000));
+        SecretKey key = postKey(context, "stale");
+        client.getSecretKey("stale").get();
+        Thread.sleep(600);
+
+        // the stale key is returned at once and revalidated in background (304 with its ETag)
+        context.assertTrue(Arrays.equals(key.getEncoded(), client.getSecretKey("stale").get().getEncoded()));
+        context.assertEquals(1L, client.getStaleHits());
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (client.getHits() < 1 && System.currentTimeMillis() < deadline) {
+            client.getSecretKey("stale").get();
+            Thread.sleep(20);
+        }
+        // once revalidated, the key is fresh again
+        context.assertEquals(1L, client.getHits());
+        context.assertEquals(2L, client.getLoads());
+    }
+
+    @Test
+    public void testInvalidationByTheChanges(TestContext context) throws Exception {
+        client = new KeyringClient(vertx, options());
+        postKey(context, "watched");
+        // the first changes request gives the revision the client follows
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (client.getInvalidations() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        context.assertNotNull(client.getSecretKey("watched").get());
+        context.assertNotNull(client.getSecretKey("watched").get());
+        context.assertEquals(1L, client.getLoads());
+
+        // the deletion is received by the long poll, the key is no longer cached
+        deleteKey(context, "watched");
+        deadline = System.currentTimeMillis() + 5_000;
+        while (client.getCacheSize() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        context.assertEquals(0, client.getCacheSize());
+        context.assertNull(client.getSecretKey("watched").get());
+    }
+
+    @Test
+    public void testChangesReceivedDuringABulkRead(TestContext context) throws Exception {
+        // fake server : the long poll gets a change of "bulk" while the list of the keys is being sent
+        final AtomicInteger changesRequests = new AtomicInteger();
+        final HttpServerRequest[] poll = new HttpServerRequest[1];
+        int fakePort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            fakePort = socket.getLocalPort();
+        }
+        final Async listening = context.async();
+        vertx.createHttpServer().requestHandler(request -> {
+            if (request.path().equals("/keyring/changes")) {
+                int count = changesRequests.incrementAndGet();
+                if (count == 1) {
+                    request.response().end("{\"revision\":1,\"changes\":[]}");
+                } else if (count == 2) {
+                    // a malformed body is retried
+                    request.response().end("not json");
+                } else {
+                    poll[0] = request;
+                }
+            } else {
+                poll[0].response().end("{\"revision\":2,\"changes\":[{\"revision\":2,\"alias\":\"bulk\",\"type\":\"put\"}]}");
+                vertx.setTimer(200, id -> request.response().end(new JsonObject().put("bulk", new JsonObject()
+                        .put("alias", "bulk").put("algorithm", "AES").put("b64Key", "AAAAAAAAAAAAAAAAAAAAAA==")).encode()));
+            }
+        }).listen(fakePort, context.asyncAssertSuccess(s -> listening.complete()));
+        listening.awaitSuccess();
+
+        client = new KeyringClient(vertx, options().setWatchRetryDelay(10)
+                .setHttpClientOptions(new HttpClientOptions().setDefaultPort(fakePort).setKeepAlive(true)));
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (changesRequests.get() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        context.assertEquals(3, changesRequests.get());
+
+        // the keys read may be older than the change received meanwhile, they are not cached
+        context.assertEquals(1, client.getSecretKeys().get().size());
+        context.assertEquals(0, client.getCacheSize());
+    }
+}
@@ -0,0 +1,132 @@
+package io.github.leleueri.keyring;
+
+import io.github.leleueri.keyring.exception.KeyringConfigurationException;
+import io.github.leleueri.keyring.metrics.Counter;
+import io.github.leleueri.keyring.metrics.KeyringMetrics;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.github.leleueri.keyring.ConfigConstants.*;
+import static io.github.leleueri.keyring.KeystoreVerticle.*;
+
+/**
+ * Bounds the number of requests sent to the keystore verticles and not answered yet (in flight), by operation.
+ * A request over the limit of its operation is rejected at once (503 with a Retry-After header) instead of waiting
+ * in the queue of a worker until the processing timeout.
+ *
+ * The reads of a key have the priority : once the reads in flight reach half of their limit, the lists and the
+ * writes are rejected, so the readers are not busy with bulk work when the reads queue up.
+ *
+ * Shared by the instances of the HTTP verticle (see {@link KeystoreVerticle#sharedAdmission(io.vertx.core.Vertx)}).
+ */
+public class AdmissionControl implements Shareable {
+
+    public enum Operation {
+        /** read of a key not cached in its encoded form, or of several keys at once */
+        READ,
+        /** page of aliases or of keys */
+        LIST,
+        /** creation, deletion or import of keys */
+        WRITE
+    }
+
+    private final int[] limits = new int[Operation.values().length];
+    private final AtomicInteger[] inFlight = new AtomicInteger[Operation.values().length];
+    private final Counter[] rejected = new Counter[Operation.values().length];
+    private final String retryAfter;
+
+    public AdmissionControl(JsonObject config, KeyringMetrics metrics) {
+        limits[Operation.READ.ordinal()] = config.getInteger(ADMISSION_READ_LIMIT, ADMISSION_DEFAULT_READ_LIMIT);
+        limits[Operation.LIST.ordinal()] = config.getInteger(ADMISSION_LIST_LIMIT, ADMISSION_DEFAULT_LIST_LIMIT);
+        limits[Operation.WRITE.ordinal()] = config.getInteger(ADMISSION_WRITE_LIMIT, ADMISSION_DEFAULT_WRITE_LIMIT);
+        int retryAfterSeconds = config.getInteger(ADMISSION_RETRY_AFTER, ADMISSION_DEFAULT_RETRY_AFTER);
+        for (int limit : limits) {
+            if (limit < 1) {
+                throw new KeyringConfigurationException("Invalid admission configuration, the limits must be greater than 0");
+            }
+        }
+        if (retryAfterSeconds < 0) {
+            throw new KeyringConfigurationException("Invalid admission configuration, the retry delay must be positive");
+        }
+        retryAfter = Integer.toString(retryAfterSeconds);
+        for (Operation operation : Operation.values()) {
+            AtomicInteger counter = new AtomicInteger();
+            inFlight[operation.ordinal()] = counter;
+            String name = operation.name().toLowerCase();
+            rejected[operation.ordinal()] = metrics.counter("keyring_admission_rejected_total",
+                    "Requests rejected because too many requests were in flight, by operation", "operation", name);
+            metrics.gauge("keyring_admission_in_flight", "Requests sent to the keystore verticles and not answered yet, by operation",
+                    counter::get, "operation", name);
+        }
+    }
+
+    /**
+     * @return the operation of the messages sent to an address, null if they are not limited
+     */
+    public static Operation operation(String address) {
+        switch (address) {
+            case GET_SECRET_KEY:
+            case GET_SECRET_KEYS:
+                return Operation.READ;
+            case LIST_ALIASES:
+            case LIST_SECRET_KEYS:
+                return Operation.LIST;
+            case POST_SECRET_KEY:
+            case DELETE_SECRET_KEY:
+            case IMPORT_SECRET_KEYS:
+                return Operation.WRITE;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Counts a request in flight if its operation is under its limit, and under the priority threshold of the reads
+     * for the other operations. An admitted request must be {@link #release(Operation) released}.
+     *
+     * @return false if the request must be rejected
+     */
+    public boolean tryAcquire(Operation operation) {
+        if (operation != Operation.READ && inFlight[Operation.READ.ordinal()].get() >= limits[Operation.READ.ordinal()] / 2) {
+            rejected[operation.ordinal()].increment();
+            return false;
+        }
+        AtomicInteger counter = inFlight[operation.ordinal()];
+        int limit = limits[operation.ordinal()];
+        while (true) {
+            int current = counter.get();
+            if (current >= limit) {
+                rejected[operation.ordinal()].increment();
+                return false;
+            }
+            if (counter.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Counts a request in flight without checking the limit, for the continuation of an admitted request (the next
+     * page of a streamed list).
+     */
+    public void acquire(Operation operation) {
+        inFlight[operation.ordinal()].incrementAndGet();
+    }
+
+    public void release(Operation operation) {
+        inFlight[operation.ordinal()].decrementAndGet();
+    }
+
+    public int getInFlight(Operation operation) {
+        return inFlight[operation.ordinal()].get();
+    }
+
+    /**
+     * @return the value of the Retry-After header of the rejected requests, in seconds
+     */
+    public String getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -7,8 +7,47 @@ public interface ConfigConstants {
 
     String SERVER_HTTP_PORT = "http.port";
     int SERVER_HTTP_DEFAULT_PORT = 8080;
+    String SERVER_HTTP_INSTANCES = "http.instances";
     String SERVER_PROCESS_TIMEOUT = "process.timeout";
     int SERVER_DEFAULT_PROCESS_TIMEOUT = 10_000;
+    String SERVER_IMPORT_TIMEOUT = "process.import.timeout";
+    int SERVER_DEFAULT_IMPORT_TIMEOUT = 300_000;
+
+    String SERVER_STREAM_PAGE_SIZE = "http.stream.page.size";
+    int SERVER_DEFAULT_STREAM_PAGE_SIZE = 500;
+
+    String SERVER_MULTIGET_MAX = "http.multiget.max";
+    int SERVER_DEFAULT_MULTIGET_MAX = 1000;
+
+    String SERVER_CHANGES_MAX_WAIT = "http.changes.max.wait";
+    int SERVER_DEFAULT_CHANGES_MAX_WAIT = 60;
+    String SERVER_CHANGES_MAX_LIMIT = "http.changes.max.limit";
+    int SERVER_DEFAULT_CHANGES_MAX_LIMIT = 1000;
+
+    String SERVER_METRICS_JMX = "metrics.jmx";
+
+    String SERVER_HTTP_PROFILE = "http.profile";
+    String SERVER_HTTP_PROFILE_DEFAULT = "default";
+    String SERVER_HTTP_PROFILE_PERFORMANCE = "performance";
+    String SERVER_HTTP_TCP_NODELAY = "http.tcp.nodelay";
+    String SERVER_HTTP_TCP_KEEPALIVE = "http.tcp.keepalive";
+    String SERVER_HTTP_IDLE_TIMEOUT = "http.idle.timeout";
+    int SERVER_HTTP_PERFORMANCE_IDLE_TIMEOUT = 120;
+    String SERVER_HTTP_ACCEPT_BACKLOG = "http.accept.backlog";
+    int SERVER_HTTP_PERFORMANCE_ACCEPT_BACKLOG = 1024;
+    String SERVER_HTTP_POOLED_BUFFERS = "http.pooled.buffers";
+    String SERVER_HTTP_SEND_BUFFER = "http.send.buffer";
+    String SERVER_HTTP_RECEIVE_BUFFER = "http.receive.buffer";
+    String SERVER_HTTP_COMPRESSION = "http.compression";
+
+    String ADMISSION_READ_LIMIT = "admission.read.limit";
+    int ADMISSION_DEFAULT_READ_LIMIT = 512;
+    String ADMISSION_LIST_LIMIT = "admission.list.limit";
+    int ADMISSION_DEFAULT_LIST_LIMIT = 16;
+    String ADMISSION_WRITE_LIMIT = "admission.write.limit";
+    int ADMISSION_DEFAULT_WRITE_LIMIT = 512;
+    String ADMISSION_RETRY_AFTER = "admission.retry.after";
+    int ADMISSION_DEFAULT_RETRY_AFTER = 1;
 
     String SERVER_USE_SSL = "ssl";
 
@@ -22,14 +61,59 @@ public interface ConfigConstants {
     String SERVER_SSL_TRUSTSTORE_PATH = "ssl.truststore.path";
     String SERVER_SSL_TRUSTSTORE_PWD = "ssl.truststore.password";
 
+    String SERVER_SSL_SESSION_CACHE_SIZE = "ssl.session.cache.size";
+    int SERVER_SSL_DEFAULT_SESSION_CACHE_SIZE = 20_480;
+    String SERVER_SSL_SESSION_TIMEOUT = "ssl.session.timeout";
+    int SERVER_SSL_DEFAULT_SESSION_TIMEOUT = 3600;
+    String SERVER_SSL_RELOAD_INTERVAL = "ssl.reload.interval";
+    int SERVER_SSL_DEFAULT_RELOAD_INTERVAL = 60;
+
     String SERVER_SSL_TYPE_JKS = "JKS";
     String SERVER_SSL_TYPE_PKCS12 = "P12";
 
     String APP_KEYSTORE_TYPE = "app.keystore.type";
     String APP_KEYSTORE_DEFAULT_TYPE = "JCEKS";
+    String APP_KEYSTORE_TYPE_LOG = "LOG";
+    String APP_KEYSTORE_TYPE_MAPPED = "MMAP";
     String APP_KEYSTORE_PATH = "app.keystore.path";
     String APP_KEYSTORE_DEFAULT_PATH = "keyring.jks";
     String APP_KEYSTORE_PWD = "app.keystore.password";
     String APP_KEYSTORE_SECRET_KEY_PWD = "app.keystore.secretkey.password";
 
+    String APP_KEYSTORE_STORAGE = "app.keystore.storage";
+    String APP_KEYSTORE_STORAGE_SNAPSHOT = "snapshot";
+    String APP_KEYSTORE_STORAGE_JOURNAL = "journal";
+    String APP_KEYSTORE_JOURNAL_COMPACTION = "app.keystore.journal.compaction";
+    int APP_KEYSTORE_JOURNAL_DEFAULT_COMPACTION = 10_000;
+
+    String APP_KEYSTORE_COMMIT_WINDOW = "app.keystore.commit.window";
+    int APP_KEYSTORE_DEFAULT_COMMIT_WINDOW = 0;
+    String APP_KEYSTORE_COMMIT_BATCH = "app.keystore.commit.batch";
+    int APP_KEYSTORE_DEFAULT_COMMIT_BATCH = 256;
+
+    String APP_KEYSTORE_READERS = "app.keystore.readers";
+
+    String APP_KEYSTORE_STARTUP = "app.keystore.startup";
+    String APP_KEYSTORE_STARTUP_EAGER = "eager";
+    String APP_KEYSTORE_STARTUP_LAZY = "lazy";
+
+    String APP_CACHE_SIZE = "app.cache.size";
+    int APP_CACHE_DEFAULT_SIZE = 1000;
+    String APP_CACHE_TTL = "app.cache.ttl";
+    long APP_CACHE_DEFAULT_TTL = 0;
+    String APP_CACHE_OFFHEAP = "app.cache.offheap";
+    String APP_CACHE_WARMUP = "app.cache.warmup";
+
+    String APP_CHANGES_CAPACITY = "app.changes.capacity";
+    int APP_CHANGES_DEFAULT_CAPACITY = 10_000;
+
+    String CLUSTER_ENABLED = "cluster.enabled";
+    String CLUSTER_NODE_ID = "cluster.node.id";
+    String CLUSTER_TRANSPORT = "cluster.transport";
+    String CLUSTER_DEFAULT_TRANSPORT = "io.github.leleueri.keyring.replication.EventBusTransport";
+    String CLUSTER_SYNC_INTERVAL = "cluster.sync.interval";
+    long CLUSTER_DEFAULT_SYNC_INTERVAL = 5_000;
+    String CLUSTER_TOMBSTONE_RETENTION = "cluster.tombstone.retention";
+    long CLUSTER_DEFAULT_TOMBSTONE_RETENTION = 7 * 24 * 3600 * 1000L;
+
 }
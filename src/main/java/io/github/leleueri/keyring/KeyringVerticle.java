@@ -1,26 +1,58 @@
 package io.github.leleueri.keyring;
 
+import io.github.leleueri.keyring.bean.ChangePage;
+import io.github.leleueri.keyring.bean.ListQuery;
+import io.github.leleueri.keyring.bean.Page;
+import io.github.leleueri.keyring.bean.SecretKey;
+import io.github.leleueri.keyring.codec.KeyringCodecs;
 import io.github.leleueri.keyring.exception.KeyringConfigurationException;
+import io.github.leleueri.keyring.metrics.Histogram;
+import io.github.leleueri.keyring.metrics.KeyringMetrics;
+import io.github.leleueri.keyring.provider.ChangeFeed;
+import io.github.leleueri.keyring.provider.EncodedKey;
+import io.github.leleueri.keyring.provider.KeystoreProvider;
+import io.github.leleueri.keyring.tls.ServerSslContext;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.AsyncResult;
-import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
 import io.vertx.core.Future;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.eventbus.ReplyException;
 import io.vertx.core.eventbus.ReplyFailure;
 import io.vertx.core.http.ClientAuth;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
 import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.EncodeException;
 import io.vertx.core.json.Json;
 import io.vertx.core.net.JksOptions;
 import io.vertx.core.net.PfxOptions;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.ext.web.Route;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.BodyHandler;
 
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Logger;
 
 import static io.github.leleueri.keyring.ConfigConstants.SERVER_SSL_TRUSTSTORE_PWD;
@@ -30,16 +62,52 @@ import static io.github.leleueri.keyring.KeystoreVerticle.*;
 import static io.github.leleueri.keyring.ConfigConstants.*;
 /**
  * Created by eric on 07/10/15.
+ *
+ * HTTP edge of the keyring : the requests are forwarded to the keystore verticles through the event bus.
+ * Several instances are deployed by the {@link MainVerticle}, they share the HTTP port and the keystore verticles.
+ * The beans are exchanged as objects (see {@link KeyringCodecs}), they are encoded in JSON only by this verticle.
+ *
+ * The GET of a key is the hot path : it is served without logging (unless FINE is enabled), with shared delivery
+ * options and response headers. Once encoded, a key is written from the cache of the provider (see
+ * {@link #getKey(RoutingContext)}).
+ *
+ * The requests sent to the keystore verticles go through the {@link AdmissionControl} : over the limits, they are
+ * rejected at once with a 503 and a Retry-After header rather than queued until the processing timeout.
  */
 public class KeyringVerticle extends AbstractVerticle {
 
     private int processingTimeOut;
+    private int importTimeOut;
+    private int streamPageSize;
+    private int multiGetMax;
+    private int changesMaxWait;
+    private int changesMaxLimit;
+
+    private KeyringMetrics metrics;
+    private KeystoreProvider provider;
+    private AdmissionControl admission;
+    private ChangeFeed feed;
+    // long polls of the changes waiting for the next commit, only accessed from the event loop of this instance
+    private final List<ChangeWait> changeWaits = new ArrayList<>();
+
+    // never modified once created, shared by all the messages sent to the keystore verticles
+    private DeliveryOptions processingOptions;
+    private DeliveryOptions importJsonOptions;
+    private DeliveryOptions importNdjsonOptions;
+
+    private static final String ROUTE_METRICS = "route.metrics";
+
+    public static final String SHARED_SSL_CONTEXT = "ssl.context";
+    // true for the instance which created the shared SSL context, it reloads the stores and removes the context on stop
+    private boolean sslContextOwner;
+
+    private static final CharSequence JSON_CONTENT_TYPE = HttpHeaders.createOptimized("application/json; charset=utf-8");
 
     private final Logger LOGGER = Logger.getLogger(getClass().getName());
 
     @java.lang.Override
     public void start(Future<java.lang.Void> fut) throws Exception {
-        // to launch the application taking a configuration file use :
+        // to launch the application (MainVerticle) taking a configuration file use :
         // java -jar target/my-first-app-1.0-SNAPSHOT-fat.jar -conf src/main/conf/my-application-conf.json
 
         // Retrieve the port from the configuration,
@@ -47,17 +115,26 @@ public class KeyringVerticle extends AbstractVerticle {
         Integer port = config().getInteger(SERVER_HTTP_PORT, SERVER_HTTP_DEFAULT_PORT);
         // default processing timeOut
         processingTimeOut = config().getInteger(SERVER_PROCESS_TIMEOUT, SERVER_DEFAULT_PROCESS_TIMEOUT);
+        importTimeOut = config().getInteger(SERVER_IMPORT_TIMEOUT, SERVER_DEFAULT_IMPORT_TIMEOUT);
+        streamPageSize = config().getInteger(SERVER_STREAM_PAGE_SIZE, SERVER_DEFAULT_STREAM_PAGE_SIZE);
+        multiGetMax = config().getInteger(SERVER_MULTIGET_MAX, SERVER_DEFAULT_MULTIGET_MAX);
+        changesMaxWait = config().getInteger(SERVER_CHANGES_MAX_WAIT, SERVER_DEFAULT_CHANGES_MAX_WAIT);
+        changesMaxLimit = config().getInteger(SERVER_CHANGES_MAX_LIMIT, SERVER_DEFAULT_CHANGES_MAX_LIMIT);
+        processingOptions = new DeliveryOptions().setSendTimeout(processingTimeOut);
+        importJsonOptions = new DeliveryOptions().setSendTimeout(importTimeOut).addHeader(IMPORT_FORMAT, IMPORT_FORMAT_JSON);
+        importNdjsonOptions = new DeliveryOptions().setSendTimeout(importTimeOut).addHeader(IMPORT_FORMAT, IMPORT_FORMAT_NDJSON);
+        KeyringCodecs.register(vertx);
 
-        // Define keystore verticle
-        // Acording to the configuration a worker is never executed concurrently by Vert.x by more than one thread,
-        // but can executed by different threads at different times.
-        LOGGER.info("Deploy KeystoreVerticle");
-        vertx.deployVerticle("io.github.leleueri.keyring.KeystoreVerticle",
-                new DeploymentOptions()
-                        .setWorker(true) // as worker (like an actor so no concurrent acces on it!)
-                        .setConfig(config())// provides the config object to this new verticle
-        );
+        // the keystore verticles are deployed by the MainVerticle before the instances of this verticle
+        startHttpServer(port, fut);
+    }
 
+    private void startHttpServer(Integer port, Future<Void> fut) {
+        metrics = sharedMetrics(vertx);
+        provider = sharedProvider(vertx);
+        admission = sharedAdmission(vertx);
+        feed = sharedFeed(vertx);
+        vertx.eventBus().<Long>localConsumer(KEYSTORE_CHANGED, message -> changed());
          // Create a router object.
         LOGGER.info("Create Route object");
         Router router = Router.router(vertx);
@@ -72,19 +149,30 @@ public class KeyringVerticle extends AbstractVerticle {
         // Http method may also be specified with a well named "route" method ...
         // Routes are matched in the order of they addition into the route...
         LOGGER.info("Define all routes");
+        router.route().handler(this::measure);
         router.route().handler(BodyHandler.create());
-        router.get("/keyring/aliases").handler(this::getAliases);
-        router.get("/keyring/secret-keys").handler(this::getAllKeys);
-        router.get("/keyring/secret-key/:alias").handler(this::getKey);
-        router.delete("/keyring/secret-key/:alias").handler(this::deleteKey);
-        router.post("/keyring/secret-keys").consumes("application/json").handler(this::putKey);
+        route(router, HttpMethod.GET, "/keyring/aliases", this::getAliases);
+        route(router, HttpMethod.GET, "/keyring/secret-keys", this::getAllKeys);
+        route(router, HttpMethod.GET, "/keyring/secret-key/:alias", this::getKey);
+        route(router, HttpMethod.DELETE, "/keyring/secret-key/:alias", this::deleteKey);
+        route(router, HttpMethod.POST, "/keyring/secret-keys", this::putKey).consumes("application/json");
+        route(router, HttpMethod.POST, "/keyring/secret-keys/import", this::importKeys);
+        route(router, HttpMethod.POST, "/keyring/secret-keys/get", this::getKeys);
+        route(router, HttpMethod.GET, "/keyring/changes", this::getChanges);
+        route(router, HttpMethod.GET, "/keyring/cache/stats", this::getCacheStats);
+        route(router, HttpMethod.GET, "/metrics", this::getMetrics);
+        route(router, HttpMethod.GET, "/health/live", this::getLiveness);
+        route(router, HttpMethod.GET, "/health/ready", this::getReadiness);
 
 
         LOGGER.info("Start WEB server");
         HttpServerOptions httpOptions = getHttpServerOptions();
         // Create the HTTP server and pass the "accept" method to the request handler.
-        vertx
-            .createHttpServer(httpOptions)
+        HttpServer server = vertx.createHttpServer(httpOptions);
+        if (httpOptions.isSsl()) {
+            sharedSslContext().install(server);
+        }
+        server
             .requestHandler(router::accept)
             .listen(port, result -> {
                 if (result.succeeded()) {
@@ -96,10 +184,10 @@ public class KeyringVerticle extends AbstractVerticle {
     }
 
     private HttpServerOptions getHttpServerOptions() {
-        HttpServerOptions httpOptions = null;
+        HttpServerOptions httpOptions = getTunedHttpServerOptions();
         final boolean useSSL = config().getBoolean(SERVER_USE_SSL, false);
         if (useSSL) {
-            httpOptions = new HttpServerOptions().setSsl(true);
+            httpOptions.setSsl(true);
 
             final String keystoreType = config().getString(SERVER_SSL_KEYSTORE_TYPE);
             switch (keystoreType) {
@@ -137,36 +225,86 @@ public class KeyringVerticle extends AbstractVerticle {
                         throw new KeyringConfigurationException("SSL truststore type is invalid, expected JKS or P12");
                 }
             }
-        } else {
-            httpOptions = new HttpServerOptions();
         }
         return httpOptions;
     }
 
+    /**
+     * @return the SSL context shared by the instances, created by the first one (see {@link ServerSslContext}). Its
+     * creator checks the stores every "ssl.reload.interval" seconds and reloads them when they are modified.
+     */
+    private ServerSslContext sharedSslContext() {
+        LocalMap<String, ServerSslContext> shared = vertx.sharedData().getLocalMap(SHARED_MAP);
+        ServerSslContext sslContext = shared.get(SHARED_SSL_CONTEXT);
+        if (sslContext != null) {
+            return sslContext;
+        }
+        ServerSslContext created = new ServerSslContext(config(), metrics);
+        sslContext = shared.putIfAbsent(SHARED_SSL_CONTEXT, created);
+        if (sslContext != null) {
+            return sslContext;
+        }
+        sslContextOwner = true;
+        int reloadInterval = config().getInteger(SERVER_SSL_RELOAD_INTERVAL, SERVER_SSL_DEFAULT_RELOAD_INTERVAL);
+        if (reloadInterval > 0) {
+            vertx.setPeriodic(reloadInterval * 1000L, timer -> vertx.executeBlocking(f -> {
+                created.reloadIfModified();
+                f.complete();
+            }, false, null));
+        }
+        return created;
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (sslContextOwner) {
+            vertx.sharedData().getLocalMap(SHARED_MAP).remove(SHARED_SSL_CONTEXT);
+        }
+    }
+
+    /**
+     * Connection and socket options of the server. The "default" profile keeps the defaults of Vert.x, the
+     * "performance" profile keeps the connections open for reuse : TCP keep-alive, an idle timeout closing the
+     * connections left open by the clients, a larger accept backlog and pooled buffers. Each option may be set on
+     * its own, over the profile.
+     *
+     * The compression is disabled unless explicitly enabled : the responses are small and carry secrets.
+     */
+    private HttpServerOptions getTunedHttpServerOptions() {
+        final String profile = config().getString(SERVER_HTTP_PROFILE, SERVER_HTTP_PROFILE_DEFAULT);
+        final boolean performance;
+        switch (profile) {
+            case SERVER_HTTP_PROFILE_DEFAULT:
+                performance = false;
+                break;
+            case SERVER_HTTP_PROFILE_PERFORMANCE:
+                performance = true;
+                break;
+            default:
+                throw new KeyringConfigurationException("HTTP profile is invalid, expected default or performance");
+        }
+        HttpServerOptions httpOptions = new HttpServerOptions();
+        httpOptions.setTcpNoDelay(config().getBoolean(SERVER_HTTP_TCP_NODELAY, HttpServerOptions.DEFAULT_TCP_NO_DELAY));
+        httpOptions.setTcpKeepAlive(config().getBoolean(SERVER_HTTP_TCP_KEEPALIVE,
+                performance || HttpServerOptions.DEFAULT_TCP_KEEP_ALIVE));
+        httpOptions.setIdleTimeout(config().getInteger(SERVER_HTTP_IDLE_TIMEOUT,
+                performance ? SERVER_HTTP_PERFORMANCE_IDLE_TIMEOUT : HttpServerOptions.DEFAULT_IDLE_TIMEOUT));
+        httpOptions.setAcceptBacklog(config().getInteger(SERVER_HTTP_ACCEPT_BACKLOG,
+                performance ? SERVER_HTTP_PERFORMANCE_ACCEPT_BACKLOG : HttpServerOptions.DEFAULT_ACCEPT_BACKLOG));
+        httpOptions.setUsePooledBuffers(config().getBoolean(SERVER_HTTP_POOLED_BUFFERS,
+                performance || HttpServerOptions.DEFAULT_USE_POOLED_BUFFERS));
+        if (config().containsKey(SERVER_HTTP_SEND_BUFFER)) {
+            httpOptions.setSendBufferSize(config().getInteger(SERVER_HTTP_SEND_BUFFER));
+        }
+        if (config().containsKey(SERVER_HTTP_RECEIVE_BUFFER)) {
+            httpOptions.setReceiveBufferSize(config().getInteger(SERVER_HTTP_RECEIVE_BUFFER));
+        }
+        httpOptions.setCompressionSupported(config().getBoolean(SERVER_HTTP_COMPRESSION, false));
+        return httpOptions;
+    }
+
     public void getAliases(RoutingContext routingContext) {
-        vertx.eventBus().send(
-                LIST_ALIASES,
-                "",
-                new DeliveryOptions().setSendTimeout(processingTimeOut),
-                r -> {
-                    LOGGER.info("[Main] getAllAliases Receiving reply in " + Thread.currentThread().getName());
-                    if (r.succeeded()) {
-                        String aliases = (String) r.result().body();
-                        if (aliases == null || aliases.isEmpty()) {
-                            routingContext.response().setStatusCode(204).end();
-                            LOGGER.info("[Main] getAllAliases Receiving opuptu in " + Thread.currentThread().getName());
-                        } else {
-                            routingContext.response()
-                                    .putHeader("content-type", "application/json; charset=utf-8")
-                                    .end(aliases);
-                            LOGGER.info("[Main] getAllAliases Receiving opuptu in " + Thread.currentThread().getName());
-                        }
-                    } else {
-                        // on failure, the resultHander contains a Throwable accessible through "cause" method
-                        manageFailedResult(routingContext, r);
-                    }
-                }
-        );
+        listEntries(routingContext, LIST_ALIASES, "[", "]");
 
         /*
         vertx.executeBlocking(future -> {
@@ -192,10 +330,119 @@ public class KeyringVerticle extends AbstractVerticle {
          */
     }
 
+    /**
+     * Adds a measured route, the routes of the keyring API answer 503 until the provider is open (lazy startup).
+     */
+    private Route route(Router router, HttpMethod method, String path, Handler<RoutingContext> handler) {
+        RouteMetrics routeMetrics = new RouteMetrics(path, method.name());
+        boolean keystore = path.startsWith("/keyring/");
+        return router.route(method, path).handler(routingContext -> {
+            routingContext.put(ROUTE_METRICS, routeMetrics);
+            if (keystore && !provider.isOpen()) {
+                routingContext.response().putHeader(HttpHeaders.RETRY_AFTER, "1");
+                responseWithError(routingContext, 503, "Keystore not ready, retry later");
+                return;
+            }
+            handler.handle(routingContext);
+        });
+    }
+
+    /**
+     * Durations of the requests of a route, the histogram of each status is looked up once.
+     */
+    private final class RouteMetrics {
+        private final String path;
+        private final String method;
+        private final AtomicReferenceArray<Histogram> byStatus = new AtomicReferenceArray<>(600);
+
+        private RouteMetrics(String path, String method) {
+            this.path = path;
+            this.method = method;
+        }
+
+        private Histogram histogram(int status) {
+            if (status < 0 || status >= byStatus.length()) {
+                return requestDuration(path, method, status);
+            }
+            Histogram histogram = byStatus.get(status);
+            if (histogram == null) {
+                histogram = requestDuration(path, method, status);
+                byStatus.set(status, histogram);
+            }
+            return histogram;
+        }
+    }
+
+    private Histogram requestDuration(String route, String method, int status) {
+        return metrics.histogram("keyring_http_request_duration_seconds", "Duration of the HTTP requests",
+                "route", route, "method", method, "status", Integer.toString(status));
+    }
+
+    /**
+     * Records the duration of the request once its response is sent, by route (path of the matching route,
+     * "other" if no route matches), method and status.
+     */
+    private void measure(RoutingContext routingContext) {
+        long start = System.nanoTime();
+        routingContext.addBodyEndHandler(v -> {
+            RouteMetrics route = routingContext.get(ROUTE_METRICS);
+            int status = routingContext.response().getStatusCode();
+            Histogram histogram = route == null
+                    ? requestDuration("other", routingContext.request().method().name(), status)
+                    : route.histogram(status);
+            histogram.recordSince(start);
+        });
+        routingContext.next();
+    }
+
+    /**
+     * Counts a request in flight if the admission control accepts it, see {@link AdmissionControl}.
+     *
+     * @return false if the request is rejected, the 503 response is then sent
+     */
+    private boolean admit(RoutingContext routingContext, String address) {
+        if (admission.tryAcquire(AdmissionControl.operation(address))) {
+            return true;
+        }
+        routingContext.response().putHeader(HttpHeaders.RETRY_AFTER, admission.getRetryAfter());
+        responseWithError(routingContext, 503, "Too many requests in progress, retry later");
+        return false;
+    }
+
+    /**
+     * Sends a message to a keystore verticle, counted by the queue metrics until its reply is received. A message to
+     * a limited address must have been admitted (see {@link #admit(RoutingContext, String)}), it is released with
+     * its reply.
+     */
+    private void request(String address, Object body, DeliveryOptions options, Handler<AsyncResult<Message<Object>>> replyHandler) {
+        vertx.eventBus().send(address, body, metrics.sending(address, options), (AsyncResult<Message<Object>> r) -> {
+            metrics.replied(address);
+            AdmissionControl.Operation operation = AdmissionControl.operation(address);
+            if (operation != null) {
+                admission.release(operation);
+            }
+            replyHandler.handle(r);
+        });
+    }
+
+    /**
+     * @return the compact JSON form of the value, encoded without an intermediate String
+     */
+    private static Buffer encode(Object value) {
+        try {
+            return Buffer.buffer(Json.mapper.writeValueAsBytes(value));
+        } catch (JsonProcessingException e) {
+            throw new EncodeException("Failed to encode as JSON: " + e.getMessage());
+        }
+    }
+
     private void manageFailedResult(RoutingContext routingContext, AsyncResult<Message<Object>> r) {
         ReplyException replyExc = (ReplyException) r.cause();
         LOGGER.throwing(getClass().getName(), "Exception : " + replyExc.getMessage(), replyExc);
+        metrics.counter("keyring_eventbus_reply_failures_total", "Requests to the keystore verticles that failed, by failure type",
+                "failure", replyExc.failureType().name()).increment();
         if (replyExc.failureType() == ReplyFailure.TIMEOUT) {
+            routingContext.response().putHeader(HttpHeaders.RETRY_AFTER, admission.getRetryAfter());
             responseWithError(routingContext, 503, "Server unavailable, retry later");
         } else if (replyExc.failureType() == ReplyFailure.NO_HANDLERS) {
             responseWithError(routingContext, 500, "Internal Server Error");
@@ -208,26 +455,83 @@ public class KeyringVerticle extends AbstractVerticle {
         Map<String, String> body = new HashMap<>();
         body.put("message", message);
         routingContext.response().setStatusCode(status)
-                .putHeader("content-type", "application/json; charset=utf-8")
-                .end(Json.encodePrettily(body));
+                .putHeader(HttpHeaders.CONTENT_TYPE, JSON_CONTENT_TYPE)
+                .end(Json.encode(body));
     }
 
     public void getAllKeys(RoutingContext routingContext) {
-        System.out.println("[Main] getAllKeys Received by " + Thread.currentThread().getName());
-        vertx.eventBus().send(
-                LIST_SECRET_KEYS,
-                "",
-                new DeliveryOptions().setSendTimeout(processingTimeOut),
+        listEntries(routingContext, LIST_SECRET_KEYS, "{", "}");
+    }
+
+    /**
+     * Lists the aliases or the secret keys.
+     *
+     * The optional parameters "prefix", "cursor" and "limit" select a page of the result (aliases starting with
+     * the prefix, strictly greater than the cursor, at most limit entries). If the result has more entries,
+     * the cursor of the next page is given by the X-Next-Cursor header. The parameters "algorithm" and
+     * "created-after" filter the entries on their metadata.
+     * With the parameter "stream=true", the whole result is sent in a chunked response written page by page,
+     * so it is never fully loaded in memory.
+     */
+    private void listEntries(RoutingContext routingContext, String address, String open, String close) {
+        HttpServerRequest request = routingContext.request();
+        ListQuery query = new ListQuery();
+        query.setPrefix(request.getParam(LIST_PREFIX));
+        query.setCursor(request.getParam(LIST_CURSOR));
+        query.setAlgorithm(request.getParam(LIST_ALGORITHM));
+        Optional<String> limit = Optional.ofNullable(request.getParam(LIST_LIMIT));
+        if (limit.isPresent()) {
+            try {
+                int value = Integer.parseInt(limit.get());
+                if (value <= 0) {
+                    throw new NumberFormatException();
+                }
+                query.setLimit(value);
+            } catch (NumberFormatException e) {
+                responseWithError(routingContext, 400, "limit must be a positive integer");
+                return;
+            }
+        }
+        Optional<String> createdAfter = Optional.ofNullable(request.getParam(LIST_CREATED_AFTER));
+        if (createdAfter.isPresent()) {
+            try {
+                query.setCreatedAfter(parseDate(createdAfter.get()));
+            } catch (DateTimeParseException e) {
+                responseWithError(routingContext, 400, "created-after must be a number of milliseconds or an ISO-8601 date");
+                return;
+            }
+        }
+
+        if (!admit(routingContext, address)) {
+            return;
+        }
+        if (Boolean.parseBoolean(request.getParam("stream"))) {
+            if (query.getLimit() == 0) {
+                query.setLimit(streamPageSize);
+            }
+            ListStream stream = new ListStream(routingContext, address, query, open, close);
+            routingContext.response().closeHandler(v -> stream.closed = true);
+            streamPage(stream);
+            return;
+        }
+
+        request(
+                address,
+                query,
+                processingOptions,
                 r -> {
-                    LOGGER.info("[Main] getAllKeys Receiving reply in " + Thread.currentThread().getName());
+                    LOGGER.fine(() -> "[Main] list " + address + " Receiving reply in " + Thread.currentThread().getName());
                     if (r.succeeded()) {
-                        String secretKeys = (String) r.result().body();
-                        if (secretKeys == null || secretKeys.isEmpty()) {
+                        Page<?> page = (Page<?>) r.result().body();
+                        if (page == null) {
                             routingContext.response().setStatusCode(204).end();
                         } else {
+                            if (page.getNextCursor() != null) {
+                                routingContext.response().putHeader("X-Next-Cursor", page.getNextCursor());
+                            }
                             routingContext.response()
-                                    .putHeader("content-type", "application/json; charset=utf-8")
-                                    .end(secretKeys);
+                                    .putHeader(HttpHeaders.CONTENT_TYPE, JSON_CONTENT_TYPE)
+                                    .end(encode(page.getEntries()));
                         }
                     } else {
                         // on failure, the resultHander contains a Throwable accessible through "cause" method
@@ -237,23 +541,136 @@ public class KeyringVerticle extends AbstractVerticle {
         );
     }
 
+    /**
+     * @return the date in milliseconds since the epoch, given as a number of milliseconds or as an ISO-8601 instant
+     */
+    private static long parseDate(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return Instant.parse(value).toEpochMilli();
+        }
+    }
+
+    /**
+     * State of a list sent in a chunked response
+     */
+    private static final class ListStream {
+        private final RoutingContext routingContext;
+        private final String address;
+        private ListQuery query;
+        private final String open;
+        private final String close;
+        private boolean started;
+        private boolean empty = true;
+        private volatile boolean closed;
+
+        private ListStream(RoutingContext routingContext, String address, ListQuery query, String open, String close) {
+            this.routingContext = routingContext;
+            this.address = address;
+            this.query = query;
+            this.open = open;
+            this.close = close;
+        }
+    }
+
+    /**
+     * Requests the next page of a streamed list and writes it, the following page is requested once the
+     * response is able to accept more data.
+     */
+    private void streamPage(ListStream stream) {
+        request(
+                stream.address,
+                stream.query,
+                processingOptions,
+                r -> {
+                    HttpServerResponse response = stream.routingContext.response();
+                    if (stream.closed) {
+                        return;
+                    }
+                    if (r.failed()) {
+                        if (stream.started) {
+                            // the status is already sent, the truncated response is signaled by closing the connection
+                            LOGGER.throwing(getClass().getName(), "Exception on streamed list", r.cause());
+                            response.close();
+                        } else {
+                            manageFailedResult(stream.routingContext, r);
+                        }
+                        return;
+                    }
+                    if (!stream.started) {
+                        stream.started = true;
+                        response.setChunked(true)
+                                .putHeader(HttpHeaders.CONTENT_TYPE, JSON_CONTENT_TYPE)
+                                .write(stream.open);
+                    }
+
+                    // each page is encoded as a JSON array (or object), only its elements are written
+                    Page<?> page = (Page<?>) r.result().body();
+                    if (page != null) {
+                        String elements = Json.encode(page.getEntries());
+                        elements = elements.substring(1, elements.length() - 1);
+                        if (!elements.isEmpty()) {
+                            response.write(stream.empty ? elements : "," + elements);
+                            stream.empty = false;
+                        }
+                    }
+
+                    String next = page == null ? null : page.getNextCursor();
+                    if (next == null) {
+                        response.end(stream.close);
+                    } else {
+                        // the query sent is shared with the reader, the next page is requested with a new one
+                        ListQuery nextQuery = stream.query.copy();
+                        nextQuery.setCursor(next);
+                        stream.query = nextQuery;
+                        if (response.writeQueueFull()) {
+                            response.drainHandler(v -> nextPage(stream));
+                        } else {
+                            nextPage(stream);
+                        }
+                    }
+                }
+        );
+    }
+
+    /**
+     * Requests the next page of an admitted stream, always admitted : the stream has a single page in flight.
+     */
+    private void nextPage(ListStream stream) {
+        admission.acquire(AdmissionControl.operation(stream.address));
+        streamPage(stream);
+    }
+
+    /**
+     * A key already encoded is written from the cache of the provider, without going through the event bus. The
+     * others are read by a KeystoreReaderVerticle then encoded, the encoded form is kept with the cached key until
+     * its alias is written. The off-heap keys are written from their block in the arena, without
+     * being decoded. The response has an ETag, a request whose If-None-Match header matches it gets a 304.
+     */
     public void getKey(RoutingContext routingContext) {
-        Optional<String> aliasParam = Optional.ofNullable(routingContext.request().getParam("alias"));
-        if (aliasParam.isPresent()) {
-            vertx.eventBus().send(
+        String alias = routingContext.request().getParam("alias");
+        if (alias != null) {
+            EncodedKey cached = provider.getEncodedSecretKey(alias);
+            if (cached != null) {
+                writeKey(routingContext, cached);
+                return;
+            }
+            if (!admit(routingContext, GET_SECRET_KEY)) {
+                return;
+            }
+            request(
                     GET_SECRET_KEY,
-                    aliasParam.get(),
-                    new DeliveryOptions().setSendTimeout(processingTimeOut),
+                    alias,
+                    processingOptions,
                     r -> {
-                        LOGGER.info("[Main] getKey Receiving reply in " + Thread.currentThread().getName());
+                        LOGGER.fine(() -> "[Main] getKey Receiving reply in " + Thread.currentThread().getName());
                         if (r.succeeded()) {
-                            String secretKey = (String) r.result().body();
-                            if (secretKey == null || secretKey.isEmpty()) {
+                            SecretKey secretKey = (SecretKey) r.result().body();
+                            if (secretKey == null) {
                                 routingContext.response().setStatusCode(404).end();
                             } else {
-                                routingContext.response()
-                                        .putHeader("content-type", "application/json; charset=utf-8")
-                                        .end(secretKey);
+                                writeKey(routingContext, provider.encode(secretKey));
                             }
                         } else {
                             // on failure, the resultHander contains a Throwable accessible through "cause" method
@@ -266,21 +683,235 @@ public class KeyringVerticle extends AbstractVerticle {
         }
     }
 
+    /**
+     * Multi-get : the body is a JSON array of aliases (at most {@link ConfigConstants#SERVER_MULTIGET_MAX}), all the
+     * keys are read by a single message to a KeystoreReaderVerticle. The response gives the keys found indexed by
+     * alias and the unknown aliases : {"keys":{...},"missing":[...]}.
+     */
+    public void getKeys(RoutingContext routingContext) {
+        String body = routingContext.getBodyAsString();
+        if (body == null || body.isEmpty()) {
+            responseWithError(routingContext, 400, "The list of aliases is missing from the request body");
+            return;
+        }
+        Set<String> aliases;
+        try {
+            aliases = new LinkedHashSet<>(Arrays.asList(Json.decodeValue(body, String[].class)));
+        } catch (DecodeException e) {
+            responseWithError(routingContext, 400, "The list of aliases is not a valid JSON array of strings");
+            return;
+        }
+        if (aliases.isEmpty() || aliases.contains(null)) {
+            responseWithError(routingContext, 400, "The list of aliases is empty or contains null");
+            return;
+        }
+        if (aliases.size() > multiGetMax) {
+            responseWithError(routingContext, 400, "Too many aliases, at most " + multiGetMax + " per request");
+            return;
+        }
+        if (!admit(routingContext, GET_SECRET_KEYS)) {
+            return;
+        }
+        request(
+                GET_SECRET_KEYS,
+                aliases.toArray(new String[aliases.size()]),
+                processingOptions,
+                r -> {
+                    LOGGER.fine(() -> "[Main] getKeys Receiving reply in " + Thread.currentThread().getName());
+                    if (r.succeeded()) {
+                        routingContext.response().setStatusCode(200)
+                                .putHeader(HttpHeaders.CONTENT_TYPE, JSON_CONTENT_TYPE)
+                                .end(encode(r.result().body()));
+                    } else {
+                        // on failure, the resultHander contains a Throwable accessible through "cause" method
+                        manageFailedResult(routingContext, r);
+                    }
+                }
+        );
+    }
+
+    /**
+     * Changes of the keystore after a revision : {"revision":..., "changes":[{"revision":..., "alias":..., "type":"put|delete"}]}.
+     * The last change of each alias is given, the keys put are then read with the multi-get. The revision of the
+     * response is the one to give as "since" to the next request.
+     *
+     * Without the "since" parameter, only the current revision is given. With the "wait" parameter (in seconds, at
+     * most {@link ConfigConstants#SERVER_CHANGES_MAX_WAIT}), a request without changes is kept open until the next
+     * commit or the end of the wait (long poll), a maximum wait of 0 disables the long polls. The "limit" parameter bounds the number of changes read.
+     * The changes are kept in a ring buffer, a revision older than the oldest change kept is answered by a 410 with
+     * the current revision : the client has to reload the keys.
+     *
+     * The feed is read from the event loop, these requests never go to the keystore verticles.
+     */
+    public void getChanges(RoutingContext routingContext) {
+        HttpServerRequest request = routingContext.request();
+        long since;
+        int wait;
+        int limit;
+        try {
+            String sinceParam = request.getParam("since");
+            if (sinceParam == null) {
+                writeChanges(routingContext, 200, emptyChanges(feed.getRevision()));
+                return;
+            }
+            since = Long.parseLong(sinceParam);
+            wait = Optional.ofNullable(request.getParam("wait")).map(Integer::parseInt).orElse(0);
+            limit = Optional.ofNullable(request.getParam("limit")).map(Integer::parseInt).orElse(changesMaxLimit);
+            if (since < 0 || wait < 0 || limit <= 0) {
+                throw new NumberFormatException();
+            }
+        } catch (NumberFormatException e) {
+            responseWithError(routingContext, 400, "since, wait and limit must be positive integers");
+            return;
+        }
+        ChangeWait changeWait = new ChangeWait(routingContext, since, Math.min(limit, changesMaxLimit));
+        long delay = Math.min(wait, changesMaxWait) * 1000L;
+        // a timer needs a positive delay : a request which can't wait is answered at once
+        if (!answer(changeWait, delay <= 0)) {
+            changeWaits.add(changeWait);
+            changeWait.timer = vertx.setTimer(delay, id -> {
+                changeWaits.remove(changeWait);
+                answer(changeWait, true);
+            });
+            routingContext.response().closeHandler(v -> {
+                changeWaits.remove(changeWait);
+                vertx.cancelTimer(changeWait.timer);
+            });
+        }
+    }
+
+    /**
+     * A commit wakes up the long polls having new changes.
+     */
+    private void changed() {
+        Iterator<ChangeWait> waits = changeWaits.iterator();
+        while (waits.hasNext()) {
+            ChangeWait changeWait = waits.next();
+            if (answer(changeWait, false)) {
+                waits.remove();
+                vertx.cancelTimer(changeWait.timer);
+            }
+        }
+    }
+
+    /**
+     * Answers a request of the changes if there are changes after its revision, or if it can't wait.
+     *
+     * @return false if the request is waiting
+     */
+    private boolean answer(ChangeWait changeWait, boolean now) {
+        ChangePage page = feed.since(changeWait.since, changeWait.limit);
+        if (page == null) {
+            writeChanges(changeWait.routingContext, 410, emptyChanges(feed.getRevision()));
+        } else if (now || !page.getChanges().isEmpty()) {
+            writeChanges(changeWait.routingContext, 200, page);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static ChangePage emptyChanges(long revision) {
+        ChangePage page = new ChangePage();
+        page.setRevision(revision);
+        page.setChanges(Collections.emptyList());
+        return page;
+    }
+
+    private void writeChanges(RoutingContext routingContext, int status, ChangePage page) {
+        routingContext.response().setStatusCode(status)
+                .putHeader(HttpHeaders.CONTENT_TYPE, JSON_CONTENT_TYPE)
+                .end(encode(page));
+    }
+
+    /**
+     * Request of the changes after a revision, kept until there are changes (long poll)
+     */
+    private static final class ChangeWait {
+        private final RoutingContext routingContext;
+        private final long since;
+        private final int limit;
+        private long timer;
+
+        private ChangeWait(RoutingContext routingContext, long since, int limit) {
+            this.routingContext = routingContext;
+            this.since = since;
+            this.limit = limit;
+        }
+    }
+
+    private void writeKey(RoutingContext routingContext, EncodedKey key) {
+        try {
+            HttpServerResponse response = routingContext.response().putHeader(HttpHeaders.ETAG, key.getEtag());
+            if (key.matches(routingContext.request().getHeader(HttpHeaders.IF_NONE_MATCH))) {
+                response.setStatusCode(304).end();
+            } else {
+                response.putHeader(HttpHeaders.CONTENT_TYPE, JSON_CONTENT_TYPE).end(key.getBody());
+            }
+        } finally {
+            key.release();
+        }
+    }
+
     public void putKey(RoutingContext routingContext) {
+        String body = routingContext.getBodyAsString();
+        if (body == null || body.isEmpty()) {
+            responseWithError(routingContext, 400, "SecretKey is missing from the request body");
+            return;
+        }
+        SecretKey key;
+        try {
+            key = Json.decodeValue(body, SecretKey.class);
+        } catch (DecodeException e) {
+            responseWithError(routingContext, 400, "SecretKey is not a valid JSON object");
+            return;
+        }
+        if (!admit(routingContext, POST_SECRET_KEY)) {
+            return;
+        }
+        request(
+                POST_SECRET_KEY,
+                key,
+                processingOptions,
+                r -> {
+                    LOGGER.fine(() -> "[Main] postKey Receiving reply in " + Thread.currentThread().getName());
+                    if (r.succeeded()) {
+                        String secretKey = (String) r.result().body();
+                        routingContext.response().setStatusCode(201)
+                                .putHeader(HttpHeaders.CONTENT_TYPE, JSON_CONTENT_TYPE)
+                                .putHeader("Location", "/keyring/secret-key/" + secretKey) // TODO how to build location based on a route
+                                .end();
+                    } else {
+                        // on failure, the resultHander contains a Throwable accessible through "cause" method
+                        manageFailedResult(routingContext, r);
+                    }
+                }
+        );
+    }
+
+    /**
+     * Bulk import of SecretKeys, the body is either a JSON array or one JSON object per line
+     * (content-type application/x-ndjson). All the keys are stored with a single write of the keystore,
+     * the response gives the result of each key (created, conflict or invalid).
+     */
+    public void importKeys(RoutingContext routingContext) {
         Optional<String> body = Optional.ofNullable(routingContext.getBodyAsString());
         if (body.isPresent()) {
-            vertx.eventBus().send(
-                    POST_SECRET_KEY,
+            String contentType = routingContext.request().getHeader("content-type");
+            boolean ndjson = contentType != null && contentType.startsWith("application/x-ndjson");
+            if (!admit(routingContext, IMPORT_SECRET_KEYS)) {
+                return;
+            }
+            request(
+                    IMPORT_SECRET_KEYS,
                     body.get(),
-                    new DeliveryOptions().setSendTimeout(processingTimeOut),
+                    ndjson ? importNdjsonOptions : importJsonOptions,
                     r -> {
-                        LOGGER.info("[Main] postKey Receiving reply in " + Thread.currentThread().getName());
+                        LOGGER.fine(() -> "[Main] importKeys Receiving reply in " + Thread.currentThread().getName());
                         if (r.succeeded()) {
-                            String secretKey = (String) r.result().body();
-                            routingContext.response().setStatusCode(201)
-                                    .putHeader("content-type", "application/json; charset=utf-8")
-                                    .putHeader("Location", "/keyring/secret-key/" + secretKey) // TODO how to build location based on a route
-                                    .end();
+                            routingContext.response().setStatusCode(200)
+                                    .putHeader(HttpHeaders.CONTENT_TYPE, JSON_CONTENT_TYPE)
+                                    .end(Json.encode(r.result().body()));
                         } else {
                             // on failure, the resultHander contains a Throwable accessible through "cause" method
                             manageFailedResult(routingContext, r);
@@ -295,15 +926,18 @@ public class KeyringVerticle extends AbstractVerticle {
     public void deleteKey(RoutingContext routingContext) {
         Optional<String> aliasParam = Optional.ofNullable(routingContext.request().getParam("alias"));
         if (aliasParam.isPresent()) {
-            vertx.eventBus().send(
+            if (!admit(routingContext, DELETE_SECRET_KEY)) {
+                return;
+            }
+            request(
                     DELETE_SECRET_KEY,
                     aliasParam.get(),
-                    new DeliveryOptions().setSendTimeout(processingTimeOut),
+                    processingOptions,
                     r -> {
-                        LOGGER.info("[Main] deleteKey Receiving reply in " + Thread.currentThread().getName());
+                        LOGGER.fine(() -> "[Main] deleteKey Receiving reply in " + Thread.currentThread().getName());
                         if (r.succeeded()) {
                             routingContext.response().setStatusCode(204)
-                                    .putHeader("content-type", "application/json; charset=utf-8")
+                                    .putHeader(HttpHeaders.CONTENT_TYPE, JSON_CONTENT_TYPE)
                                     .end();
                         } else {
                             // on failure, the resultHander contains a Throwable accessible through "cause" method
@@ -315,4 +949,52 @@ public class KeyringVerticle extends AbstractVerticle {
             routingContext.response().setStatusCode(400).end();
         }
     }
+
+    /**
+     * Metrics in the Prometheus text format, read from the shared registry without going through the event bus.
+     */
+    public void getMetrics(RoutingContext routingContext) {
+        routingContext.response()
+                .putHeader("content-type", "text/plain; version=0.0.4; charset=utf-8")
+                .end(metrics.writePrometheus());
+    }
+
+    /**
+     * The server is up as soon as it listens.
+     */
+    public void getLiveness(RoutingContext routingContext) {
+        routingContext.response()
+                .putHeader(HttpHeaders.CONTENT_TYPE, JSON_CONTENT_TYPE)
+                .end("{\"status\":\"UP\"}");
+    }
+
+    /**
+     * The server is ready once the provider is open, the keys can then be read and written.
+     */
+    public void getReadiness(RoutingContext routingContext) {
+        boolean ready = provider.isOpen();
+        routingContext.response()
+                .setStatusCode(ready ? 200 : 503)
+                .putHeader(HttpHeaders.CONTENT_TYPE, JSON_CONTENT_TYPE)
+                .end(ready ? "{\"status\":\"READY\"}" : "{\"status\":\"STARTING\"}");
+    }
+
+    public void getCacheStats(RoutingContext routingContext) {
+        request(
+                CACHE_STATS,
+                "",
+                processingOptions,
+                r -> {
+                    LOGGER.fine(() -> "[Main] getCacheStats Receiving reply in " + Thread.currentThread().getName());
+                    if (r.succeeded()) {
+                        routingContext.response()
+                                .putHeader(HttpHeaders.CONTENT_TYPE, JSON_CONTENT_TYPE)
+                                .end(Json.encode(r.result().body()));
+                    } else {
+                        // on failure, the resultHander contains a Throwable accessible through "cause" method
+                        manageFailedResult(routingContext, r);
+                    }
+                }
+        );
+    }
 }
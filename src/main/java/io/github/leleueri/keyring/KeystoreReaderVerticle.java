@@ -0,0 +1,154 @@
+package io.github.leleueri.keyring;
+
+import io.github.leleueri.keyring.bean.AliasPage;
+import io.github.leleueri.keyring.bean.ListQuery;
+import io.github.leleueri.keyring.bean.SecretKey;
+import io.github.leleueri.keyring.bean.SecretKeyBatch;
+import io.github.leleueri.keyring.bean.SecretKeyPage;
+import io.github.leleueri.keyring.codec.KeyringCodecs;
+import io.github.leleueri.keyring.exception.KeyringApplicativeException;
+import io.github.leleueri.keyring.metrics.KeyringMetrics;
+import io.github.leleueri.keyring.provider.KeystoreProvider;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.eventbus.Message;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.logging.Logger;
+
+import static io.github.leleueri.keyring.KeystoreVerticle.*;
+
+/**
+ * Read only access to the keystore.
+ *
+ * This verticle is deployed as a worker with several instances : each instance processes its messages
+ * sequentially but the instances are executed in parallel on the worker pool (the event bus dispatches
+ * the messages in a round robin fashion between the registered consumers). All instances share the
+ * provider created by the {@link KeystoreVerticle}.
+ *
+ * The replies are beans sent with the {@link KeyringCodecs}, they are encoded in JSON by the HTTP verticle.
+ */
+public class KeystoreReaderVerticle extends AbstractVerticle {
+
+    private KeystoreProvider provider;
+    private KeyringMetrics metrics;
+
+    private final Logger LOGGER = Logger.getLogger(getClass().getName());
+
+    @Override
+    public void start(Future<Void> fut) throws Exception {
+        provider = sharedProvider(vertx);
+        metrics = sharedMetrics(vertx);
+        KeyringCodecs.register(vertx);
+
+        // - list all secret key aliases
+        vertx.eventBus().consumer(LIST_ALIASES, message -> {
+            LOGGER.fine(() -> "[Reader] list all aliases " + Thread.currentThread().getName());
+            metrics.received(LIST_ALIASES, message);
+            try {
+                ListQuery query = listQuery(message);
+                int limit = query.getLimit();
+                // one more alias is read to know if there is a next page
+                query.setLimit(limit > 0 ? limit + 1 : 0);
+                List<String> aliases = provider.listAlias(query);
+                if (aliases.isEmpty()) {
+                    message.reply(null);
+                } else {
+                    AliasPage page = new AliasPage();
+                    if (limit > 0 && aliases.size() > limit) {
+                        aliases = aliases.subList(0, limit);
+                        page.setNextCursor(aliases.get(limit - 1));
+                    }
+                    page.setEntries(aliases);
+                    message.reply(page);
+                }
+            } catch (KeyringApplicativeException e) {
+                LOGGER.throwing(getClass().getName(), "Exception on listAllAliases", e);
+                message.fail(500, e.getMessage()); // create an error object to return in JSON format??
+            }
+        });
+
+        // - list all secret keys
+        vertx.eventBus().consumer(LIST_SECRET_KEYS, message -> {
+            LOGGER.fine(() -> "[Reader] list all keys " + Thread.currentThread().getName());
+            metrics.received(LIST_SECRET_KEYS, message);
+            try {
+                ListQuery query = listQuery(message);
+                int limit = query.getLimit();
+                query.setLimit(limit > 0 ? limit + 1 : 0);
+                SortedMap<String, SecretKey> keys = provider.listSecretKeys(query);
+                if (keys.isEmpty()) {
+                    message.reply(null);
+                } else {
+                    SecretKeyPage page = new SecretKeyPage();
+                    if (limit > 0 && keys.size() > limit) {
+                        keys = keys.headMap(keys.lastKey());
+                        page.setNextCursor(keys.lastKey());
+                    }
+                    page.setEntries(keys);
+                    message.reply(page);
+                }
+            } catch (KeyringApplicativeException e) {
+                LOGGER.throwing(getClass().getName(), "Exception on listAllSecretKeys", e);
+                message.fail(500, e.getMessage()); // create an error object to return in JSON format??
+            }
+        });
+
+        // - Get a secret key description
+        vertx.eventBus().consumer(GET_SECRET_KEY, message -> {
+            LOGGER.fine(() -> "[Reader] get a key " + Thread.currentThread().getName());
+            metrics.received(GET_SECRET_KEY, message);
+            try {
+                message.reply(provider.findSecretKey((String) message.body()));
+            } catch (KeyringApplicativeException e) {
+                LOGGER.throwing(getClass().getName(), "Exception on getSecretKey", e);
+                message.fail(500, e.getMessage()); // create an error object to return in JSON format??
+            }
+        });
+
+        // - Get several secret keys at once
+        vertx.eventBus().consumer(GET_SECRET_KEYS, message -> {
+            LOGGER.fine(() -> "[Reader] get keys " + Thread.currentThread().getName());
+            metrics.received(GET_SECRET_KEYS, message);
+            try {
+                String[] aliases = (String[]) message.body();
+                Map<String, SecretKey> keys = provider.findSecretKeys(Arrays.asList(aliases));
+                List<String> missing = new ArrayList<>();
+                for (String alias : aliases) {
+                    if (!keys.containsKey(alias)) {
+                        missing.add(alias);
+                    }
+                }
+                SecretKeyBatch batch = new SecretKeyBatch();
+                batch.setKeys(keys);
+                batch.setMissing(missing);
+                message.reply(batch);
+            } catch (KeyringApplicativeException e) {
+                LOGGER.throwing(getClass().getName(), "Exception on getSecretKeys", e);
+                message.fail(500, e.getMessage());
+            }
+        });
+
+        // - Counters of the decoded key cache
+        vertx.eventBus().consumer(CACHE_STATS, message -> {
+            LOGGER.fine(() -> "[Reader] cache stats " + Thread.currentThread().getName());
+            metrics.received(CACHE_STATS, message);
+            message.reply(provider.getCacheStats());
+        });
+
+        fut.complete();
+    }
+
+    /**
+     * @return a copy of the query of a list message (the message body is shared with the sender), an empty
+     * query to get the whole list
+     */
+    private ListQuery listQuery(Message<Object> message) {
+        ListQuery query = (ListQuery) message.body();
+        return query == null ? new ListQuery() : query.copy();
+    }
+}
@@ -1,139 +1,507 @@
 package io.github.leleueri.keyring;
 
+import io.github.leleueri.keyring.bean.ImportResult;
 import io.github.leleueri.keyring.bean.SecretKey;
+import io.github.leleueri.keyring.codec.KeyringCodecs;
 import io.github.leleueri.keyring.exception.KeyringApplicativeException;
 import io.github.leleueri.keyring.exception.KeyringConfigurationException;
+import io.github.leleueri.keyring.metrics.Histogram;
+import io.github.leleueri.keyring.metrics.KeyringMetrics;
+import io.github.leleueri.keyring.provider.ChangeFeed;
+import io.github.leleueri.keyring.provider.JceksStorage;
+import io.github.leleueri.keyring.provider.KeyArena;
+import io.github.leleueri.keyring.provider.KeyStorage;
+import io.github.leleueri.keyring.provider.KeystoreMutation;
 import io.github.leleueri.keyring.provider.KeystoreProvider;
+import io.github.leleueri.keyring.provider.LogStorage;
+import io.github.leleueri.keyring.provider.MappedStorage;
+import io.github.leleueri.keyring.provider.SecretKeyCache;
+import io.github.leleueri.keyring.replication.Replicator;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.DecodeException;
 import io.vertx.core.json.Json;
+import io.vertx.core.shareddata.LocalMap;
 
-import java.util.Map;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
-import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static io.github.leleueri.keyring.ConfigConstants.*;
 /**
  * Created by eric on 07/10/15.
+ *
+ * Owner of the KeystoreProvider : this verticle creates the provider, shares it with the
+ * {@link KeystoreReaderVerticle} instances and processes all the mutations of the keystore.
+ * It must be deployed once as a worker so the writes are never executed concurrently.
+ *
+ * The POST and DELETE requests are committed by groups (group commit) : a request is queued and the queue is
+ * committed with a single persistence of the keystore once the commit window expires, or once the queue
+ * reaches the maximum batch size. Without window, the queue is committed as soon as the requests already
+ * delivered to this verticle are queued. Each request is acknowledged after the commit of its group.
+ *
+ * This verticle also creates the {@link KeyringMetrics} shared by all the verticles, and the {@link AdmissionControl}
+ * shared by the HTTP verticles.
+ *
+ * When "cluster.enabled" is true, the mutations are replicated to the other nodes by a {@link Replicator}
+ * running on the context of this verticle.
+ *
+ * With "app.keystore.startup" set to lazy, the storage is read in background : the deployment completes at once and
+ * the HTTP verticle answers 503 until the provider is open. Once open, the keys cached when the verticle was last
+ * stopped ("&lt;keystore path&gt;.hot") are loaded in the cache in background.
  */
 public class KeystoreVerticle extends AbstractVerticle {
 
     private KeystoreProvider provider;
+    private KeyringMetrics metrics;
+    private Histogram commitWait;
+    private Replicator replicator;
+    private Path hotAliases;
+
+    private int commitWindow;
+    private int commitBatchSize;
+    private final List<PendingWrite> pending = new ArrayList<>();
+    private boolean flushScheduled;
+    private long flushTimer = -1;
+
+    private static final class PendingWrite {
+        private final KeystoreMutation mutation;
+        private final Message<Object> message;
+        private final long queuedAt = System.nanoTime();
+
+        private PendingWrite(KeystoreMutation mutation, Message<Object> message) {
+            this.mutation = mutation;
+            this.message = message;
+        }
+    }
 
     private final Logger LOGGER = Logger.getLogger(getClass().getName());
 
     public static final String LIST_ALIASES = "keystore.list.aliases";
     public static final String LIST_SECRET_KEYS = "keystore.list.keys";
     public static final String GET_SECRET_KEY = "keystore.get.key";
+    public static final String GET_SECRET_KEYS = "keystore.get.keys";
     public static final String DELETE_SECRET_KEY = "keystore.delete.key";
     public static final String POST_SECRET_KEY = "keystore.post.key";
+    public static final String CACHE_STATS = "keystore.cache.stats";
+    public static final String IMPORT_SECRET_KEYS = "keystore.import.keys";
+
+    /**
+     * Published after each commit with the revision of the keystore (see {@link ChangeFeed})
+     */
+    public static final String KEYSTORE_CHANGED = "keystore.changed";
+
+    /**
+     * Parameters of the list requests, sent to LIST_ALIASES and LIST_SECRET_KEYS as a {@link io.github.leleueri.keyring.bean.ListQuery}
+     */
+    public static final String LIST_PREFIX = "prefix";
+    public static final String LIST_CURSOR = "cursor";
+    public static final String LIST_LIMIT = "limit";
+    public static final String LIST_ALGORITHM = "algorithm";
+    public static final String LIST_CREATED_AFTER = "created-after";
+
+    /**
+     * Header of the IMPORT_SECRET_KEYS messages giving the format of the body
+     */
+    public static final String IMPORT_FORMAT = "format";
+    public static final String IMPORT_FORMAT_JSON = "json";
+    public static final String IMPORT_FORMAT_NDJSON = "ndjson";
+
+    public static final String SHARED_MAP = "keyring.shared";
+    public static final String SHARED_PROVIDER = "provider";
+    public static final String SHARED_METRICS = "metrics";
+    public static final String SHARED_ADMISSION = "admission";
+    public static final String SHARED_FEED = "feed";
+
+    /**
+     * @return the provider registered by the KeystoreVerticle deployed into the given vertx instance
+     */
+    public static KeystoreProvider sharedProvider(Vertx vertx) {
+        LocalMap<String, KeystoreProvider> shared = vertx.sharedData().getLocalMap(SHARED_MAP);
+        KeystoreProvider provider = shared.get(SHARED_PROVIDER);
+        if (provider == null) {
+            throw new KeyringConfigurationException("The KeystoreVerticle must be deployed before the readers");
+        }
+        return provider;
+    }
+
+    /**
+     * @return the admission control registered by the KeystoreVerticle deployed into the given vertx instance
+     */
+    public static AdmissionControl sharedAdmission(Vertx vertx) {
+        LocalMap<String, AdmissionControl> shared = vertx.sharedData().getLocalMap(SHARED_MAP);
+        AdmissionControl admission = shared.get(SHARED_ADMISSION);
+        if (admission == null) {
+            throw new KeyringConfigurationException("The KeystoreVerticle must be deployed before the other verticles");
+        }
+        return admission;
+    }
+
+    /**
+     * @return the change feed registered by the KeystoreVerticle deployed into the given vertx instance
+     */
+    public static ChangeFeed sharedFeed(Vertx vertx) {
+        LocalMap<String, ChangeFeed> shared = vertx.sharedData().getLocalMap(SHARED_MAP);
+        ChangeFeed feed = shared.get(SHARED_FEED);
+        if (feed == null) {
+            throw new KeyringConfigurationException("The KeystoreVerticle must be deployed before the other verticles");
+        }
+        return feed;
+    }
+
+    /**
+     * @return the metrics registered by the KeystoreVerticle deployed into the given vertx instance
+     */
+    public static KeyringMetrics sharedMetrics(Vertx vertx) {
+        LocalMap<String, KeyringMetrics> shared = vertx.sharedData().getLocalMap(SHARED_MAP);
+        KeyringMetrics metrics = shared.get(SHARED_METRICS);
+        if (metrics == null) {
+            throw new KeyringConfigurationException("The KeystoreVerticle must be deployed before the other verticles");
+        }
+        return metrics;
+    }
 
     @Override
     public void start(Future<Void> fut) throws Exception {
-        String type = config().getString(APP_KEYSTORE_TYPE, APP_KEYSTORE_DEFAULT_TYPE);
-        if (!type.equals(APP_KEYSTORE_DEFAULT_TYPE)) {
-            throw new KeyringConfigurationException("Only the "+APP_KEYSTORE_DEFAULT_TYPE+" type is authorized for the keystore '"  + APP_KEYSTORE_TYPE +"'");
-        }
         String path = config().getString(APP_KEYSTORE_PATH, APP_KEYSTORE_DEFAULT_PATH);
-        String pwd = config().getString(APP_KEYSTORE_PWD);
-        String keypwd = config().getString(APP_KEYSTORE_SECRET_KEY_PWD);
+        int cacheSize = config().getInteger(APP_CACHE_SIZE, APP_CACHE_DEFAULT_SIZE);
+        long cacheTtl = config().getLong(APP_CACHE_TTL, APP_CACHE_DEFAULT_TTL);
+        KeyArena arena = config().getBoolean(APP_CACHE_OFFHEAP, false) ? new KeyArena() : null;
+        boolean lazy;
+        String startup = config().getString(APP_KEYSTORE_STARTUP, APP_KEYSTORE_STARTUP_EAGER);
+        switch (startup) {
+            case APP_KEYSTORE_STARTUP_EAGER:
+                lazy = false;
+                break;
+            case APP_KEYSTORE_STARTUP_LAZY:
+                lazy = true;
+                break;
+            default:
+                throw new KeyringConfigurationException("Keystore startup is invalid, expected " + APP_KEYSTORE_STARTUP_EAGER + " or " + APP_KEYSTORE_STARTUP_LAZY);
+        }
+        hotAliases = Paths.get(path + ".hot");
 
-        provider = new KeystoreProvider(type, pwd, path, keypwd);
+        metrics = new KeyringMetrics();
+        if (config().getBoolean(SERVER_METRICS_JMX, false)) {
+            metrics.enableJmx();
+        }
+        provider = new KeystoreProvider(createStorage(path), new SecretKeyCache(cacheSize, cacheTtl, arena), metrics, !lazy);
+
+        commitWindow = config().getInteger(APP_KEYSTORE_COMMIT_WINDOW, APP_KEYSTORE_DEFAULT_COMMIT_WINDOW);
+        commitBatchSize = config().getInteger(APP_KEYSTORE_COMMIT_BATCH, APP_KEYSTORE_DEFAULT_COMMIT_BATCH);
+        if (commitWindow < 0 || commitBatchSize < 1) {
+            throw new KeyringConfigurationException("Invalid group commit configuration, the window must be positive and the batch size greater than 0");
+        }
+        int changesCapacity = config().getInteger(APP_CHANGES_CAPACITY, APP_CHANGES_DEFAULT_CAPACITY);
+        if (changesCapacity < 1) {
+            throw new KeyringConfigurationException("Invalid change feed configuration, the capacity must be greater than 0");
+        }
+        ChangeFeed feed = new ChangeFeed(changesCapacity, metrics);
+        provider.addCommitListener(committed -> vertx.eventBus().publish(KEYSTORE_CHANGED, feed.append(committed)));
+        commitWait = metrics.histogram("keyring_commit_queue_wait_seconds", "Time spent by a write in the group commit queue");
+        metrics.gauge("keyring_commit_queue_size", "Writes waiting for the next group commit", pending::size);
+        vertx.sharedData().<String, KeystoreProvider>getLocalMap(SHARED_MAP).put(SHARED_PROVIDER, provider);
+        vertx.sharedData().<String, KeyringMetrics>getLocalMap(SHARED_MAP).put(SHARED_METRICS, metrics);
+        vertx.sharedData().<String, AdmissionControl>getLocalMap(SHARED_MAP).put(SHARED_ADMISSION, new AdmissionControl(config(), metrics));
+        vertx.sharedData().<String, ChangeFeed>getLocalMap(SHARED_MAP).put(SHARED_FEED, feed);
+        KeyringCodecs.register(vertx);
 
         // register this Verticle as consumer of keystore events
-        // - list all secret key aliases
-        vertx.eventBus().consumer(LIST_ALIASES, message -> {
-            LOGGER.fine("[Worker] list all aliases " + Thread.currentThread().getName());
-            try {
-                Set<String> aliases = provider.listAlias();
-                if (aliases.isEmpty()) {
-                    message.reply(null);
+        // (read events are consumed by the KeystoreReaderVerticle instances)
+        // - create a secret key description (decoded by the HTTP verticle)
+        vertx.eventBus().consumer(POST_SECRET_KEY, message -> {
+            LOGGER.fine(() -> "[Worker] post a key " + Thread.currentThread().getName());
+            metrics.received(POST_SECRET_KEY, message);
+            Optional<SecretKey> key = Optional.ofNullable((SecretKey) message.body());
+            if (key.isPresent()) {
+                final SecretKey secretKey = key.get();
+                Optional<String> error = validate(secretKey);
+                if (error.isPresent()) {
+                    message.fail(400, error.get());
                 } else {
-                    message.reply(Json.encodePrettily(aliases)); // to reply with an object we must have a message codec
+                    // the conflicts are detected by the commit
+                    enqueue(KeystoreMutation.create(secretKey), message);
                 }
-            } catch (KeyringApplicativeException e) {
-                LOGGER.throwing(getClass().getName(), "Exception on listAllAliases", e);
-                message.fail(500, e.getMessage()); // create an error object to return in JSON format??
+            } else {
+                message.fail(400, "SecretKey is missing from the request body");
             }
         });
 
-        // - list all secret keys
-        vertx.eventBus().consumer(LIST_SECRET_KEYS, message -> {
-            LOGGER.fine("[Worker] list all keys " + Thread.currentThread().getName());
-            try {
-                Map<String, SecretKey> keys = provider.listSecretKeys();
-                if (keys == null || keys.isEmpty()) {
-                    message.reply(null);
-                } else {
-                    message.reply(Json.encodePrettily(keys)); // to reply with an object we must have a message codec
-                }
-            } catch (KeyringApplicativeException e) {
-                LOGGER.throwing(getClass().getName(), "Exception on listAllSecretKeys", e);
-                message.fail(500, e.getMessage()); // create an error object to return in JSON format??
+        // - import a list of secret keys (JSON array or one JSON object per line)
+        vertx.eventBus().consumer(IMPORT_SECRET_KEYS, message -> {
+            LOGGER.fine(() -> "[Worker] import keys " + Thread.currentThread().getName());
+            metrics.received(IMPORT_SECRET_KEYS, message);
+            final String body = (String) message.body();
+            if (body == null || body.trim().isEmpty()) {
+                message.fail(400, "SecretKeys are missing from the request body");
+                return;
             }
-        });
-
-        // - Get a secret key description
-        vertx.eventBus().consumer(GET_SECRET_KEY, message -> {
-            LOGGER.fine("[Worker] get a key " + Thread.currentThread().getName());
+            // the writes received before are committed first
+            flush();
             try {
-                Optional<SecretKey> key = provider.getSecretKey((String) message.body());
-                if (key.isPresent()) {
-                    message.reply(Json.encodePrettily(key.get())); // to reply with an object we must have a message codec
+                // an entry that can't be decoded is kept as null to report it at its position
+                List<SecretKey> keys = new ArrayList<>();
+                if (IMPORT_FORMAT_NDJSON.equals(message.headers().get(IMPORT_FORMAT))) {
+                    String[] lines = body.split("\\r?\\n");
+                    for (String line : lines) {
+                        if (line.trim().isEmpty()) {
+                            continue;
+                        }
+                        try {
+                            keys.add(Json.decodeValue(line, SecretKey.class));
+                        } catch (DecodeException e) {
+                            keys.add(null);
+                        }
+                    }
                 } else {
-                    message.reply(null);
+                    keys.addAll(Arrays.asList(Json.decodeValue(body, SecretKey[].class)));
                 }
-            } catch (KeyringApplicativeException e) {
-                LOGGER.throwing(getClass().getName(), "Exception on getSecretKey", e);
-                message.fail(500, e.getMessage()); // create an error object to return in JSON format??
-            }
-        });
-
-        // - create a secret key description
-        vertx.eventBus().consumer(POST_SECRET_KEY, message -> {
-            LOGGER.fine("[Worker] post a key " + Thread.currentThread().getName());
-            try {
-                Optional<SecretKey> key = Optional.ofNullable((String) message.body()).map(str -> Json.decodeValue(str, SecretKey.class));
-                if (key.isPresent()) {
 
-                    final SecretKey secretKey = key.get();
-                    if (secretKey.getAlias() == null || secretKey.getAlias().isEmpty()) {
-                        message.fail(400, "Alias is missing");
-                    }
-                    if (secretKey.getB64Key() == null || secretKey.getB64Key().isEmpty()) {
-                        message.fail(400, "Key is missing");
-                    }
-                    if (secretKey.getAlgorithm() == null || secretKey.getAlgorithm().isEmpty()) {
-                        message.fail(400, "Algorithm is missing");
+                ImportResult[] results = new ImportResult[keys.size()];
+                List<SecretKey> valids = new ArrayList<>(keys.size());
+                for (int i = 0; i < keys.size(); i++) {
+                    SecretKey secretKey = keys.get(i);
+                    Optional<String> error = secretKey == null ? Optional.of("SecretKey is not a valid JSON object") : validate(secretKey);
+                    if (error.isPresent()) {
+                        results[i] = new ImportResult(secretKey == null ? null : secretKey.getAlias(), ImportResult.INVALID, error.get());
+                    } else {
+                        valids.add(secretKey);
                     }
+                }
 
-                    if(provider.getSecretKey(secretKey.getAlias()).isPresent()) {
-                        message.fail(409, "SecretKey already exists");
-                    } else {
-                        provider.addSecretKey(secretKey);
-                        message.reply(secretKey.getAlias());
+                List<ImportResult> imported = provider.importSecretKeys(valids);
+                int next = 0;
+                for (int i = 0; i < results.length; i++) {
+                    if (results[i] == null) {
+                        results[i] = imported.get(next++);
                     }
-                } else {
-                    message.fail(400, "SecretKey is missing from the request body");
                 }
+                message.reply(results);
+            } catch (DecodeException e) {
+                message.fail(400, "SecretKeys are not a valid JSON array");
             } catch (KeyringApplicativeException e) {
-                LOGGER.throwing(getClass().getName(), "Exception on postSecretKey", e);
-                message.fail(500, e.getMessage()); // create an error object to return in JSON format??
+                LOGGER.throwing(getClass().getName(), "Exception on importSecretKeys", e);
+                message.fail(500, e.getMessage());
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Unexpected exception on importSecretKeys", e);
+                message.fail(500, "Internal Server Error");
             }
         });
 
         // - Delete a secret key description
         vertx.eventBus().consumer(DELETE_SECRET_KEY, message -> {
-            LOGGER.fine("[Worker] delete a key " + Thread.currentThread().getName());
-            try {
-                provider.deleteSecretKey((String) message.body());
-                message.reply(null);
-            } catch (KeyringApplicativeException e) {
-                LOGGER.throwing(getClass().getName(), "Exception on deleteSecretKey", e);
-                message.fail(500, e.getMessage()); // create an error object to return in JSON format??
-            }
+            LOGGER.fine(() -> "[Worker] delete a key " + Thread.currentThread().getName());
+            metrics.received(DELETE_SECRET_KEY, message);
+            enqueue(KeystoreMutation.delete((String) message.body()), message);
         });
 
+        if (lazy) {
+            // the verticles are deployed while the storage is read, the HTTP verticle answers 503 until it is open
+            long start = System.nanoTime();
+            vertx.executeBlocking(f -> {
+                provider.open();
+                f.complete();
+            }, false, opened -> {
+                if (opened.succeeded()) {
+                    LOGGER.info("Keystore opened in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+                    opened(path);
+                } else {
+                    LOGGER.log(Level.SEVERE, "Unable to open the keystore, the keyring is not ready", opened.cause());
+                }
+            });
+        } else {
+            opened(path);
+        }
+
+        fut.complete();
+    }
+
+    /**
+     * Starts the replication and the warm up of the cache, once the provider is open.
+     */
+    private void opened(String path) {
+        if (config().getBoolean(CLUSTER_ENABLED, false)) {
+            replicator = new Replicator(vertx, provider, metrics, config(), Paths.get(path + ".replica"));
+            replicator.start();
+        }
+        if (config().getBoolean(APP_CACHE_WARMUP, true) && Files.exists(hotAliases)) {
+            vertx.executeBlocking(f -> {
+                long start = System.nanoTime();
+                try {
+                    int loaded = provider.warmUp(Files.readAllLines(hotAliases, StandardCharsets.UTF_8));
+                    LOGGER.info(loaded + " keys warmed up in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+                    f.complete();
+                } catch (IOException | KeyringApplicativeException e) {
+                    f.fail(e);
+                }
+            }, false, warmed -> {
+                if (warmed.failed()) {
+                    LOGGER.log(Level.WARNING, "Unable to warm up the cache from '" + hotAliases + "'", warmed.cause());
+                }
+            });
+        }
+    }
+
+    /**
+     * Saves the aliases of the cached keys, the most recently used first, they are warmed up on the next start.
+     */
+    private void saveHotAliases() {
+        if (!provider.isOpen() || !config().getBoolean(APP_CACHE_WARMUP, true)) {
+            return;
+        }
+        try {
+            Files.write(hotAliases, provider.getCachedAliases(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to save the cached aliases in '" + hotAliases + "'", e);
+        }
+    }
+
+    /**
+     * @return the storage selected by the keystore type
+     */
+    private KeyStorage createStorage(String path) {
+        String type = config().getString(APP_KEYSTORE_TYPE, APP_KEYSTORE_DEFAULT_TYPE);
+        String pwd = config().getString(APP_KEYSTORE_PWD);
+        String keypwd = config().getString(APP_KEYSTORE_SECRET_KEY_PWD);
+        int compaction = config().getInteger(APP_KEYSTORE_JOURNAL_COMPACTION, APP_KEYSTORE_JOURNAL_DEFAULT_COMPACTION);
+        switch (type) {
+            case APP_KEYSTORE_DEFAULT_TYPE:
+                JceksStorage.StorageMode storageMode;
+                String storage = config().getString(APP_KEYSTORE_STORAGE, APP_KEYSTORE_STORAGE_SNAPSHOT);
+                switch (storage) {
+                    case APP_KEYSTORE_STORAGE_SNAPSHOT:
+                        storageMode = JceksStorage.StorageMode.SNAPSHOT;
+                        break;
+                    case APP_KEYSTORE_STORAGE_JOURNAL:
+                        storageMode = JceksStorage.StorageMode.JOURNAL;
+                        break;
+                    default:
+                        throw new KeyringConfigurationException("Keystore storage is invalid, expected " + APP_KEYSTORE_STORAGE_SNAPSHOT + " or " + APP_KEYSTORE_STORAGE_JOURNAL);
+                }
+                return new JceksStorage(type, pwd, path, keypwd, storageMode, compaction, metrics);
+            case APP_KEYSTORE_TYPE_LOG:
+                return new LogStorage(path, keypwd, compaction, metrics);
+            case APP_KEYSTORE_TYPE_MAPPED:
+                return new MappedStorage(path, keypwd, compaction, metrics);
+            default:
+                throw new KeyringConfigurationException("Only the " + APP_KEYSTORE_DEFAULT_TYPE + ", " + APP_KEYSTORE_TYPE_LOG + " and " + APP_KEYSTORE_TYPE_MAPPED + " types are authorized for the keystore '" + APP_KEYSTORE_TYPE + "'");
+        }
+    }
+
+    private void enqueue(KeystoreMutation mutation, Message<Object> message) {
+        pending.add(new PendingWrite(mutation, message));
+        if (pending.size() >= commitBatchSize) {
+            flush();
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            if (commitWindow > 0) {
+                flushTimer = vertx.setTimer(commitWindow, id -> flush());
+            } else {
+                // executed after the messages already delivered to this worker
+                context.runOnContext(v -> flush());
+            }
+        }
+    }
+
+    /**
+     * Commits the pending writes with a single persistence of the keystore then replies to each request.
+     */
+    private void flush() {
+        if (flushTimer != -1) {
+            vertx.cancelTimer(flushTimer);
+            flushTimer = -1;
+        }
+        flushScheduled = false;
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<PendingWrite> batch = new ArrayList<>(pending);
+        pending.clear();
+        List<KeystoreMutation> mutations = new ArrayList<>(batch.size());
+        for (PendingWrite write : batch) {
+            mutations.add(write.mutation);
+            commitWait.recordSince(write.queuedAt);
+        }
+        LOGGER.fine(() -> "[Worker] commit " + mutations.size() + " writes " + Thread.currentThread().getName());
+
+        try {
+            provider.commit(mutations);
+        } catch (KeyringApplicativeException e) {
+            LOGGER.throwing(getClass().getName(), "Exception on commit", e);
+            failAll(batch, e.getMessage());
+            return;
+        } catch (RuntimeException e) {
+            // an unexpected failure must not leave the requests of the batch waiting for their timeout, the commit
+            // listeners can't throw so the batch is not persisted
+            LOGGER.log(Level.SEVERE, "Unexpected exception on commit", e);
+            failAll(batch, "Internal Server Error");
+            return;
+        }
+
+        for (PendingWrite write : batch) {
+            KeystoreMutation mutation = write.mutation;
+            switch (mutation.getStatus()) {
+                case CREATED:
+                    write.message.reply(mutation.getAlias());
+                    break;
+                case CONFLICT:
+                    write.message.fail(409, mutation.getMessage());
+                    break;
+                case INVALID:
+                    write.message.fail(400, mutation.getMessage());
+                    break;
+                default:
+                    // DELETED or ABSENT
+                    write.message.reply(null);
+            }
+        }
+    }
+
+    private static void failAll(List<PendingWrite> batch, String message) {
+        for (PendingWrite write : batch) {
+            write.message.fail(500, message);
+        }
+    }
+
+    /**
+     * @return the reason why the key can't be stored, if any
+     */
+    private Optional<String> validate(SecretKey secretKey) {
+        if (secretKey.getAlias() == null || secretKey.getAlias().isEmpty()) {
+            return Optional.of("Alias is missing");
+        }
+        if (secretKey.getB64Key() == null || secretKey.getB64Key().isEmpty()) {
+            return Optional.of("Key is missing");
+        }
+        if (secretKey.getAlgorithm() == null || secretKey.getAlgorithm().isEmpty()) {
+            return Optional.of("Algorithm is missing");
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public void stop() throws Exception {
+        flush();
+        if (replicator != null) {
+            replicator.close();
+        }
+        vertx.sharedData().getLocalMap(SHARED_MAP).remove(SHARED_PROVIDER);
+        vertx.sharedData().getLocalMap(SHARED_MAP).remove(SHARED_METRICS);
+        vertx.sharedData().getLocalMap(SHARED_MAP).remove(SHARED_ADMISSION);
+        vertx.sharedData().getLocalMap(SHARED_MAP).remove(SHARED_FEED);
+        saveHotAliases();
+        provider.close();
+        metrics.close();
     }
 }
@@ -0,0 +1,68 @@
+package io.github.leleueri.keyring;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+
+import java.util.logging.Logger;
+
+import static io.github.leleueri.keyring.ConfigConstants.*;
+
+/**
+ * Entry point of the keyring, deploys the verticles in order :
+ * <ul>
+ *     <li>the KeystoreVerticle, one worker instance owning the keystore and processing the mutations</li>
+ *     <li>the KeystoreReaderVerticle, several worker instances sharing the provider of the KeystoreVerticle</li>
+ *     <li>the KeyringVerticle, the HTTP edge, several instances (one per core by default) listening on the same
+ *     port : Vert.x spreads the connections between them in a round robin fashion, so the HTTP parsing and the
+ *     TLS processing use all the event loops</li>
+ * </ul>
+ * All of them get the configuration of this verticle.
+ */
+public class MainVerticle extends AbstractVerticle {
+
+    private final Logger LOGGER = Logger.getLogger(getClass().getName());
+
+    @Override
+    public void start(Future<Void> fut) throws Exception {
+        // Acording to the configuration a worker is never executed concurrently by Vert.x by more than one thread,
+        // but can executed by different threads at different times.
+        int readers = config().getInteger(APP_KEYSTORE_READERS, Runtime.getRuntime().availableProcessors());
+        int httpInstances = config().getInteger(SERVER_HTTP_INSTANCES, Runtime.getRuntime().availableProcessors());
+        LOGGER.info("Deploy KeystoreVerticle");
+        vertx.deployVerticle(KeystoreVerticle.class.getName(),
+                new DeploymentOptions()
+                        .setWorker(true) // as worker (like an actor so no concurrent acces on it!)
+                        .setConfig(config()),// provides the config object to this new verticle
+                writer -> {
+                    if (writer.failed()) {
+                        fut.fail(writer.cause());
+                        return;
+                    }
+                    LOGGER.info("Deploy " + readers + " KeystoreReaderVerticle");
+                    vertx.deployVerticle(KeystoreReaderVerticle.class.getName(),
+                            new DeploymentOptions()
+                                    .setWorker(true)
+                                    .setInstances(readers)
+                                    .setConfig(config()),
+                            reader -> {
+                                if (reader.failed()) {
+                                    fut.fail(reader.cause());
+                                    return;
+                                }
+                                LOGGER.info("Deploy " + httpInstances + " KeyringVerticle");
+                                vertx.deployVerticle(KeyringVerticle.class.getName(),
+                                        new DeploymentOptions()
+                                                .setInstances(httpInstances)
+                                                .setConfig(config()),
+                                        http -> {
+                                            if (http.failed()) {
+                                                fut.fail(http.cause());
+                                            } else {
+                                                fut.complete();
+                                            }
+                                        });
+                            });
+                });
+    }
+}
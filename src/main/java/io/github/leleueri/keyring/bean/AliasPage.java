@@ -0,0 +1,9 @@
+package io.github.leleueri.keyring.bean;
+
+import java.util.List;
+
+/**
+ * A page of sorted aliases.
+ */
+public class AliasPage extends Page<List<String>> {
+}
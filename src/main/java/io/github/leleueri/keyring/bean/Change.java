@@ -0,0 +1,55 @@
+package io.github.leleueri.keyring.bean;
+
+/**
+ * Change of an alias of the keystore, see {@link ChangePage}.
+ */
+public class Change {
+
+    public static final String PUT = "put";
+    public static final String DELETE = "delete";
+
+    private long revision;
+
+    private String alias;
+
+    private String type;
+
+    public Change() {
+    }
+
+    public Change(long revision, String alias, String type) {
+        this.revision = revision;
+        this.alias = alias;
+        this.type = type;
+    }
+
+    /**
+     * @return the revision of the keystore created by this change
+     */
+    public long getRevision() {
+        return revision;
+    }
+
+    public void setRevision(long revision) {
+        this.revision = revision;
+    }
+
+    public String getAlias() {
+        return alias;
+    }
+
+    public void setAlias(String alias) {
+        this.alias = alias;
+    }
+
+    /**
+     * @return {@link #PUT} if the key was created or replaced, {@link #DELETE} if it was deleted
+     */
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+}
@@ -0,0 +1,32 @@
+package io.github.leleueri.keyring.bean;
+
+import java.util.List;
+
+/**
+ * Changes of the keystore after a revision : the last change of each alias, in the order of the revisions.
+ */
+public class ChangePage {
+
+    private long revision;
+
+    private List<Change> changes;
+
+    /**
+     * @return the revision of the keystore covered by the changes, to give as "since" to get the next changes
+     */
+    public long getRevision() {
+        return revision;
+    }
+
+    public void setRevision(long revision) {
+        this.revision = revision;
+    }
+
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<Change> changes) {
+        this.changes = changes;
+    }
+}
@@ -0,0 +1,50 @@
+package io.github.leleueri.keyring.bean;
+
+/**
+ * Outcome of the import of one SecretKey in a bulk import.
+ */
+public class ImportResult {
+
+    public static final String CREATED = "created";
+    public static final String CONFLICT = "conflict";
+    public static final String INVALID = "invalid";
+
+    private String alias;
+
+    private String status;
+
+    private String message;
+
+    public ImportResult() {
+    }
+
+    public ImportResult(String alias, String status, String message) {
+        this.alias = alias;
+        this.status = status;
+        this.message = message;
+    }
+
+    public String getAlias() {
+        return alias;
+    }
+
+    public void setAlias(String alias) {
+        this.alias = alias;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,59 @@
+package io.github.leleueri.keyring.bean;
+
+/**
+ * Description of a SecretKey that doesn't contain the key material.
+ */
+public class KeyMetadata {
+    private String alias;
+
+    private String algorithm;
+
+    private String format;
+
+    private long creationDate;
+
+    public KeyMetadata() {
+    }
+
+    public KeyMetadata(String alias, String algorithm, String format, long creationDate) {
+        this.alias = alias;
+        this.algorithm = algorithm;
+        this.format = format;
+        this.creationDate = creationDate;
+    }
+
+    public String getAlias() {
+        return alias;
+    }
+
+    public void setAlias(String alias) {
+        this.alias = alias;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    /**
+     * @return the creation date of the entry in the keystore, in milliseconds since the epoch
+     */
+    public long getCreationDate() {
+        return creationDate;
+    }
+
+    public void setCreationDate(long creationDate) {
+        this.creationDate = creationDate;
+    }
+}
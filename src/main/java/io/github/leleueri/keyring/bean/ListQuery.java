@@ -0,0 +1,74 @@
+package io.github.leleueri.keyring.bean;
+
+/**
+ * Selection of the aliases (or secret keys) to list. All the criteria are optional.
+ */
+public class ListQuery {
+    /** only the aliases starting with this prefix */
+    private String prefix;
+
+    /** only the aliases strictly greater than this one */
+    private String cursor;
+
+    /** at most this number of aliases, 0 for no limit */
+    private int limit;
+
+    /** only the keys of this algorithm (case insensitive) */
+    private String algorithm;
+
+    /** only the keys created after this date, in milliseconds since the epoch */
+    private Long createdAfter;
+
+    /**
+     * @return a query with the same criteria, to change the criteria of a query already sent on the event bus
+     */
+    public ListQuery copy() {
+        ListQuery copy = new ListQuery();
+        copy.prefix = prefix;
+        copy.cursor = cursor;
+        copy.limit = limit;
+        copy.algorithm = algorithm;
+        copy.createdAfter = createdAfter;
+        return copy;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    public Long getCreatedAfter() {
+        return createdAfter;
+    }
+
+    public void setCreatedAfter(Long createdAfter) {
+        this.createdAfter = createdAfter;
+    }
+}
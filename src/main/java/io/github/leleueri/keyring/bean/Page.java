@@ -0,0 +1,30 @@
+package io.github.leleueri.keyring.bean;
+
+/**
+ * A page of a list, with the cursor of the next page if the list has more entries.
+ */
+public abstract class Page<T> {
+
+    private T entries;
+
+    private String nextCursor;
+
+    public T getEntries() {
+        return entries;
+    }
+
+    public void setEntries(T entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * @return the cursor of the next page, null if this page is the last one
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,30 @@
+package io.github.leleueri.keyring.bean;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of a multi-get : the keys found indexed by alias, in the order of the request, and the unknown aliases.
+ */
+public class SecretKeyBatch {
+
+    private Map<String, SecretKey> keys;
+
+    private List<String> missing;
+
+    public Map<String, SecretKey> getKeys() {
+        return keys;
+    }
+
+    public void setKeys(Map<String, SecretKey> keys) {
+        this.keys = keys;
+    }
+
+    public List<String> getMissing() {
+        return missing;
+    }
+
+    public void setMissing(List<String> missing) {
+        this.missing = missing;
+    }
+}
@@ -0,0 +1,9 @@
+package io.github.leleueri.keyring.bean;
+
+import java.util.SortedMap;
+
+/**
+ * A page of secret keys indexed by alias.
+ */
+public class SecretKeyPage extends Page<SortedMap<String, SecretKey>> {
+}
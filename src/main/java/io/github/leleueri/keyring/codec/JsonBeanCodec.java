@@ -0,0 +1,57 @@
+package io.github.leleueri.keyring.codec;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.json.Json;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Event bus codec of a bean.
+ *
+ * In the same JVM the bean itself is delivered (no copy, no serialization) so a bean must not be modified once
+ * it is sent. On the wire (clustered event bus) the bean is encoded in JSON.
+ */
+public class JsonBeanCodec<T> implements MessageCodec<T, T> {
+
+    private final Class<T> type;
+    private final String name;
+
+    public JsonBeanCodec(Class<T> type) {
+        this.type = type;
+        this.name = "keyring." + type.getSimpleName();
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    @Override
+    public void encodeToWire(Buffer buffer, T bean) {
+        byte[] json = Json.encode(bean).getBytes(StandardCharsets.UTF_8);
+        buffer.appendInt(json.length);
+        buffer.appendBytes(json);
+    }
+
+    @Override
+    public T decodeFromWire(int pos, Buffer buffer) {
+        int length = buffer.getInt(pos);
+        String json = new String(buffer.getBytes(pos + 4, pos + 4 + length), StandardCharsets.UTF_8);
+        return Json.decodeValue(json, type);
+    }
+
+    @Override
+    public T transform(T bean) {
+        return bean;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+}
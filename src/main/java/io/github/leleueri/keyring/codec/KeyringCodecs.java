@@ -0,0 +1,45 @@
+package io.github.leleueri.keyring.codec;
+
+import io.github.leleueri.keyring.bean.*;
+import io.vertx.core.Vertx;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Codecs of the beans exchanged on the event bus between the HTTP verticles and the keystore verticles.
+ * They are registered as default codecs, so the beans are sent without any delivery option.
+ */
+public final class KeyringCodecs {
+
+    private static final List<JsonBeanCodec<?>> CODECS = Arrays.asList(
+            new JsonBeanCodec<>(SecretKey.class),
+            new JsonBeanCodec<>(ListQuery.class),
+            new JsonBeanCodec<>(AliasPage.class),
+            new JsonBeanCodec<>(SecretKeyPage.class),
+            new JsonBeanCodec<>(String[].class),
+            new JsonBeanCodec<>(SecretKeyBatch.class),
+            new JsonBeanCodec<>(ImportResult[].class),
+            new JsonBeanCodec<>(CacheStats.class));
+
+    private KeyringCodecs() {
+    }
+
+    /**
+     * Registers the codecs into the event bus of the vertx instance, if they are not already registered
+     * (each verticle calls this method at startup whatever the deployment order).
+     */
+    public static synchronized void register(Vertx vertx) {
+        for (JsonBeanCodec<?> codec : CODECS) {
+            register(vertx, codec);
+        }
+    }
+
+    private static <T> void register(Vertx vertx, JsonBeanCodec<T> codec) {
+        try {
+            vertx.eventBus().registerDefaultCodec(codec.getType(), codec);
+        } catch (IllegalStateException e) {
+            // already registered by another verticle
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package io.github.leleueri.keyring.metrics;
+
+public interface CounterMBean {
+    long getCount();
+}
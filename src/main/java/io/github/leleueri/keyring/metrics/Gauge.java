@@ -0,0 +1,26 @@
+package io.github.leleueri.keyring.metrics;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Value read when the metrics are collected. It is also used for the counters maintained by another component
+ * (the cache counters for instance).
+ */
+public class Gauge implements Metric, GaugeMBean {
+
+    private final DoubleSupplier value;
+
+    public Gauge(DoubleSupplier value) {
+        this.value = value;
+    }
+
+    @Override
+    public double getValue() {
+        return value.getAsDouble();
+    }
+
+    @Override
+    public void write(StringBuilder out, String name, String labels) {
+        KeyringMetrics.sample(out, name, labels, getValue());
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.leleueri.keyring.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of durations in fixed buckets, from 100 microseconds to 10 seconds.
+ * Recording a duration doesn't take any lock nor allocate.
+ */
+public class Histogram implements Metric, HistogramMBean {
+
+    /** upper bounds of the buckets, in seconds */
+    static final double[] BUCKETS = {0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private static final long[] BUCKET_NANOS = new long[BUCKETS.length];
+
+    static {
+        for (int i = 0; i < BUCKETS.length; i++) {
+            BUCKET_NANOS[i] = (long) (BUCKETS[i] * TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    /** the last counter is the +Inf bucket */
+    private final LongAdder[] counts = new LongAdder[BUCKETS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    public Histogram() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        int bucket = 0;
+        while (bucket < BUCKET_NANOS.length && nanos > BUCKET_NANOS[bucket]) {
+            bucket++;
+        }
+        counts[bucket].increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * Records the time elapsed since the given {@link System#nanoTime()}.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public long getCount() {
+        long count = 0;
+        for (LongAdder c : counts) {
+            count += c.sum();
+        }
+        return count;
+    }
+
+    @Override
+    public double getSumSeconds() {
+        return sumNanos.sum() / 1e9;
+    }
+
+    @Override
+    public double getMeanSeconds() {
+        long count = getCount();
+        return count == 0 ? 0 : getSumSeconds() / count;
+    }
+
+    @Override
+    public void write(StringBuilder out, String name, String labels) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulated = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulated += counts[i].sum();
+            String le = i < BUCKETS.length ? Double.toString(BUCKETS[i]) : "+Inf";
+            KeyringMetrics.sample(out, name + "_bucket", prefix + "le=\"" + le + "\"", cumulated);
+        }
+        KeyringMetrics.sample(out, name + "_sum", labels, getSumSeconds());
+        KeyringMetrics.sample(out, name + "_count", labels, cumulated);
+    }
+}
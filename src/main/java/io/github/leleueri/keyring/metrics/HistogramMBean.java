@@ -0,0 +1,9 @@
+package io.github.leleueri.keyring.metrics;
+
+public interface HistogramMBean {
+    long getCount();
+
+    double getSumSeconds();
+
+    double getMeanSeconds();
+}
@@ -0,0 +1,294 @@
+package io.github.leleueri.keyring.metrics;
+
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.shareddata.Shareable;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registry of the keyring metrics, written in the Prometheus text format by {@link #writePrometheus()} and
+ * optionally registered as MBeans (domain "io.github.leleueri.keyring").
+ *
+ * A metric is identified by its name and its labels, given as name/value pairs. The metrics on the hot paths
+ * should be looked up once and kept in a field, the lookup formats the labels.
+ */
+public class KeyringMetrics implements Shareable {
+
+    public static final String JMX_DOMAIN = "io.github.leleueri.keyring";
+
+    /**
+     * Header added to the event bus messages by {@link #sending(String, DeliveryOptions)}
+     */
+    public static final String SENT_AT = "sent-at";
+
+    /**
+     * One message out of WAIT_SAMPLING is stamped with the time it is sent (the first one included), the others
+     * are sent with the options given by the sender, shared and without header.
+     */
+    public static final int WAIT_SAMPLING = 16;
+
+    private final Logger LOGGER = Logger.getLogger(getClass().getName());
+
+    private static final class Family {
+        private final String help;
+        private final String type;
+        private final ConcurrentMap<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+        private Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * Queue metrics of an event bus address
+     */
+    private static final class AddressMetrics {
+        private final AtomicLong pending = new AtomicLong();
+        private final AtomicLong sent = new AtomicLong();
+        private final Histogram wait;
+
+        private AddressMetrics(Histogram wait) {
+            this.wait = wait;
+        }
+    }
+
+    private final ConcurrentMap<String, AddressMetrics> addresses = new ConcurrentHashMap<>();
+
+    private volatile boolean jmx;
+    private final List<ObjectName> registered = new ArrayList<>();
+
+    public Counter counter(String name, String help, String... labels) {
+        return register(name, help, "counter", labels, Counter::new);
+    }
+
+    public Histogram histogram(String name, String help, String... labels) {
+        return register(name, help, "histogram", labels, Histogram::new);
+    }
+
+    /**
+     * Registers a gauge, if no gauge with the same name and labels is already registered.
+     */
+    public Gauge gauge(String name, String help, DoubleSupplier value, String... labels) {
+        return register(name, help, "gauge", labels, () -> new Gauge(value));
+    }
+
+    /**
+     * Registers a counter maintained outside of the registry, if no counter with the same name and labels is
+     * already registered.
+     */
+    public Gauge counter(String name, String help, DoubleSupplier value, String... labels) {
+        return register(name, help, "counter", labels, () -> new Gauge(value));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Metric> T register(String name, String help, String type, String[] labels, Supplier<T> factory) {
+        Family family = family(name, help, type);
+        String formatted = formatLabels(labels);
+        Metric metric = family.metrics.get(formatted);
+        if (metric == null) {
+            T created = factory.get();
+            metric = family.metrics.putIfAbsent(formatted, created);
+            if (metric == null) {
+                metric = created;
+                if (jmx) {
+                    registerMBean(name, labels, created);
+                }
+            }
+        }
+        return (T) metric;
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, n -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("The metric '" + name + "' is already registered as a " + family.type);
+        }
+        return family;
+    }
+
+    private static String formatLabels(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("The labels must be given as name/value pairs");
+        }
+        StringBuilder formatted = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                formatted.append(',');
+            }
+            formatted.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return formatted.toString();
+    }
+
+    /**
+     * @return all the metrics in the Prometheus text format (version 0.0.4)
+     */
+    public String writePrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Metric> metric : family.metrics.entrySet()) {
+                metric.getValue().write(out, name, metric.getKey());
+            }
+        }
+        return out.toString();
+    }
+
+    static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == (long) value) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    /**
+     * Counts a message sent to a worker verticle as pending until {@link #replied(String)} is called. The sampled
+     * messages (see {@link #WAIT_SAMPLING}) are stamped with the time they are sent, the worker calls
+     * {@link #received(String, Message)} when it starts processing the message.
+     *
+     * @param options options of the message, never modified so they can be shared by all the messages of an address
+     * @return the options to send the message with, a stamped copy for a sampled message
+     */
+    public DeliveryOptions sending(String address, DeliveryOptions options) {
+        AddressMetrics metrics = address(address);
+        metrics.pending.incrementAndGet();
+        if (metrics.sent.getAndIncrement() % WAIT_SAMPLING != 0) {
+            return options;
+        }
+        // the copy constructor shares the headers, they are copied one by one
+        DeliveryOptions stamped = new DeliveryOptions().setSendTimeout(options.getSendTimeout())
+                .setCodecName(options.getCodecName());
+        if (options.getHeaders() != null) {
+            for (Map.Entry<String, String> header : options.getHeaders()) {
+                stamped.addHeader(header.getKey(), header.getValue());
+            }
+        }
+        return stamped.addHeader(SENT_AT, Long.toString(System.nanoTime()));
+    }
+
+    /**
+     * Counts the reply (or the failure) of a message, see {@link #sending(String, DeliveryOptions)}.
+     */
+    public void replied(String address) {
+        address(address).pending.decrementAndGet();
+    }
+
+    /**
+     * Records the time spent by a sampled message in the queue of the worker, see {@link #sending(String, DeliveryOptions)}.
+     */
+    public void received(String address, Message<?> message) {
+        String sentAt = message.headers().get(SENT_AT);
+        if (sentAt != null) {
+            address(address).wait.recordSince(Long.parseLong(sentAt));
+        }
+    }
+
+    private AddressMetrics address(String address) {
+        AddressMetrics metrics = addresses.get(address);
+        if (metrics == null) {
+            metrics = addresses.computeIfAbsent(address, a -> {
+                AddressMetrics created = new AddressMetrics(histogram("keyring_eventbus_wait_seconds",
+                        "Time between the sending of a message and the start of its processing by a worker", "address", a));
+                gauge("keyring_eventbus_pending_messages", "Messages sent to a worker and not answered yet",
+                        created.pending::get, "address", a);
+                return created;
+            });
+        }
+        return metrics;
+    }
+
+    /**
+     * Registers the metrics, current and future, as MBeans in the platform MBean server.
+     */
+    public synchronized void enableJmx() {
+        if (jmx) {
+            return;
+        }
+        jmx = true;
+        for (Map.Entry<String, Family> family : families.entrySet()) {
+            for (Map.Entry<String, Metric> metric : family.getValue().metrics.entrySet()) {
+                registerMBean(family.getKey(), parseLabels(metric.getKey()), metric.getValue());
+            }
+        }
+    }
+
+    private synchronized void registerMBean(String name, String[] labels, Metric metric) {
+        StringBuilder objectName = new StringBuilder(JMX_DOMAIN).append(":type=").append(name);
+        for (int i = 0; i < labels.length; i += 2) {
+            objectName.append(',').append(labels[i]).append('=').append(ObjectName.quote(labels[i + 1]));
+        }
+        try {
+            ObjectName on = new ObjectName(objectName.toString());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metric, on);
+            registered.add(on);
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Unable to register the MBean " + objectName, e);
+        }
+    }
+
+    private static String[] parseLabels(String formatted) {
+        List<String> labels = new ArrayList<>();
+        int position = 0;
+        while (position < formatted.length()) {
+            int equals = formatted.indexOf('=', position);
+            labels.add(formatted.substring(position, equals));
+            StringBuilder value = new StringBuilder();
+            int i = equals + 2;
+            for (; formatted.charAt(i) != '"'; i++) {
+                char c = formatted.charAt(i);
+                if (c == '\\') {
+                    c = formatted.charAt(++i);
+                    value.append(c == 'n' ? '\n' : c);
+                } else {
+                    value.append(c);
+                }
+            }
+            labels.add(value.toString());
+            position = i + 2; // closing quote and comma
+        }
+        return labels.toArray(new String[labels.size()]);
+    }
+
+    /**
+     * Unregisters the MBeans.
+     */
+    public synchronized void close() {
+        for (ObjectName on : registered) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(on);
+            } catch (JMException e) {
+                LOGGER.log(Level.FINE, "Unable to unregister the MBean " + on, e);
+            }
+        }
+        registered.clear();
+        jmx = false;
+    }
+}
@@ -0,0 +1,14 @@
+package io.github.leleueri.keyring.metrics;
+
+/**
+ * A metric of the {@link KeyringMetrics} registry, written in the Prometheus text format.
+ */
+interface Metric {
+
+    /**
+     * Writes the samples of this metric.
+     *
+     * @param labels the labels of this metric, already formatted ({@code a="x",b="y"}), empty if none
+     */
+    void write(StringBuilder out, String name, String labels);
+}
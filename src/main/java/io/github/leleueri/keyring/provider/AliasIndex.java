@@ -0,0 +1,163 @@
+package io.github.leleueri.keyring.provider;
+
+import io.github.leleueri.keyring.bean.KeyMetadata;
+import io.github.leleueri.keyring.bean.ListQuery;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Logger;
+
+/**
+ * Sorted index of the secret key aliases with their metadata (algorithm, format, creation date).
+ *
+ * The index allows to list and filter the aliases without walking the keystore and without unsealing any key.
+ * It is maintained by the {@link KeyStorage} of the {@link KeystoreProvider} under the write lock of the provider.
+ * The {@link JceksStorage} persists it next to the keystore file (see {@link #toBytes(String)}) because the algorithm of a
+ * key can only be read from the keystore by unsealing it.
+ */
+public class AliasIndex {
+
+    private final ConcurrentSkipListMap<String, KeyMetadata> entries = new ConcurrentSkipListMap<>();
+
+    public void put(KeyMetadata metadata) {
+        entries.put(metadata.getAlias(), metadata);
+    }
+
+    public void remove(String alias) {
+        entries.remove(alias);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public KeyMetadata get(String alias) {
+        return entries.get(alias);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the metadata matching the query, sorted by alias
+     */
+    public List<KeyMetadata> query(ListQuery query) {
+        int limit = query.getLimit();
+        List<KeyMetadata> result = new ArrayList<>(limit > 0 ? Math.min(limit, 64) : 64);
+        for (KeyMetadata metadata : range(query.getPrefix(), query.getCursor()).values()) {
+            if (limit > 0 && result.size() == limit) {
+                break;
+            }
+            if (matches(metadata, query)) {
+                result.add(metadata);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the entries starting with the prefix and strictly greater than the cursor
+     */
+    private NavigableMap<String, KeyMetadata> range(String prefix, String cursor) {
+        String from = prefix;
+        boolean fromInclusive = true;
+        if (cursor != null && (from == null || cursor.compareTo(from) >= 0)) {
+            from = cursor;
+            fromInclusive = false;
+        }
+        // all the aliases starting with the prefix are lower than this upper bound
+        String to = prefix == null ? null : prefix + Character.MAX_VALUE;
+
+        if (from != null && to != null) {
+            if (from.compareTo(to) > 0) {
+                return Collections.emptyNavigableMap();
+            }
+            return entries.subMap(from, fromInclusive, to, true);
+        }
+        if (from != null) {
+            return entries.tailMap(from, fromInclusive);
+        }
+        return entries;
+    }
+
+    private boolean matches(KeyMetadata metadata, ListQuery query) {
+        return (query.getPrefix() == null || metadata.getAlias().startsWith(query.getPrefix()))
+                && (query.getAlgorithm() == null || query.getAlgorithm().equalsIgnoreCase(metadata.getAlgorithm()))
+                && (query.getCreatedAfter() == null || metadata.getCreationDate() > query.getCreatedAfter());
+    }
+
+    /**
+     * @param tag identifies the content of the storage described by the index (a digest of the keystore file)
+     * @return the persisted form of the index
+     */
+    public byte[] toBytes(String tag) {
+        Persisted persisted = new Persisted();
+        persisted.setTag(tag);
+        persisted.setKeys(new ArrayList<>(entries.values()));
+        return Json.encode(persisted).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads an index persisted by {@link #toBytes(String)}, or by the previous versions (array of the metadata,
+     * without tag).
+     *
+     * @return the persisted index, without any key if the content can't be read (the index is then rebuilt from the
+     * keystore)
+     */
+    public static Persisted fromBytes(byte[] content) {
+        String json = new String(content, StandardCharsets.UTF_8);
+        try {
+            if (json.trim().startsWith("[")) {
+                Persisted persisted = new Persisted();
+                persisted.setKeys(Arrays.asList(Json.decodeValue(json, KeyMetadata[].class)));
+                return persisted;
+            }
+            return Json.decodeValue(json, Persisted.class);
+        } catch (DecodeException e) {
+            Logger.getLogger(AliasIndex.class.getName()).warning("Ignore the unreadable alias index : " + e.getMessage());
+            return new Persisted();
+        }
+    }
+
+    /**
+     * Persisted form of the index.
+     */
+    public static class Persisted {
+        private String tag;
+        private List<KeyMetadata> keys = new ArrayList<>();
+
+        /**
+         * @return the tag given to {@link #toBytes(String)}, null for an index persisted without tag
+         */
+        public String getTag() {
+            return tag;
+        }
+
+        public void setTag(String tag) {
+            this.tag = tag;
+        }
+
+        public List<KeyMetadata> getKeys() {
+            return keys;
+        }
+
+        public void setKeys(List<KeyMetadata> keys) {
+            this.keys = keys;
+        }
+
+        /**
+         * @return the metadata by alias
+         */
+        public Map<String, KeyMetadata> byAlias() {
+            Map<String, KeyMetadata> result = new HashMap<>();
+            for (KeyMetadata metadata : keys) {
+                result.put(metadata.getAlias(), metadata);
+            }
+            return result;
+        }
+    }
+}
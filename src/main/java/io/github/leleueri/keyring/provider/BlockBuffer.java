@@ -0,0 +1,324 @@
+package io.github.leleueri.keyring.provider;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Read only {@link Buffer} over the content of a block of a {@link KeyArena}, the body of an off-heap
+ * {@link EncodedKey}.
+ *
+ * Vert.x wraps the buffers it is given so that they are never released : {@link #getByteBuf()}, called by a response
+ * to write the buffer, gives a retained duplicate of the block instead, released by netty once written. The reads
+ * are delegated to a view of the block, the writes are rejected : the same block is written by any number of
+ * responses.
+ */
+final class BlockBuffer implements Buffer {
+
+    private final ByteBuf content;
+    private final Buffer view;
+
+    BlockBuffer(ByteBuf content) {
+        this.content = content;
+        this.view = Buffer.buffer(content);
+    }
+
+    @Override
+    public ByteBuf getByteBuf() {
+        return content.duplicate().retain();
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("The body of an encoded key is read only");
+    }
+
+    @Override
+    public String toString() {
+        return view.toString();
+    }
+
+    @Override
+    public String toString(String enc) {
+        return view.toString(enc);
+    }
+
+    @Override
+    public byte getByte(int pos) {
+        return view.getByte(pos);
+    }
+
+    @Override
+    public short getUnsignedByte(int pos) {
+        return view.getUnsignedByte(pos);
+    }
+
+    @Override
+    public int getInt(int pos) {
+        return view.getInt(pos);
+    }
+
+    @Override
+    public long getUnsignedInt(int pos) {
+        return view.getUnsignedInt(pos);
+    }
+
+    @Override
+    public long getLong(int pos) {
+        return view.getLong(pos);
+    }
+
+    @Override
+    public double getDouble(int pos) {
+        return view.getDouble(pos);
+    }
+
+    @Override
+    public float getFloat(int pos) {
+        return view.getFloat(pos);
+    }
+
+    @Override
+    public short getShort(int pos) {
+        return view.getShort(pos);
+    }
+
+    @Override
+    public int getUnsignedShort(int pos) {
+        return view.getUnsignedShort(pos);
+    }
+
+    @Override
+    public byte[] getBytes() {
+        return view.getBytes();
+    }
+
+    @Override
+    public byte[] getBytes(int start, int end) {
+        return view.getBytes(start, end);
+    }
+
+    @Override
+    public Buffer getBytes(byte[] dst) {
+        view.getBytes(dst);
+        return this;
+    }
+
+    @Override
+    public Buffer getBytes(byte[] dst, int dstIndex) {
+        view.getBytes(dst, dstIndex);
+        return this;
+    }
+
+    @Override
+    public Buffer getBytes(int start, int end, byte[] dst) {
+        view.getBytes(start, end, dst);
+        return this;
+    }
+
+    @Override
+    public Buffer getBytes(int start, int end, byte[] dst, int dstIndex) {
+        view.getBytes(start, end, dst, dstIndex);
+        return this;
+    }
+
+    @Override
+    public Buffer getBuffer(int start, int end) {
+        return view.getBuffer(start, end);
+    }
+
+    @Override
+    public String getString(int start, int end, String enc) {
+        return view.getString(start, end, enc);
+    }
+
+    @Override
+    public String getString(int start, int end) {
+        return view.getString(start, end);
+    }
+
+    @Override
+    public int length() {
+        return view.length();
+    }
+
+    @Override
+    public Buffer copy() {
+        return view.copy();
+    }
+
+    @Override
+    public Buffer slice() {
+        return view.slice();
+    }
+
+    @Override
+    public Buffer slice(int start, int end) {
+        return view.slice(start, end);
+    }
+
+    @Override
+    public void writeToBuffer(Buffer buffer) {
+        view.writeToBuffer(buffer);
+    }
+
+    @Override
+    public int readFromBuffer(int pos, Buffer buffer) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer appendBuffer(Buffer buff) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer appendBuffer(Buffer buff, int offset, int len) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer appendBytes(byte[] bytes) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer appendBytes(byte[] bytes, int offset, int len) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer appendByte(byte b) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer appendUnsignedByte(short b) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer appendInt(int i) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer appendUnsignedInt(long i) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer appendLong(long l) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer appendShort(short s) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer appendUnsignedShort(int s) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer appendFloat(float f) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer appendDouble(double d) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer appendString(String str, String enc) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer appendString(String str) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer setByte(int pos, byte b) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer setUnsignedByte(int pos, short b) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer setInt(int pos, int i) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer setUnsignedInt(int pos, long i) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer setLong(int pos, long l) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer setDouble(int pos, double d) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer setFloat(int pos, float f) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer setShort(int pos, short s) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer setUnsignedShort(int pos, int s) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer setBuffer(int pos, Buffer b) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer setBuffer(int pos, Buffer b, int offset, int len) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer setBytes(int pos, ByteBuffer b) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer setBytes(int pos, byte[] b) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer setBytes(int pos, byte[] b, int offset, int len) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer setString(int pos, String str) {
+        throw readOnly();
+    }
+
+    @Override
+    public Buffer setString(int pos, String str, String enc) {
+        throw readOnly();
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.leleueri.keyring.provider;
+
+import io.github.leleueri.keyring.bean.Change;
+import io.github.leleueri.keyring.bean.ChangePage;
+import io.github.leleueri.keyring.metrics.KeyringMetrics;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recent changes of the keystore, so the clients follow the keys without listing them again.
+ *
+ * Each mutation applied by a commit (see {@link KeystoreProvider#addCommitListener}) gets the next revision. The
+ * revisions of a run start at the startup time of the feed in milliseconds times 1000 : the revisions given by a
+ * previous run of the server are older than the ones of the current run.
+ * The last changes are kept in a ring buffer, the changes after a revision older than the oldest change kept (or
+ * unknown) are lost : the client has to reload the keys.
+ */
+public class ChangeFeed implements Shareable {
+
+    private final Change[] ring;
+    private final long base;
+    private long revision;
+
+    public ChangeFeed(int capacity, KeyringMetrics metrics) {
+        ring = new Change[capacity];
+        base = System.currentTimeMillis() * 1000;
+        revision = base;
+        metrics.gauge("keyring_changes_revision", "Revision of the keystore, incremented by each change", this::getRevision);
+    }
+
+    /**
+     * Records the mutations applied by a commit.
+     *
+     * @return the revision of the keystore after these mutations
+     */
+    public synchronized long append(List<KeystoreMutation> committed) {
+        for (KeystoreMutation mutation : committed) {
+            revision++;
+            String type = mutation.getStatus() == KeystoreMutation.Status.DELETED ? Change.DELETE : Change.PUT;
+            ring[index(revision)] = new Change(revision, mutation.getAlias(), type);
+        }
+        return revision;
+    }
+
+    public synchronized long getRevision() {
+        return revision;
+    }
+
+    /**
+     * @param since revision known by the client
+     * @param limit maximum number of changes read from the feed (the changes of the same alias count once each)
+     * @return the last change of each alias changed after the revision, in the order of the revisions ; null if
+     * the changes after this revision are not kept
+     */
+    public synchronized ChangePage since(long since, int limit) {
+        long oldest = Math.max(base + 1, revision - ring.length + 1);
+        if (since < oldest - 1 || since > revision) {
+            return null;
+        }
+        long last = Math.min(revision, since + limit);
+        Map<String, Change> changes = new LinkedHashMap<>();
+        for (long r = since + 1; r <= last; r++) {
+            Change change = ring[index(r)];
+            // the alias takes the position of its last change
+            changes.remove(change.getAlias());
+            changes.put(change.getAlias(), change);
+        }
+        ChangePage page = new ChangePage();
+        page.setRevision(last);
+        page.setChanges(new ArrayList<>(changes.values()));
+        return page;
+    }
+
+    private int index(long revision) {
+        return (int) (revision % ring.length);
+    }
+}
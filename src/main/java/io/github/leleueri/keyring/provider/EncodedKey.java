@@ -0,0 +1,142 @@
+package io.github.leleueri.keyring.provider;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.github.leleueri.keyring.bean.SecretKey;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.buffer.UnpooledDirectByteBuf;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.EncodeException;
+import io.vertx.core.json.Json;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Compact JSON form of a {@link SecretKey}, ready to be written in an HTTP response, with its entity tag.
+ *
+ * The JSON is kept in a direct (off-heap) buffer, wrapped by Vert.x so it is never released : the responses write
+ * duplicates of the buffer, the same instance can be written by any number of responses. The memory is reclaimed
+ * once the instance is garbage collected.
+ *
+ * With an off-heap cache ({@link KeyArena}), the JSON is kept in a block of the arena and the responses write the
+ * block itself (see {@link #retain(KeyArena, KeyArena.Block, String)} and {@link BlockBuffer}) : the encoded key
+ * holds a reference on the block until it is released, each response holds another one until it is written. An
+ * evicted key is wiped once the last of them is released.
+ *
+ * The entity tag is built from the version of the entry, its creation date in the keystore (a key can't be
+ * modified, only deleted and created again), and from a checksum of the JSON.
+ */
+public class EncodedKey {
+
+    private final Buffer body;
+    private final String etag;
+    private final ByteBuf block;
+
+    private EncodedKey(Buffer body, String etag, ByteBuf block) {
+        this.body = body;
+        this.etag = etag;
+        this.block = block;
+    }
+
+    /**
+     * @param creationDate creation date of the key in the keystore, in milliseconds
+     */
+    public static EncodedKey encode(SecretKey key, long creationDate) {
+        byte[] json = toJson(key);
+        String etag = etag(json, creationDate);
+        Buffer body = Buffer.buffer(Unpooled.directBuffer(json.length).writeBytes(json));
+        Arrays.fill(json, (byte) 0);
+        return new EncodedKey(body, etag, null);
+    }
+
+    /**
+     * @return an encoded key written from the block, null if the block has already been wiped
+     */
+    static EncodedKey retain(KeyArena arena, KeyArena.Block block, String etag) {
+        if (!arena.retain(block)) {
+            return null;
+        }
+        ByteBuf content = new BlockByteBuf(arena, block);
+        return new EncodedKey(new BlockBuffer(content), etag, content);
+    }
+
+    /**
+     * Buffer over the content of a block of the arena, the reference on the block is released with the buffer.
+     */
+    private static final class BlockByteBuf extends UnpooledDirectByteBuf {
+        private final KeyArena arena;
+        private final KeyArena.Block block;
+
+        private BlockByteBuf(KeyArena arena, KeyArena.Block block) {
+            super(UnpooledByteBufAllocator.DEFAULT, block.content(), block.length());
+            this.arena = arena;
+            this.block = block;
+        }
+
+        @Override
+        protected void deallocate() {
+            super.deallocate();
+            arena.releaseRetained(block);
+        }
+    }
+
+    /**
+     * @return the compact JSON form of the key, to be wiped by the caller
+     */
+    static byte[] toJson(SecretKey key) {
+        try {
+            return Json.mapper.writeValueAsBytes(key);
+        } catch (JsonProcessingException e) {
+            throw new EncodeException("Failed to encode as JSON: " + e.getMessage());
+        }
+    }
+
+    static String etag(byte[] json, long creationDate) {
+        CRC32 crc = new CRC32();
+        crc.update(json);
+        return "\"" + Long.toHexString(creationDate) + "-" + Long.toHexString(crc.getValue()) + "\"";
+    }
+
+    public Buffer getBody() {
+        return body;
+    }
+
+    /**
+     * Releases the block of an off-heap key, once the body has been written (the responses still being written
+     * hold their own reference). Has no effect on the other keys.
+     */
+    public void release() {
+        if (block != null) {
+            block.release();
+        }
+    }
+
+    /**
+     * @return the strong entity tag, quoted
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @param ifNoneMatch value of an If-None-Match header : "*" or a list of entity tags, weak or strong
+     * @return true if the header matches this entity tag (weak comparison)
+     */
+    public boolean matches(String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
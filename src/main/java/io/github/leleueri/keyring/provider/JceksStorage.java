@@ -0,0 +1,478 @@
+package io.github.leleueri.keyring.provider;
+
+import io.github.leleueri.keyring.bean.KeyMetadata;
+import io.github.leleueri.keyring.exception.KeyringConfigurationException;
+import io.github.leleueri.keyring.metrics.Histogram;
+import io.github.leleueri.keyring.metrics.KeyringMetrics;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.*;
+import java.security.cert.CertificateException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Storage in a java.security.KeyStore file. The in memory keystore is the reference, the file is only read at
+ * startup.
+ *
+ * Two storage modes are available :
+ * <ul>
+ *     <li>SNAPSHOT : the whole keystore file is rewritten on each write</li>
+ *     <li>JOURNAL : each write is appended to a {@link KeystoreJournal} and the keystore file is only rewritten
+ *     in background once the journal contains enough records (compaction)</li>
+ * </ul>
+ *
+ * The index is saved next to the keystore file ("&lt;path&gt;.index") because the algorithm of a key can only be
+ * read from the keystore by unsealing it, and because the keystore dates its entries when they are stored : the
+ * creation date of a key is the date of its record, kept by the index and by the journal.
+ */
+public class JceksStorage implements KeyStorage {
+
+    public enum StorageMode {
+        SNAPSHOT, JOURNAL
+    }
+
+    private final Logger LOGGER = Logger.getLogger(getClass().getName());
+
+    private static final String FORMAT = "RAW";
+
+    private volatile KeyStore ks;
+    // content of the keystore file, the in memory keystore is restored from it when a write fails
+    private byte[] persisted;
+    // last journal segment contained in the persisted content (JOURNAL mode)
+    private long persistedSegment;
+
+    private Lock readLock;
+    private Lock writeLock;
+    private AliasIndex index;
+
+    private final String keyPassword;
+    // the keystore copies the password when a key is (un)sealed, the same array is given on each call
+    private final char[] keyPasswordChars;
+    private final String path;
+    private final String pwd;
+    private final String type;
+
+    private final StorageMode storageMode;
+    private final int compactionThreshold;
+    private KeystoreJournal journal;
+    private ExecutorService compactor;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final KeyringMetrics metrics;
+
+    private final Histogram sealTimer;
+    private final Histogram storeTimer;
+    private final Histogram reloadTimer;
+    private final Histogram journalTimer;
+
+    private static void assertNotNull(String value, String field) {
+        if (value == null) {
+            throw new KeyringConfigurationException(field + " is required");
+        }
+    }
+
+    /**
+     * @param compactionThreshold number of journal records triggering the rewrite of the keystore file (JOURNAL mode only)
+     * @param metrics registry of the operation timings
+     */
+    public JceksStorage(String type, String pwd, String path, String keypwd, StorageMode storageMode,
+                        int compactionThreshold, KeyringMetrics metrics) {
+        assertNotNull(type, "Keystore Type");
+        assertNotNull(pwd, "Keystore Password");
+        assertNotNull(path, "Keystore Path");
+        assertNotNull(keypwd, "Key Password");
+        this.type = type;
+        this.pwd = pwd;
+        this.path = path;
+        this.keyPassword = keypwd;
+        this.keyPasswordChars = keypwd.toCharArray();
+        this.storageMode = storageMode;
+        this.compactionThreshold = compactionThreshold;
+        this.metrics = metrics;
+
+        String help = "Duration of the keystore operations";
+        sealTimer = metrics.histogram("keyring_keystore_operation_seconds", help, "operation", "seal");
+        storeTimer = metrics.histogram("keyring_keystore_operation_seconds", help, "operation", "store");
+        reloadTimer = metrics.histogram("keyring_keystore_operation_seconds", help, "operation", "reload");
+        journalTimer = metrics.histogram("keyring_keystore_operation_seconds", help, "operation", "journal_append");
+    }
+
+    @Override
+    public void open(ReentrantReadWriteLock lock, AliasIndex index) {
+        this.readLock = lock.readLock();
+        this.writeLock = lock.writeLock();
+        this.index = index;
+
+        loadKeystore();
+        if (storageMode == StorageMode.JOURNAL) {
+            if (compactionThreshold <= 0) {
+                throw new KeyringConfigurationException("The journal compaction threshold must be positive");
+            }
+            compactor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "keyring-journal-compaction");
+                t.setDaemon(true);
+                return t;
+            });
+            journal = new KeystoreJournal(path, keyPassword);
+            journal.replay(this::applyJournalRecord);
+            metrics.gauge("keyring_journal_records", "Journal records written since the last compaction", journal::getRecords);
+            maybeCompact();
+        }
+    }
+
+    private void applyJournalRecord(StorageRecord record) {
+        replay(ks, record);
+        try {
+            if (record.getOperation() == StorageRecord.Operation.PUT) {
+                indexKey(record);
+            } else {
+                index.remove(record.getAlias());
+            }
+        } catch (KeyStoreException e) {
+            throw new KeyringConfigurationException("Unable to replay the journal record of alias '" + record.getAlias() + "'", e);
+        }
+    }
+
+    /**
+     * Applies a journal record to a keystore, without updating the index.
+     */
+    private void replay(KeyStore target, StorageRecord record) {
+        try {
+            if (record.getOperation() == StorageRecord.Operation.PUT) {
+                target.setKeyEntry(record.getAlias(), new SecretKeySpec(record.getKey(), record.getAlgorithm()), keyPasswordChars, null);
+            } else {
+                target.deleteEntry(record.getAlias());
+            }
+        } catch (KeyStoreException e) {
+            throw new KeyringConfigurationException("Unable to replay the journal record of alias '" + record.getAlias() + "'", e);
+        }
+    }
+
+    private void loadKeystore() {
+        long start = System.nanoTime();
+        try {
+            // the keystore is fully loaded before being published so a reader never sees a partially loaded instance
+            KeyStore loaded = KeyStore.getInstance(type);
+            char[] password = pwd.toCharArray();
+
+            File ksFile = Paths.get(path).toFile();
+            if (!ksFile.exists()) {
+                loaded.load(null, null);
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                loaded.store(content, password);
+                writeSnapshot(content.toByteArray());
+            }
+
+            byte[] content = Files.readAllBytes(Paths.get(path));
+            loaded.load(new ByteArrayInputStream(content), password);
+            loadIndex(loaded, digest(content));
+            ks = loaded;
+            persisted = content;
+            reloadTimer.recordSince(start);
+        } catch (KeyStoreException|NoSuchAlgorithmException|CertificateException|UnrecoverableKeyException e) {
+            throw new KeyringConfigurationException("Unable to initialize KeyStore", e);
+        } catch (NoSuchFileException e) {
+            throw new KeyringConfigurationException("Wrong KeyStore path", e);
+        } catch (IOException e) {
+            throw new KeyringConfigurationException("Unable to read KeyStore file", e);
+        }
+    }
+
+    /**
+     * Fills the index with the aliases of a loaded keystore.
+     *
+     * The metadata are read from the index file saved with the keystore, tagged with the digest of the keystore file
+     * it describes. If the digest differs (the index file is written after the keystore file), an alias whose
+     * creation date differs from the date of its keystore entry is unsealed to read its metadata, as an alias missing
+     * from the index file.
+     *
+     * @param digest digest of the keystore file, see {@link #digest(byte[])}
+     */
+    private void loadIndex(KeyStore loaded, String digest) throws KeyStoreException, NoSuchAlgorithmException, UnrecoverableKeyException {
+        Path indexFile = Paths.get(path + ".index");
+        Map<String, KeyMetadata> saved = Collections.emptyMap();
+        boolean current = false;
+        if (Files.exists(indexFile)) {
+            try {
+                AliasIndex.Persisted persisted = AliasIndex.fromBytes(Files.readAllBytes(indexFile));
+                saved = persisted.byAlias();
+                current = digest.equals(persisted.getTag());
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Unable to read the alias index, it is rebuilt from the keystore", e);
+            }
+        }
+
+        index.clear();
+        int unsealed = 0;
+        Enumeration<String> aliases = loaded.aliases();
+        while (aliases.hasMoreElements()) {
+            String alias = aliases.nextElement();
+            if (!loaded.isKeyEntry(alias)) {
+                continue;
+            }
+            long creationDate = loaded.getCreationDate(alias).getTime();
+            KeyMetadata metadata = saved.get(alias);
+            if (metadata == null || (!current && metadata.getCreationDate() != creationDate)) {
+                Key key = loaded.getKey(alias, keyPasswordChars);
+                metadata = new KeyMetadata(alias, key.getAlgorithm(), key.getFormat(), creationDate);
+                unsealed++;
+            }
+            index.put(metadata);
+        }
+        if (unsealed > 0) {
+            LOGGER.info(unsealed + " keys unsealed to build the alias index");
+        }
+    }
+
+    /**
+     * Updates the index with a key just stored in the keystore. The creation date is the date of the record, the
+     * keystore dates its entries when they are stored or replayed ; a record of a journal written without date is
+     * indexed with the date of its entry.
+     */
+    private void indexKey(StorageRecord record) throws KeyStoreException {
+        long creationDate = record.getCreationDate() != 0 ? record.getCreationDate() : ks.getCreationDate(record.getAlias()).getTime();
+        index.put(new KeyMetadata(record.getAlias(), record.getAlgorithm(), FORMAT, creationDate));
+    }
+
+    /**
+     * @return the tag of the index file describing a keystore file of the given content
+     */
+    private static String digest(byte[] content) throws NoSuchAlgorithmException {
+        return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(content));
+    }
+
+    @Override
+    public Key get(String alias) throws GeneralSecurityException {
+        return ks.getKey(alias, keyPasswordChars);
+    }
+
+    /**
+     * Applies the records to the in memory keystore then persists them, the readers are blocked by the write lock
+     * until the records are on the disk. In JOURNAL mode, the records are journaled once applied : a record which
+     * can't be applied is never journaled.
+     */
+    @Override
+    public void write(List<StorageRecord> records) throws IOException, GeneralSecurityException {
+        long now = System.currentTimeMillis();
+        List<StorageRecord> dated = new ArrayList<>(records.size());
+        Map<String, KeyMetadata> previous = new HashMap<>();
+        for (StorageRecord record : records) {
+            if (record.getOperation() == StorageRecord.Operation.PUT && record.getCreationDate() == 0) {
+                record = StorageRecord.put(record.getAlias(), record.getAlgorithm(), record.getKey(), now);
+            }
+            dated.add(record);
+            previous.putIfAbsent(record.getAlias(), index.get(record.getAlias()));
+        }
+        try {
+            apply(dated);
+            if (storageMode == StorageMode.JOURNAL) {
+                long appendStart = System.nanoTime();
+                journal.append(dated);
+                journalTimer.recordSince(appendStart);
+            } else {
+                persistChanges();
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            rollback(previous, e);
+            throw e;
+        }
+        if (storageMode == StorageMode.JOURNAL) {
+            maybeCompact();
+        }
+    }
+
+    private void apply(List<StorageRecord> records) throws KeyStoreException {
+        for (StorageRecord record : records) {
+            if (record.getOperation() == StorageRecord.Operation.DELETE) {
+                ks.deleteEntry(record.getAlias());
+                index.remove(record.getAlias());
+            } else {
+                long start = System.nanoTime();
+                SecretKeySpec spec = new SecretKeySpec(record.getKey(), record.getAlgorithm());
+                ks.setKeyEntry(record.getAlias(), spec, keyPasswordChars, null);
+                sealTimer.recordSince(start);
+                indexKey(record);
+            }
+        }
+    }
+
+    /**
+     * Persists the in memory keystore, which stays the reference : the file is never read back.
+     *
+     * Must be called with the write lock held, the file is written under this lock : a reader never sees (nor
+     * caches) a change which is not on the disk. The index file is only an optimization of the startup (see
+     * {@link #loadIndex(KeyStore)}), once the keystore file is written a failure to write it is not a failure of
+     * the write.
+     */
+    private void persistChanges() throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
+        long start = System.nanoTime();
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        this.ks.store(content, pwd.toCharArray());
+        byte[] snapshot = content.toByteArray();
+        writeSnapshot(snapshot);
+        persisted = snapshot;
+        try {
+            writeAtomically(Paths.get(path + ".index"), index.toBytes(digest(snapshot)));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to write the alias index, it is rebuilt from the keystore on startup", e);
+        }
+        storeTimer.recordSince(start);
+    }
+
+    /**
+     * Discards the records applied by a failed write : the keystore is restored from the content of its file, kept
+     * in memory, and the index entries of the records from their previous metadata. In JOURNAL mode, the records
+     * journaled since the last compaction are replayed on the restored keystore (the failed append is truncated by
+     * the journal). Called with the write lock held, which is never released. A failure of the rollback is added to
+     * the suppressed exceptions of the failure of the write.
+     */
+    private void rollback(Map<String, KeyMetadata> previous, Exception failure) {
+        try {
+            KeyStore restored = KeyStore.getInstance(type);
+            restored.load(new ByteArrayInputStream(persisted), pwd.toCharArray());
+            if (storageMode == StorageMode.JOURNAL) {
+                journal.read(persistedSegment, record -> replay(restored, record));
+            }
+            ks = restored;
+        } catch (IOException | GeneralSecurityException | KeyringConfigurationException e) {
+            LOGGER.log(Level.SEVERE, "Unable to restore the keystore after a failed write", e);
+            failure.addSuppressed(e);
+        }
+        previous.forEach((alias, metadata) -> {
+            if (metadata == null) {
+                index.remove(alias);
+            } else {
+                index.put(metadata);
+            }
+        });
+    }
+
+    /**
+     * Submits a compaction of the journal if it reaches the threshold and if no compaction is running.
+     * Must be called with the write lock held (or during the initialization).
+     */
+    private void maybeCompact() {
+        if (journal.getRecords() >= compactionThreshold && compacting.compareAndSet(false, true)) {
+            compactor.submit(() -> {
+                try {
+                    compact();
+                } catch (Exception e) {
+                    LOGGER.log(Level.SEVERE, "Unable to compact the keystore journal", e);
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * In JOURNAL mode, compacts the journal, otherwise rewrites the keystore file under the read lock.
+     *
+     * Synchronized like {@link #compact()} : two snapshots requested at once write the same temporary files.
+     */
+    @Override
+    public synchronized void snapshot() throws IOException, GeneralSecurityException {
+        if (storageMode == StorageMode.JOURNAL) {
+            compact();
+            return;
+        }
+        long start = System.nanoTime();
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] indexContent;
+        readLock.lock();
+        try {
+            ks.store(content, pwd.toCharArray());
+            byte[] snapshot = content.toByteArray();
+            indexContent = index.toBytes(digest(snapshot));
+            writeSnapshot(snapshot);
+            persisted = snapshot;
+            writeAtomically(Paths.get(path + ".index"), indexContent);
+        } finally {
+            readLock.unlock();
+        }
+        storeTimer.recordSince(start);
+    }
+
+    /**
+     * Rewrites the keystore file with the current content and deletes the journal segments it contains.
+     * The keystore is serialized under the read lock (so the writers are blocked but not the readers) and a new
+     * journal segment is opened for the next mutations. The file itself is written without any lock.
+     * If the process stops before the end of the compaction, the old segments are replayed on top of the
+     * new snapshot, which is harmless as the records are idempotent.
+     *
+     * Synchronized : a compaction requested by {@link #snapshot()} waits for the one running in background, they
+     * write the same temporary files.
+     */
+    private synchronized void compact() throws IOException, GeneralSecurityException {
+        long start = System.nanoTime();
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] snapshot;
+        byte[] indexContent;
+        long compactedSegment;
+        readLock.lock();
+        try {
+            ks.store(content, pwd.toCharArray());
+            snapshot = content.toByteArray();
+            indexContent = index.toBytes(digest(snapshot));
+            compactedSegment = journal.rotate();
+            persisted = snapshot;
+            persistedSegment = compactedSegment;
+        } finally {
+            readLock.unlock();
+        }
+        writeSnapshot(snapshot);
+        writeAtomically(Paths.get(path + ".index"), indexContent);
+        storeTimer.recordSince(start);
+        journal.deleteSegmentsUpTo(compactedSegment);
+        LOGGER.fine("Keystore journal compacted up to segment " + compactedSegment);
+    }
+
+    /**
+     * Writes the keystore file through a temporary file forced to the disk then atomically moved.
+     */
+    private void writeSnapshot(byte[] content) throws IOException {
+        writeAtomically(Paths.get(path), content);
+    }
+
+    static void writeAtomically(Path target, byte[] content) throws IOException {
+        Path newFile = Paths.get(target + ".tmp");
+        try (FileChannel fc = FileChannel.open(newFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                fc.write(buffer);
+            }
+            fc.force(true);
+        }
+        Files.move(newFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (compactor != null) {
+            compactor.shutdown();
+        }
+        if (journal != null) {
+            writeLock.lock();
+            try {
+                journal.close();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package io.github.leleueri.keyring.provider;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Slab allocator of direct (off-heap) memory for the key material, used by the {@link SecretKeyCache} to keep the
+ * decoded keys out of the heap (and out of the heap dumps).
+ *
+ * The memory is reserved by slabs of {@link #SLAB_SIZE} bytes, each slab is cut in blocks of one size class (a power
+ * of two from {@link #MIN_BLOCK} to {@link #MAX_BLOCK} bytes). A released block is wiped then kept in the free list
+ * of its class, the slabs are never returned to the system : the reserved memory is bounded by the largest number of
+ * blocks allocated at once.
+ *
+ * A block is reference counted : its owner (the entry of the cache) holds the first reference, the responses writing
+ * the block retain it. The block is wiped once its owner and all the responses have released it.
+ */
+public class KeyArena {
+
+    static final int SLAB_SIZE = 64 * 1024;
+    static final int MIN_BLOCK = 64;
+    static final int MAX_BLOCK = 4096;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_BLOCK);
+    private static final byte[] ZEROS = new byte[MAX_BLOCK];
+
+    /**
+     * Block of the arena, its buffer covers the whole block (position 0, limit the length of the content).
+     */
+    public static final class Block {
+        private final ByteBuffer buffer;
+        private final int sizeClass;
+        private final AtomicInteger references = new AtomicInteger(1);
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Block(ByteBuffer buffer, int sizeClass) {
+            this.buffer = buffer;
+            this.sizeClass = sizeClass;
+        }
+
+        /**
+         * @return a view of the content of the block, valid while a reference on the block is held
+         */
+        public ByteBuffer content() {
+            return buffer.duplicate();
+        }
+
+        public int length() {
+            return buffer.limit();
+        }
+    }
+
+    private final ArrayDeque<ByteBuffer>[] free;
+    private long reserved;
+    private long used;
+
+    @SuppressWarnings("unchecked")
+    public KeyArena() {
+        free = new ArrayDeque[Integer.numberOfTrailingZeros(MAX_BLOCK) - MIN_SHIFT + 1];
+        for (int i = 0; i < free.length; i++) {
+            free[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Copies the content in a new block.
+     *
+     * @return the block, null if the content is larger than {@link #MAX_BLOCK}
+     */
+    public synchronized Block allocate(byte[] content) {
+        if (content.length > MAX_BLOCK) {
+            return null;
+        }
+        int sizeClass = sizeClass(content.length);
+        ArrayDeque<ByteBuffer> blocks = free[sizeClass];
+        if (blocks.isEmpty()) {
+            reserveSlab(sizeClass);
+        }
+        ByteBuffer buffer = blocks.pop();
+        buffer.clear();
+        buffer.put(content).flip();
+        used += buffer.capacity();
+        return new Block(buffer, sizeClass);
+    }
+
+    /**
+     * Takes a reference on the block, to be released with {@link #releaseRetained(Block)}.
+     *
+     * @return false if the block has already been wiped
+     */
+    public boolean retain(Block block) {
+        for (;;) {
+            int references = block.references.get();
+            if (references == 0) {
+                return false;
+            }
+            if (block.references.compareAndSet(references, references + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases the reference of the owner of the block, the block is wiped and made available for the next
+     * allocations once the references retained are released too. Releasing a block twice has no effect.
+     */
+    public void release(Block block) {
+        if (block.released.compareAndSet(false, true)) {
+            releaseRetained(block);
+        }
+    }
+
+    /**
+     * Releases a reference taken by {@link #retain(Block)}.
+     */
+    public void releaseRetained(Block block) {
+        if (block.references.decrementAndGet() == 0) {
+            free(block);
+        }
+    }
+
+    private synchronized void free(Block block) {
+        ByteBuffer buffer = block.buffer;
+        buffer.clear();
+        buffer.put(ZEROS, 0, buffer.capacity()).clear();
+        used -= buffer.capacity();
+        free[block.sizeClass].push(buffer);
+    }
+
+    private void reserveSlab(int sizeClass) {
+        int blockSize = MIN_BLOCK << sizeClass;
+        ByteBuffer slab = ByteBuffer.allocateDirect(SLAB_SIZE);
+        for (int offset = 0; offset < SLAB_SIZE; offset += blockSize) {
+            slab.limit(offset + blockSize).position(offset);
+            free[sizeClass].push(slab.slice());
+        }
+        reserved += SLAB_SIZE;
+    }
+
+    private static int sizeClass(int length) {
+        int size = Math.max(MIN_BLOCK, Integer.highestOneBit(Math.max(1, length - 1)) << 1);
+        return Integer.numberOfTrailingZeros(size) - MIN_SHIFT;
+    }
+
+    /**
+     * @return the direct memory reserved by the slabs, in bytes
+     */
+    public synchronized long getReservedBytes() {
+        return reserved;
+    }
+
+    /**
+     * @return the memory of the allocated blocks, in bytes
+     */
+    public synchronized long getUsedBytes() {
+        return used;
+    }
+}
@@ -0,0 +1,63 @@
+package io.github.leleueri.keyring.provider;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Storage of the key material behind a {@link KeystoreProvider}.
+ *
+ * The provider owns the concurrency : {@link #get(String)} is called with the read lock of the provider held,
+ * {@link #write(List)} with its write lock held. The storage keeps the {@link AliasIndex} of the provider in
+ * line with its content, it is the scan of the keys (the provider lists and filters the aliases from the index).
+ *
+ * Implementations :
+ * <ul>
+ *     <li>{@link JceksStorage} : a JCEKS keystore file, optionally with a journal of the mutations</li>
+ *     <li>{@link LogStorage} : an append only log of sealed records, all the keys sealed in memory</li>
+ *     <li>{@link MappedStorage} : a memory mapped hash table of sealed records</li>
+ * </ul>
+ */
+public interface KeyStorage extends Closeable {
+
+    /**
+     * Reads the stored keys and fills the index. Called once by the provider, before any other method.
+     *
+     * @param lock  lock of the provider, used by the storage to block the writers during its background tasks
+     * @param index index of the provider
+     */
+    void open(ReentrantReadWriteLock lock, AliasIndex index);
+
+    /**
+     * Checks that a PUT record can be stored, called by the provider before the lock is taken. A rejected record is
+     * not written, the mutation is INVALID.
+     *
+     * @return the reason why the record can't be stored, if any
+     */
+    default Optional<String> validate(StorageRecord record) {
+        return Optional.empty();
+    }
+
+    /**
+     * @return the key stored under the alias, null if the alias is unknown
+     */
+    Key get(String alias) throws GeneralSecurityException;
+
+    /**
+     * Applies the records in order and persists them, as one transaction : the index is updated with the records.
+     *
+     * The write lock is held during the whole call : the records are visible to the readers once they are persisted.
+     * If an exception is thrown, the storage and the index are in their state before the call.
+     */
+    void write(List<StorageRecord> records) throws IOException, GeneralSecurityException;
+
+    /**
+     * Persists the whole content in its most compact form (rewrite of the file, compaction of the log...).
+     * Called without any lock held.
+     */
+    void snapshot() throws IOException, GeneralSecurityException;
+}
@@ -0,0 +1,109 @@
+package io.github.leleueri.keyring.provider;
+
+import io.github.leleueri.keyring.exception.KeyringApplicativeException;
+import io.github.leleueri.keyring.exception.KeyringConfigurationException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Seals the key material written outside of the JCEKS file (journal, replication...).
+ *
+ * The AES key is derived from a password with PBKDF2, each sealed value is encrypted with AES/GCM under a
+ * random IV and is authenticated with an associated data (typically the alias) so a sealed key can't be
+ * moved to another alias.
+ */
+public class KeyringCipher {
+
+    public static final int SALT_LENGTH = 16;
+
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 128;
+    private static final int KEY_LENGTH = 128;
+    private static final int ITERATIONS = 10_000;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final SecretKeySpec key;
+
+    public KeyringCipher(String password, byte[] salt) {
+        try {
+            SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+            byte[] derived = factory.generateSecret(new PBEKeySpec(password.toCharArray(), salt, ITERATIONS, KEY_LENGTH)).getEncoded();
+            this.key = new SecretKeySpec(derived, "AES");
+            Arrays.fill(derived, (byte) 0);
+        } catch (GeneralSecurityException e) {
+            throw new KeyringConfigurationException("Unable to derive the sealing key", e);
+        }
+    }
+
+    public static byte[] newSalt() {
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        return salt;
+    }
+
+    /**
+     * @return the IV followed by the encrypted value and its authentication tag
+     */
+    public byte[] seal(byte[] value, String associatedData) {
+        try {
+            byte[] iv = new byte[IV_LENGTH];
+            RANDOM.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, iv));
+            cipher.updateAAD(associatedData.getBytes(StandardCharsets.UTF_8));
+            byte[] sealed = new byte[IV_LENGTH + cipher.getOutputSize(value.length)];
+            System.arraycopy(iv, 0, sealed, 0, IV_LENGTH);
+            cipher.doFinal(value, 0, value.length, sealed, IV_LENGTH);
+            return sealed;
+        } catch (GeneralSecurityException e) {
+            throw new KeyringApplicativeException("Unable to seal the key", e);
+        }
+    }
+
+    public byte[] unseal(byte[] sealed, String associatedData) {
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, sealed, 0, IV_LENGTH));
+            cipher.updateAAD(associatedData.getBytes(StandardCharsets.UTF_8));
+            return cipher.doFinal(sealed, IV_LENGTH, sealed.length - IV_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new KeyringApplicativeException("Unable to unseal the key", e);
+        }
+    }
+
+    /**
+     * Same as {@link #unseal(byte[], String)}, the sealed value is read from the remaining bytes of the buffer
+     * (a slice of a mapped file for instance) without copying it.
+     */
+    public byte[] unseal(ByteBuffer sealed, String associatedData) {
+        try {
+            byte[] iv = new byte[IV_LENGTH];
+            sealed.get(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, iv));
+            cipher.updateAAD(associatedData.getBytes(StandardCharsets.UTF_8));
+            byte[] value = new byte[cipher.getOutputSize(sealed.remaining())];
+            int length = cipher.doFinal(sealed, ByteBuffer.wrap(value));
+            return length == value.length ? value : Arrays.copyOf(value, length);
+        } catch (GeneralSecurityException e) {
+            throw new KeyringApplicativeException("Unable to unseal the key", e);
+        }
+    }
+
+    /**
+     * @return the length of a sealed value of the given length
+     */
+    public static int sealedLength(int length) {
+        return IV_LENGTH + length + TAG_LENGTH / 8;
+    }
+}
@@ -0,0 +1,343 @@
+package io.github.leleueri.keyring.provider;
+
+import io.github.leleueri.keyring.exception.KeyringConfigurationException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append only journal of the keystore mutations ({@link StorageRecord}).
+ *
+ * The journal is split in segments named {@code <keystore path>.journal.<sequence>}, only the last one is
+ * opened for writing. Each segment starts with a header (magic, version, salt of the sealing key) followed by
+ * records : {@code length | crc32 | payload}. Since the version 2, the payload of a PUT contains the creation date
+ * of the key. The key material of a record is sealed with a {@link KeyringCipher}
+ * derived from the key password. Each append is forced to the disk before returning.
+ *
+ * On replay, a truncated or corrupted record at the end of the last segment (torn write) is discarded and the
+ * segment is truncated to its last valid record. A failed append is truncated at once : the next records never
+ * follow torn bytes.
+ */
+public class KeystoreJournal implements Closeable {
+
+    private static final int MAGIC = 0x4B524A4C; // "KRJL"
+    private static final byte VERSION = 2;
+    private static final int HEADER_LENGTH = 4 + 1 + KeyringCipher.SALT_LENGTH;
+    private static final int MAX_RECORD_LENGTH = 1 << 20;
+
+    private final Logger LOGGER = Logger.getLogger(getClass().getName());
+
+    private final Path directory;
+    private final String prefix;
+    private final String password;
+
+    private long sequence;
+    private FileChannel channel;
+    private KeyringCipher cipher;
+    // version of the segment opened for writing, the records are appended in its format
+    private byte version;
+    private int records;
+    // failure of an append which could not be truncated, the journal refuses the next appends
+    private IOException failure;
+
+    public KeystoreJournal(String keystorePath, String password) {
+        this(keystorePath, ".journal.", password);
+    }
+
+    /**
+     * @param suffix inserted between the path and the sequence in the name of the segments
+     */
+    public KeystoreJournal(String path, String suffix, String password) {
+        Path base = Paths.get(path).toAbsolutePath();
+        this.directory = base.getParent();
+        this.prefix = base.getFileName().toString() + suffix;
+        this.password = password;
+    }
+
+    /**
+     * Replays all the segments in order then opens the last one for writing.
+     */
+    public void replay(Consumer<StorageRecord> consumer) {
+        TreeMap<Long, Path> segments = listSegments();
+        records = 0;
+        try {
+            for (Path segment : segments.values()) {
+                boolean last = segment.equals(segments.lastEntry().getValue());
+                records += replaySegment(segment, last, consumer);
+            }
+            if (segments.isEmpty()) {
+                openSegment(1);
+            } else {
+                openSegment(segments.lastKey());
+            }
+        } catch (IOException e) {
+            throw new KeyringConfigurationException("Unable to replay the keystore journal", e);
+        }
+    }
+
+    /**
+     * Reads the records of the segments following the given one, without opening any segment for writing.
+     */
+    public void read(long after, Consumer<StorageRecord> consumer) throws IOException {
+        for (Path segment : listSegments().tailMap(after, false).values()) {
+            replaySegment(segment, false, consumer);
+        }
+    }
+
+    private int replaySegment(Path segment, boolean last, Consumer<StorageRecord> consumer) throws IOException {
+        int count = 0;
+        // only the last segment may be truncated (torn write), the other ones are read only
+        OpenOption[] options = last ? new OpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE}
+                : new OpenOption[]{StandardOpenOption.READ};
+        try (FileChannel fc = FileChannel.open(segment, options)) {
+            ByteBuffer content = ByteBuffer.allocate((int) fc.size());
+            while (content.hasRemaining() && fc.read(content) >= 0) ;
+            content.flip();
+
+            if (content.remaining() < HEADER_LENGTH) {
+                if (!last) {
+                    throw new KeyringConfigurationException("Journal segment '" + segment + "' is corrupted");
+                }
+                // segment created but its header was not fully written, it can't contain any record
+                fc.truncate(0);
+                return 0;
+            }
+            byte version = readVersion(content, segment);
+            KeyringCipher segmentCipher = readCipher(content);
+
+            long validPosition = content.position();
+            while (content.remaining() > 0) {
+                StorageRecord record = readRecord(content, version, segmentCipher);
+                if (record == null) {
+                    if (!last) {
+                        throw new KeyringConfigurationException("Journal segment '" + segment + "' is corrupted");
+                    }
+                    LOGGER.warning("Discard the incomplete journal record at position " + validPosition + " of '" + segment + "'");
+                    fc.truncate(validPosition);
+                    fc.force(true);
+                    break;
+                }
+                consumer.accept(record);
+                validPosition = content.position();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private byte readVersion(ByteBuffer content, Path segment) {
+        int magic = content.getInt();
+        byte version = content.get();
+        if (magic != MAGIC || version < 1 || version > VERSION) {
+            throw new KeyringConfigurationException("'" + segment + "' is not a keystore journal");
+        }
+        return version;
+    }
+
+    private KeyringCipher readCipher(ByteBuffer content) {
+        byte[] salt = new byte[KeyringCipher.SALT_LENGTH];
+        content.get(salt);
+        return new KeyringCipher(password, salt);
+    }
+
+    /**
+     * @return the next record or null if the remaining bytes don't contain a valid record
+     */
+    private StorageRecord readRecord(ByteBuffer content, byte version, KeyringCipher segmentCipher) throws IOException {
+        if (content.remaining() < 8) {
+            return null;
+        }
+        int length = content.getInt();
+        int crc = content.getInt();
+        if (length <= 0 || length > MAX_RECORD_LENGTH || content.remaining() < length) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        content.get(payload);
+        CRC32 checksum = new CRC32();
+        checksum.update(payload);
+        if ((int) checksum.getValue() != crc) {
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        StorageRecord.Operation operation = StorageRecord.Operation.values()[in.readByte()];
+        String alias = in.readUTF();
+        if (operation == StorageRecord.Operation.DELETE) {
+            return StorageRecord.delete(alias);
+        }
+        String algorithm = in.readUTF();
+        long creationDate = version >= 2 ? in.readLong() : 0;
+        byte[] sealed = new byte[in.readInt()];
+        in.readFully(sealed);
+        return StorageRecord.put(alias, algorithm, segmentCipher.unseal(sealed, alias), creationDate);
+    }
+
+    /**
+     * Opens a segment for writing, the current one is left unchanged if the segment can't be opened.
+     */
+    private void openSegment(long seq) throws IOException {
+        Path segment = directory.resolve(prefix + seq);
+        FileChannel fc = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean created = fc.size() == 0;
+        byte segmentVersion;
+        KeyringCipher segmentCipher;
+        try {
+            if (created) {
+                byte[] salt = KeyringCipher.newSalt();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+                header.putInt(MAGIC).put(VERSION).put(salt).flip();
+                while (header.hasRemaining()) {
+                    fc.write(header);
+                }
+                fc.force(true);
+                segmentCipher = new KeyringCipher(password, salt);
+                segmentVersion = VERSION;
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+                while (header.hasRemaining() && fc.read(header, header.position()) >= 0) ;
+                header.flip();
+                segmentVersion = readVersion(header, segment);
+                segmentCipher = readCipher(header);
+            }
+            fc.position(fc.size());
+        } catch (IOException | RuntimeException e) {
+            fc.close();
+            if (created) {
+                // a partial header would make the segment unreadable
+                Files.deleteIfExists(segment);
+            }
+            throw e;
+        }
+        this.channel = fc;
+        this.sequence = seq;
+        this.version = segmentVersion;
+        this.cipher = segmentCipher;
+    }
+
+    /**
+     * Appends the records and forces them to the disk : once this method returns, the records survive a crash.
+     * If an exception is thrown, the segment is truncated to its size before the call.
+     */
+    public void append(List<StorageRecord> batch) throws IOException {
+        if (failure != null) {
+            throw new IOException("The journal is unusable since an append failed", failure);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (StorageRecord record : batch) {
+            byte[] payload = encode(record);
+            CRC32 checksum = new CRC32();
+            checksum.update(payload);
+            out.writeInt(payload.length);
+            out.writeInt((int) checksum.getValue());
+            out.write(payload);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        long position = channel.position();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            discard(position, e);
+            throw e;
+        }
+        records += batch.size();
+    }
+
+    /**
+     * Truncates the current segment to the position of a failed append. If it can't be truncated, a part of the
+     * batch may be replayed on restart : the journal is marked failed so no record is appended after it.
+     */
+    private void discard(long position, IOException cause) {
+        try {
+            channel.truncate(position);
+            channel.position(position);
+            channel.force(false);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+            failure = cause;
+            LOGGER.log(Level.SEVERE, "Unable to truncate the journal segment " + sequence + " after a failed append", e);
+        }
+    }
+
+    private byte[] encode(StorageRecord record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(record.getOperation().ordinal());
+        out.writeUTF(record.getAlias());
+        if (record.getOperation() == StorageRecord.Operation.PUT) {
+            out.writeUTF(record.getAlgorithm());
+            if (version >= 2) {
+                out.writeLong(record.getCreationDate());
+            }
+            byte[] sealed = cipher.seal(record.getKey(), record.getAlias());
+            out.writeInt(sealed.length);
+            out.write(sealed);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the number of records written since the last compaction
+     */
+    public int getRecords() {
+        return records;
+    }
+
+    /**
+     * Closes the current segment and opens a new one.
+     *
+     * @return the sequence of the closed segment, this segment and the previous ones may be deleted
+     * once a snapshot containing their records is persisted.
+     */
+    public long rotate() throws IOException {
+        long closed = sequence;
+        FileChannel previous = channel;
+        // the new segment is opened first : if it can't be, the appends go on in the current one
+        openSegment(closed + 1);
+        records = 0;
+        previous.close();
+        return closed;
+    }
+
+    public void deleteSegmentsUpTo(long seq) throws IOException {
+        for (Path segment : listSegments().headMap(seq, true).values()) {
+            Files.deleteIfExists(segment);
+        }
+    }
+
+    private TreeMap<Long, Path> listSegments() {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (Path p : stream) {
+                String suffix = p.getFileName().toString().substring(prefix.length());
+                try {
+                    segments.put(Long.parseLong(suffix), p);
+                } catch (NumberFormatException e) {
+                    LOGGER.warning("Ignore the file '" + p + "', it is not a journal segment");
+                }
+            }
+        } catch (IOException e) {
+            throw new KeyringConfigurationException("Unable to list the journal segments", e);
+        }
+        return segments;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
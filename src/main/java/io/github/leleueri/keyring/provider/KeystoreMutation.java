@@ -0,0 +1,73 @@
+package io.github.leleueri.keyring.provider;
+
+import io.github.leleueri.keyring.bean.SecretKey;
+
+/**
+ * A change of the keystore, applied with other mutations by {@link KeystoreProvider#commit(java.util.List)}.
+ * The status of the mutation is set by the commit.
+ */
+public final class KeystoreMutation {
+
+    public enum Type {
+        /** adds or replaces a key */
+        PUT,
+        /** adds a key, rejected as a conflict if the alias is already used */
+        CREATE,
+        /** removes a key */
+        DELETE
+    }
+
+    public enum Status {
+        PENDING, CREATED, DELETED, ABSENT, CONFLICT, INVALID
+    }
+
+    private final Type type;
+    private final String alias;
+    private final SecretKey key;
+
+    private Status status = Status.PENDING;
+    private String message;
+
+    private KeystoreMutation(Type type, String alias, SecretKey key) {
+        this.type = type;
+        this.alias = alias;
+        this.key = key;
+    }
+
+    public static KeystoreMutation put(SecretKey key) {
+        return new KeystoreMutation(Type.PUT, key.getAlias(), key);
+    }
+
+    public static KeystoreMutation create(SecretKey key) {
+        return new KeystoreMutation(Type.CREATE, key.getAlias(), key);
+    }
+
+    public static KeystoreMutation delete(String alias) {
+        return new KeystoreMutation(Type.DELETE, alias, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getAlias() {
+        return alias;
+    }
+
+    public SecretKey getKey() {
+        return key;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    void setStatus(Status status, String message) {
+        this.status = status;
+        this.message = message;
+    }
+}
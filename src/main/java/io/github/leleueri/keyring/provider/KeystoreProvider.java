@@ -1,172 +1,557 @@
 package io.github.leleueri.keyring.provider;
 
+import io.github.leleueri.keyring.bean.CacheStats;
+import io.github.leleueri.keyring.bean.ImportResult;
+import io.github.leleueri.keyring.bean.KeyMetadata;
+import io.github.leleueri.keyring.bean.ListQuery;
 import io.github.leleueri.keyring.bean.SecretKey;
 import io.github.leleueri.keyring.exception.KeyringApplicativeException;
-import io.github.leleueri.keyring.exception.KeyringConfigurationException;
+import io.github.leleueri.keyring.metrics.Counter;
+import io.github.leleueri.keyring.metrics.Histogram;
+import io.github.leleueri.keyring.metrics.KeyringMetrics;
 import io.vertx.core.Handler;
-import sun.misc.BASE64Decoder;
-import sun.misc.BASE64Encoder;
+import io.vertx.core.shareddata.Shareable;
 
 import java.io.*;
-import java.nio.ByteBuffer;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.security.*;
 import java.security.cert.CertificateEncodingException;
-import java.security.cert.CertificateException;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import io.vertx.core.Future;
 
 import javax.crypto.spec.SecretKeySpec;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Created by eric on 07/10/15.
+ *
+ * The provider may be shared between several verticles (see {@link Shareable}) : reads are executed concurrently
+ * while the mutations hold an exclusive lock. The keys are stored by a {@link KeyStorage}, a JCEKS file by
+ * default (see {@link JceksStorage}).
+ *
+ * The aliases are listed from an {@link AliasIndex} maintained by the storage, so the keys don't have to be
+ * unsealed to read their metadata.
+ *
+ * The duration of the keystore operations (unseal, seal, store, reload, journal append) is recorded in the
+ * {@link KeyringMetrics} given at construction.
+ *
+ * The storage is opened by the constructor, unless the provider is created closed for a lazy startup : the provider
+ * can then be shared before its storage is read, and must not be used before {@link #open()} returns (see
+ * {@link #isOpen()}).
  */
-public class KeystoreProvider {
+public class KeystoreProvider implements Shareable, Closeable {
 
-    private volatile KeyStore ks;
+    private final Logger LOGGER = Logger.getLogger(getClass().getName());
 
-    private String keyPassword;
+    // stateless and thread safe, without the line breaks of the MIME encoding
+    private static final Base64.Encoder B64_ENCODER = Base64.getEncoder();
+    private static final Base64.Decoder B64_DECODER = Base64.getDecoder();
 
-    private String path;
-    private String pwd;
-    private String type;
+    private final KeyStorage storage;
 
-    private void assertNotNull(String value, String field) {
-        if (value == null) {
-            throw new KeyringConfigurationException(field + " is required");
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock readLock = lock.readLock();
+    private final Lock writeLock = lock.writeLock();
+
+    private final SecretKeyCache cache;
+
+    private final AliasIndex index = new AliasIndex();
+
+    private final List<Consumer<List<KeystoreMutation>>> commitListeners = new CopyOnWriteArrayList<>();
+
+    private volatile boolean open;
+    private volatile boolean closed;
+
+    private final Histogram unsealTimer;
+    private final Histogram commitTimer;
+    private final Counter persistFailures;
+
+    public KeystoreProvider(String type, String pwd, String path, String keypwd) {
+        this(type, pwd, path, keypwd, new SecretKeyCache(0, 0));
+    }
+
+    public KeystoreProvider(String type, String pwd, String path, String keypwd, SecretKeyCache cache) {
+        this(type, pwd, path, keypwd, cache, JceksStorage.StorageMode.SNAPSHOT, 0);
+    }
+
+    public KeystoreProvider(String type, String pwd, String path, String keypwd, SecretKeyCache cache,
+                            JceksStorage.StorageMode storageMode, int compactionThreshold) {
+        this(type, pwd, path, keypwd, cache, storageMode, compactionThreshold, new KeyringMetrics());
+    }
+
+    /**
+     * Provider of a JCEKS keystore file
+     *
+     * @param compactionThreshold number of journal records triggering the rewrite of the keystore file (JOURNAL mode only)
+     * @param metrics registry of the operation timings and of the cache counters
+     */
+    public KeystoreProvider(String type, String pwd, String path, String keypwd, SecretKeyCache cache,
+                            JceksStorage.StorageMode storageMode, int compactionThreshold, KeyringMetrics metrics) {
+        this(new JceksStorage(type, pwd, path, keypwd, storageMode, compactionThreshold, metrics), cache, metrics);
+    }
+
+    /**
+     * @param storage storage of the keys, opened by this constructor and closed with the provider
+     * @param metrics registry of the operation timings and of the cache counters
+     */
+    public KeystoreProvider(KeyStorage storage, SecretKeyCache cache, KeyringMetrics metrics) {
+        this(storage, cache, metrics, true);
+    }
+
+    /**
+     * @param open false to open the storage later, with {@link #open()}
+     */
+    public KeystoreProvider(KeyStorage storage, SecretKeyCache cache, KeyringMetrics metrics, boolean open) {
+        this.storage = storage;
+        this.cache = cache;
+
+        unsealTimer = metrics.histogram("keyring_keystore_operation_seconds", "Duration of the keystore operations", "operation", "unseal");
+        commitTimer = metrics.histogram("keyring_keystore_commit_seconds", "Duration of the commits, lock wait and persistence included");
+        persistFailures = metrics.counter("keyring_keystore_persist_failures_total", "Commits discarded because the keystore could not be saved");
+        metrics.gauge("keyring_keystore_keys", "Number of secret keys", index::size);
+        metrics.counter("keyring_cache_hits_total", "Reads served by the decoded key cache", () -> cache.getStats().getHits());
+        metrics.counter("keyring_cache_misses_total", "Reads not served by the decoded key cache", () -> cache.getStats().getMisses());
+        metrics.counter("keyring_cache_evictions_total", "Keys evicted from the decoded key cache", () -> cache.getStats().getEvictions());
+        metrics.gauge("keyring_cache_size", "Number of keys in the decoded key cache", () -> cache.getStats().getSize());
+        if (cache.isOffHeap()) {
+            KeyArena arena = cache.getArena();
+            metrics.gauge("keyring_cache_offheap_reserved_bytes", "Direct memory reserved by the off-heap cache", arena::getReservedBytes);
+            metrics.gauge("keyring_cache_offheap_used_bytes", "Direct memory used by the keys of the off-heap cache", arena::getUsedBytes);
+        }
+
+        if (open) {
+            open();
         }
     }
 
-    public KeystoreProvider(String type, String pwd, String path, String keypwd) {
-        loadKeystore(type, pwd, path, keypwd);
+    /**
+     * Reads the storage, the keys are then available. Does nothing if the provider is already open.
+     */
+    public synchronized void open() {
+        if (!open) {
+            storage.open(lock, index);
+            open = true;
+        }
     }
 
-    private void loadKeystore(String type, String pwd, String path, String keypwd) {
-        assertNotNull(type, "Keystore Type");
-        assertNotNull(pwd, "Keystore Password");
-        assertNotNull(path, "Keystore Path");
-        assertNotNull(keypwd, "Key Password");
+    public boolean isOpen() {
+        return open;
+    }
 
-        this.keyPassword = keypwd;
-        this.path = path;
-        this.pwd = pwd;
-        this.type = type;
+    /**
+     * @return the aliases of the cached keys, the most recently used first
+     */
+    public List<String> getCachedAliases() {
+        return cache.aliases();
+    }
 
-        try {
-            ks = KeyStore.getInstance(type);
-            char[] password = pwd.toCharArray();
-
-            File ksFile = Paths.get(path).toFile();
-            if (!ksFile.exists()) {
-                ks.load(null, null);
-                try (FileOutputStream fos = new FileOutputStream(ksFile);) {
-                    this.ks.store(fos, pwd.toCharArray());
-                }
+    /**
+     * Reads the keys of the aliases in order, until the cache is full : the first reads of these keys don't have
+     * to unseal them. The unknown aliases are ignored.
+     *
+     * @return the number of keys loaded in the cache
+     */
+    public int warmUp(Collection<String> aliases) {
+        int loaded = 0;
+        for (String alias : aliases) {
+            if (closed || !cache.hasRoom()) {
+                break;
             }
-
-            try (FileInputStream fis = new FileInputStream(path);) {
-                ks.load(fis, password);
+            if (index.get(alias) != null && findSecretKey(alias) != null) {
+                loaded++;
             }
-        } catch (KeyStoreException|NoSuchAlgorithmException|CertificateException e) {
-            throw new KeyringConfigurationException("Unable to initialize KeyStore", e);
-        } catch (FileNotFoundException e) {
-            throw new KeyringConfigurationException("Wrong KeyStore path", e);
-        } catch (IOException e) {
-            throw new KeyringConfigurationException("Unable to read KeyStore file", e);
         }
+        return loaded;
     }
 
     public Map<String, SecretKey> listSecretKeys() {
+        return listSecretKeys(new ListQuery());
+    }
+
+    /**
+     * Lists the keys selected by the query, only the keys returned are unsealed.
+     *
+     * @return the keys sorted by alias
+     */
+    public SortedMap<String, SecretKey> listSecretKeys(ListQuery query) {
         TreeMap<String, SecretKey> result = new TreeMap<>();
+        readLock.lock();
         try {
-            Enumeration<String> aliases = ks.aliases();
-            while (aliases.hasMoreElements()) {
-                String alias = aliases.nextElement();
-                if (ks.isKeyEntry(alias)) {
-                    final Key key = ks.getKey(alias, keyPassword.toCharArray());
-                    SecretKey sKey = new SecretKey();
-                    sKey.setAlias(alias);
-                    sKey.setAlgorithm(key.getAlgorithm());
-                    sKey.setFormat(key.getFormat());
-                    sKey.setB64Key(new BASE64Encoder().encode(key.getEncoded()));
-                    result.put(alias, sKey );
+            for (KeyMetadata metadata : index.query(query)) {
+                String alias = metadata.getAlias();
+                SecretKey sKey = cache.get(alias);
+                if (sKey == null) {
+                    sKey = toSecretKey(alias, unseal(alias));
                 }
+                result.put(alias, sKey);
             }
         } catch (KeyStoreException e) {
             throw new KeyringApplicativeException("Unable to list Aliases from the keystore instance", e);
-        } catch (NoSuchAlgorithmException|UnrecoverableKeyException e) {
+        } catch (GeneralSecurityException e) {
             throw new KeyringApplicativeException("Unable to read key", e);
+        } finally {
+            readLock.unlock();
         }
         return result;
     }
 
+    private SecretKey toSecretKey(String alias, Key key) {
+        SecretKey sKey = new SecretKey();
+        sKey.setAlias(alias);
+        sKey.setAlgorithm(key.getAlgorithm());
+        sKey.setFormat(key.getFormat());
+        byte[] raw = key.getEncoded();
+        sKey.setB64Key(B64_ENCODER.encodeToString(raw));
+        Arrays.fill(raw, (byte) 0);
+        return sKey;
+    }
+
     public Optional<SecretKey> getSecretKey(String alias) {
+        return Optional.ofNullable(findSecretKey(alias));
+    }
+
+    /**
+     * Same as {@link #getSecretKey(String)} without the Optional wrapper, for the read path of the verticles :
+     * a key served from the cache doesn't allocate anything.
+     *
+     * @return the key or null if the alias is unknown
+     */
+    public SecretKey findSecretKey(String alias) {
+        final SecretKey cached = cache.get(alias);
+        if (cached != null) {
+            return cached;
+        }
+        readLock.lock();
         try {
-            final Optional<Key> optKey = Optional.ofNullable(ks.getKey(alias, keyPassword.toCharArray()));
-            return optKey.map(k -> {
-                SecretKey sKey = new SecretKey();
-                sKey.setAlias(alias);
-                sKey.setAlgorithm(k.getAlgorithm());
-                sKey.setFormat(k.getFormat());
-                sKey.setB64Key(new BASE64Encoder().encode(k.getEncoded()));
-                return sKey;
-            });
+            Key key = unseal(alias);
+            if (key == null) {
+                return null;
+            }
+            SecretKey sKey = toSecretKey(alias, key);
+            KeyMetadata metadata = index.get(alias);
+            cache.put(alias, sKey, metadata == null ? 0 : metadata.getCreationDate());
+            return sKey;
         } catch (KeyStoreException e) {
             throw new KeyringApplicativeException("Unable to read alias '" + alias + "' from the keystore instance", e);
-        } catch (NoSuchAlgorithmException|UnrecoverableKeyException e) {
+        } catch (GeneralSecurityException e) {
             throw new KeyringApplicativeException("Unable to read key", e);
+        } finally {
+            readLock.unlock();
         }
     }
 
-    public Set<String> listAlias() {
-        TreeSet<String> result = new TreeSet<>();
+    /**
+     * Reads a key from the storage, without going through the cache nor filling it.
+     *
+     * @return the key or null if the alias is unknown
+     */
+    public SecretKey readSecretKey(String alias) {
+        readLock.lock();
         try {
-            Enumeration<String> aliases = ks.aliases();
-            while (aliases.hasMoreElements()) {
-                String alias = aliases.nextElement();
-                if (ks.isKeyEntry(alias)) {
-                    result.add(alias);
+            Key key = unseal(alias);
+            return key == null ? null : toSecretKey(alias, key);
+        } catch (KeyStoreException e) {
+            throw new KeyringApplicativeException("Unable to read alias '" + alias + "' from the keystore instance", e);
+        } catch (GeneralSecurityException e) {
+            throw new KeyringApplicativeException("Unable to read key", e);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Reads several keys at once, the keys not cached are unsealed under a single acquisition of the lock.
+     *
+     * @return the keys found indexed by alias, in the order of the aliases
+     */
+    public Map<String, SecretKey> findSecretKeys(Collection<String> aliases) {
+        Map<String, SecretKey> found = new LinkedHashMap<>();
+        List<String> notCached = new ArrayList<>();
+        for (String alias : aliases) {
+            SecretKey cached = cache.get(alias);
+            // the entry keeps the position of the alias
+            found.put(alias, cached);
+            if (cached == null) {
+                notCached.add(alias);
+            }
+        }
+        if (!notCached.isEmpty()) {
+            readLock.lock();
+            try {
+                for (String alias : notCached) {
+                    Key key = unseal(alias);
+                    if (key == null) {
+                        found.remove(alias);
+                    } else {
+                        SecretKey sKey = toSecretKey(alias, key);
+                        KeyMetadata metadata = index.get(alias);
+                        cache.put(alias, sKey, metadata == null ? 0 : metadata.getCreationDate());
+                        found.put(alias, sKey);
+                    }
                 }
+            } catch (KeyStoreException e) {
+                throw new KeyringApplicativeException("Unable to read the keystore instance", e);
+            } catch (GeneralSecurityException e) {
+                throw new KeyringApplicativeException("Unable to read key", e);
+            } finally {
+                readLock.unlock();
             }
-        } catch (KeyStoreException e) {
-            throw new KeyringApplicativeException("Unable to list Aliases from the keystore instance", e);
+        }
+        return found;
+    }
+
+    /**
+     * @return the encoded form of a cached key, null if the key has to be read with {@link #findSecretKey(String)}
+     * and encoded with {@link #encode(SecretKey)}
+     */
+    public EncodedKey getEncodedSecretKey(String alias) {
+        return cache.getEncoded(alias);
+    }
+
+    /**
+     * Encodes a key returned by {@link #findSecretKey(String)}, the encoded form is kept in the cache with the key
+     * (until the key is evicted or its alias written). An off-heap cache already holds the encoded form of its keys.
+     */
+    public EncodedKey encode(SecretKey key) {
+        KeyMetadata metadata = index.get(key.getAlias());
+        EncodedKey encoded = EncodedKey.encode(key, metadata == null ? 0 : metadata.getCreationDate());
+        cache.putEncoded(key.getAlias(), key, encoded);
+        return encoded;
+    }
+
+    /**
+     * Must be called with the read lock held.
+     */
+    private Key unseal(String alias) throws GeneralSecurityException {
+        long start = System.nanoTime();
+        Key key = storage.get(alias);
+        unsealTimer.recordSince(start);
+        return key;
+    }
+
+    public boolean containsAlias(String alias) {
+        return index.get(alias) != null;
+    }
+
+    /**
+     * @return the metadata of a key, read from the index, null if the alias is unknown
+     */
+    public KeyMetadata getKeyMetadata(String alias) {
+        return index.get(alias);
+    }
+
+    public Set<String> listAlias() {
+        return new TreeSet<>(listAlias(new ListQuery()));
+    }
+
+    /**
+     * Lists the aliases selected by the query, read from the index only.
+     *
+     * @return the aliases sorted
+     */
+    public List<String> listAlias(ListQuery query) {
+        List<KeyMetadata> metadata;
+        // the read lock gives a consistent view of the index when a commit updates several aliases
+        readLock.lock();
+        try {
+            metadata = index.query(query);
+        } finally {
+            readLock.unlock();
+        }
+        List<String> result = new ArrayList<>(metadata.size());
+        for (KeyMetadata m : metadata) {
+            result.add(m.getAlias());
         }
         return result;
     }
 
     public String addSecretKey(SecretKey sKey) {
-        String alias = sKey.getAlias();
-        try {
-            SecretKeySpec keySpec = new SecretKeySpec(new BASE64Decoder().decodeBuffer(sKey.getB64Key()), sKey.getAlgorithm());
-            this.ks.setKeyEntry(alias, keySpec, keyPassword.toCharArray(), null);
-
-            persistChanges();
-            return alias;
-        } catch (KeyStoreException|NoSuchAlgorithmException|CertificateException e) {
-            e.printStackTrace();
-            throw new KeyringApplicativeException("Unable to add alias '" + alias + "' into the keystore instance", e);
-        } catch (IOException e) {
-            throw new KeyringApplicativeException("Unable to save the key", e);
+        KeystoreMutation mutation = KeystoreMutation.put(sKey);
+        commit(Collections.singletonList(mutation));
+        if (mutation.getStatus() == KeystoreMutation.Status.INVALID) {
+            throw new KeyringApplicativeException("Unable to add alias '" + sKey.getAlias() + "' into the keystore instance : " + mutation.getMessage());
         }
+        return sKey.getAlias();
+    }
+
+    public void deleteSecretKey(String alias) {
+        commit(Collections.singletonList(KeystoreMutation.delete(alias)));
     }
 
-    private void persistChanges() throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
-        Path newFile = Paths.get(path + ".tmp");
-        try (FileOutputStream fos = new FileOutputStream(newFile.toFile());) {
-            this.ks.store(fos, pwd.toCharArray());
+    /**
+     * Adds all the given keys in one transaction, see {@link #commit(List)}. A key whose alias already exists in
+     * the keystore, or earlier in the list, is rejected as a conflict.
+     *
+     * @return the result of each key, in the order of the given list
+     */
+    public List<ImportResult> importSecretKeys(List<SecretKey> keys) {
+        List<KeystoreMutation> mutations = new ArrayList<>(keys.size());
+        for (SecretKey key : keys) {
+            mutations.add(KeystoreMutation.create(key));
         }
-        newFile.toFile().renameTo(Paths.get(path).toFile());
+        commit(mutations);
 
-        loadKeystore(type, pwd, path, keyPassword);
+        List<ImportResult> results = new ArrayList<>(keys.size());
+        for (KeystoreMutation mutation : mutations) {
+            String status;
+            switch (mutation.getStatus()) {
+                case CREATED:
+                    status = ImportResult.CREATED;
+                    break;
+                case CONFLICT:
+                    status = ImportResult.CONFLICT;
+                    break;
+                default:
+                    status = ImportResult.INVALID;
+            }
+            results.add(new ImportResult(mutation.getAlias(), status, mutation.getMessage()));
+        }
+        return results;
     }
 
-    public void deleteSecretKey(String alias) {
+    /**
+     * Applies the mutations in one transaction : they are applied in order under the same write lock and
+     * persisted once (one keystore file rewrite or one journal append). Each mutation sees the effect of
+     * the previous ones. The status of each mutation is set, the mutations rejected (INVALID, CONFLICT, ABSENT)
+     * don't prevent the others to be applied.
+     * If the persistence fails, none of the mutations is kept and a KeyringApplicativeException is thrown.
+     * Once the lock is released, the commit listeners are called with the mutations applied.
+     */
+    public void commit(List<KeystoreMutation> mutations) {
+        // the keys are decoded before taking the lock
+        Map<KeystoreMutation, SecretKeySpec> specs = new HashMap<>();
+        for (KeystoreMutation mutation : mutations) {
+            if (mutation.getType() != KeystoreMutation.Type.DELETE) {
+                SecretKey sKey = mutation.getKey();
+                try {
+                    SecretKeySpec spec = new SecretKeySpec(B64_DECODER.decode(sKey.getB64Key()), sKey.getAlgorithm());
+                    Optional<String> rejected = storage.validate(StorageRecord.put(mutation.getAlias(), spec.getAlgorithm(), spec.getEncoded(), 0));
+                    if (rejected.isPresent()) {
+                        mutation.setStatus(KeystoreMutation.Status.INVALID, rejected.get());
+                    } else {
+                        specs.put(mutation, spec);
+                    }
+                } catch (IllegalArgumentException e) {
+                    mutation.setStatus(KeystoreMutation.Status.INVALID, "Key is not a valid base64 value");
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        List<KeystoreMutation> committed = null;
+        writeLock.lock();
         try {
-            ks.deleteEntry(alias);
-            persistChanges();
-        } catch (Exception e) {
-            throw new KeyringApplicativeException("Unable to delete alias '" + alias + "' from the keystore instance", e);
+            // state of the aliases modified by the previous mutations of this commit (false if deleted)
+            Map<String, Boolean> modified = new HashMap<>();
+            List<KeystoreMutation> effective = new ArrayList<>(mutations.size());
+            for (KeystoreMutation mutation : mutations) {
+                if (mutation.getStatus() == KeystoreMutation.Status.INVALID) {
+                    continue;
+                }
+                String alias = mutation.getAlias();
+                boolean exists = modified.containsKey(alias) ? modified.get(alias) : index.get(alias) != null;
+                switch (mutation.getType()) {
+                    case CREATE:
+                        if (exists) {
+                            mutation.setStatus(KeystoreMutation.Status.CONFLICT, "SecretKey already exists");
+                            continue;
+                        }
+                        // no conflict, same as a PUT
+                    case PUT:
+                        mutation.setStatus(KeystoreMutation.Status.CREATED, null);
+                        modified.put(alias, true);
+                        break;
+                    case DELETE:
+                        if (!exists) {
+                            mutation.setStatus(KeystoreMutation.Status.ABSENT, null);
+                            continue;
+                        }
+                        mutation.setStatus(KeystoreMutation.Status.DELETED, null);
+                        modified.put(alias, false);
+                        break;
+                }
+                effective.add(mutation);
+            }
+            if (effective.isEmpty()) {
+                return;
+            }
+
+            List<StorageRecord> records = new ArrayList<>(effective.size());
+            for (KeystoreMutation mutation : effective) {
+                if (mutation.getType() == KeystoreMutation.Type.DELETE) {
+                    records.add(StorageRecord.delete(mutation.getAlias()));
+                } else {
+                    SecretKeySpec spec = specs.get(mutation);
+                    records.add(StorageRecord.put(mutation.getAlias(), spec.getAlgorithm(), spec.getEncoded(), 0));
+                }
+                // invalidated under the write lock, before the change is visible
+                cache.invalidate(mutation.getAlias());
+            }
+            try {
+                storage.write(records);
+            } catch (GeneralSecurityException|IOException e) {
+                // the storage is back to its previous state
+                cache.invalidateAll();
+                throw e;
+            }
+            committed = effective;
+        } catch (GeneralSecurityException e) {
+            persistFailures.increment();
+            throw new KeyringApplicativeException("Unable to update the keystore instance", e);
+        } catch (IOException e) {
+            persistFailures.increment();
+            throw new KeyringApplicativeException("Unable to save the keystore changes", e);
+        } finally {
+            writeLock.unlock();
+            commitTimer.recordSince(start);
+        }
+        if (committed != null) {
+            for (Consumer<List<KeystoreMutation>> listener : commitListeners) {
+                // the mutations are persisted : a failing listener doesn't fail the commit nor the next listeners
+                try {
+                    listener.accept(committed);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.SEVERE, "Commit listener failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers a listener called by {@link #commit(List)}, on the committing thread, with the mutations applied
+     * (status CREATED or DELETED) by each commit.
+     */
+    public void addCommitListener(Consumer<List<KeystoreMutation>> listener) {
+        commitListeners.add(listener);
+    }
+
+    public void removeCommitListener(Consumer<List<KeystoreMutation>> listener) {
+        commitListeners.remove(listener);
+    }
+
+    /**
+     * Persists the whole content of the storage in its compact form, see {@link KeyStorage#snapshot()}.
+     */
+    void compact() throws Exception {
+        storage.snapshot();
+    }
+
+    public CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // stops a warm up, then waits for the end of an opening
+        closed = true;
+        synchronized (this) {
+            // wipes the off-heap keys
+            cache.invalidateAll();
+            storage.close();
         }
     }
 }
@@ -0,0 +1,229 @@
+package io.github.leleueri.keyring.provider;
+
+import io.github.leleueri.keyring.bean.KeyMetadata;
+import io.github.leleueri.keyring.exception.KeyringConfigurationException;
+import io.github.leleueri.keyring.metrics.Histogram;
+import io.github.leleueri.keyring.metrics.KeyringMetrics;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Log structured storage : each write is appended to a log of sealed records ({@link KeystoreJournal} segments
+ * named "&lt;path&gt;.log.&lt;sequence&gt;") and all the keys are kept in memory, sealed (AES/GCM) under a master
+ * key derived from the key password at startup. A read unseals one entry without any key derivation, a write
+ * appends its records with a single sync of the disk and never rewrites the existing keys.
+ *
+ * The log is compacted in background once it contains at least twice as many records as keys (and at least the
+ * compaction threshold) : the keys are written into a new segment and the previous segments are deleted. The
+ * writers are blocked during the compaction, not the readers.
+ */
+public class LogStorage implements KeyStorage {
+
+    private final Logger LOGGER = Logger.getLogger(getClass().getName());
+
+    private static final String FORMAT = "RAW";
+
+    private static final class Entry {
+        private final String algorithm;
+        private final byte[] sealed;
+
+        private Entry(String algorithm, byte[] sealed) {
+            this.algorithm = algorithm;
+            this.sealed = sealed;
+        }
+    }
+
+    private final String path;
+    private final String keyPassword;
+    private final int compactionThreshold;
+    private final KeyringMetrics metrics;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private KeyringCipher master;
+    private KeystoreJournal log;
+    private AliasIndex index;
+    private Lock readLock;
+    private Lock writeLock;
+    private ExecutorService compactor;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    private final Histogram storeTimer;
+    private final Histogram reloadTimer;
+    private final Histogram journalTimer;
+
+    /**
+     * @param path                prefix of the log segments
+     * @param keypwd              password of the sealing keys
+     * @param compactionThreshold minimum number of records triggering a compaction
+     */
+    public LogStorage(String path, String keypwd, int compactionThreshold, KeyringMetrics metrics) {
+        if (path == null) {
+            throw new KeyringConfigurationException("Keystore Path is required");
+        }
+        if (keypwd == null) {
+            throw new KeyringConfigurationException("Key Password is required");
+        }
+        if (compactionThreshold <= 0) {
+            throw new KeyringConfigurationException("The log compaction threshold must be positive");
+        }
+        this.path = path;
+        this.keyPassword = keypwd;
+        this.compactionThreshold = compactionThreshold;
+        this.metrics = metrics;
+
+        String help = "Duration of the keystore operations";
+        storeTimer = metrics.histogram("keyring_keystore_operation_seconds", help, "operation", "store");
+        reloadTimer = metrics.histogram("keyring_keystore_operation_seconds", help, "operation", "reload");
+        journalTimer = metrics.histogram("keyring_keystore_operation_seconds", help, "operation", "journal_append");
+    }
+
+    @Override
+    public void open(ReentrantReadWriteLock lock, AliasIndex index) {
+        this.readLock = lock.readLock();
+        this.writeLock = lock.writeLock();
+        this.index = index;
+
+        long start = System.nanoTime();
+        // the master key only lives in memory, a new one is derived on each start
+        master = new KeyringCipher(keyPassword, KeyringCipher.newSalt());
+        log = new KeystoreJournal(path, ".log.", keyPassword);
+        log.replay(this::apply);
+        reloadTimer.recordSince(start);
+        LOGGER.info(entries.size() + " keys loaded from " + log.getRecords() + " log records");
+
+        compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "keyring-log-compaction");
+            t.setDaemon(true);
+            return t;
+        });
+        metrics.gauge("keyring_journal_records", "Journal records written since the last compaction", log::getRecords);
+        maybeCompact();
+    }
+
+    private void apply(StorageRecord record) {
+        String alias = record.getAlias();
+        if (record.getOperation() == StorageRecord.Operation.PUT) {
+            entries.put(alias, new Entry(record.getAlgorithm(), master.seal(record.getKey(), alias)));
+            index.put(new KeyMetadata(alias, record.getAlgorithm(), FORMAT, record.getCreationDate()));
+        } else {
+            entries.remove(alias);
+            index.remove(alias);
+        }
+    }
+
+    @Override
+    public Key get(String alias) {
+        Entry entry = entries.get(alias);
+        if (entry == null) {
+            return null;
+        }
+        byte[] raw = master.unseal(entry.sealed, alias);
+        try {
+            return new SecretKeySpec(raw, entry.algorithm);
+        } finally {
+            // the spec holds its own copy
+            Arrays.fill(raw, (byte) 0);
+        }
+    }
+
+    @Override
+    public void write(List<StorageRecord> records) throws IOException {
+        long now = System.currentTimeMillis();
+        List<StorageRecord> dated = new ArrayList<>(records.size());
+        for (StorageRecord record : records) {
+            if (record.getOperation() == StorageRecord.Operation.PUT && record.getCreationDate() == 0) {
+                record = StorageRecord.put(record.getAlias(), record.getAlgorithm(), record.getKey(), now);
+            }
+            dated.add(record);
+        }
+        // the records are on the disk before the changes are visible
+        long start = System.nanoTime();
+        log.append(dated);
+        journalTimer.recordSince(start);
+        dated.forEach(this::apply);
+        maybeCompact();
+    }
+
+    /**
+     * Submits a compaction if the log reaches the threshold and if no compaction is running.
+     */
+    private void maybeCompact() {
+        if (log.getRecords() >= Math.max(compactionThreshold, 2 * entries.size()) && compacting.compareAndSet(false, true)) {
+            compactor.submit(() -> {
+                try {
+                    snapshot();
+                } catch (Exception e) {
+                    LOGGER.log(Level.SEVERE, "Unable to compact the keystore log", e);
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Compacts the log : the keys are written in a new segment then the previous segments are deleted. If the process
+     * stops before the end of the compaction, the new segment is replayed after the previous ones, which is harmless
+     * as the records are idempotent.
+     *
+     * Synchronized : a compaction requested by the provider waits for the one running in background, both rotate the
+     * log under the read lock.
+     */
+    @Override
+    public synchronized void snapshot() throws IOException {
+        long start = System.nanoTime();
+        long compactedSegment;
+        readLock.lock();
+        try {
+            compactedSegment = log.rotate();
+            List<StorageRecord> batch = new ArrayList<>();
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                String alias = entry.getKey();
+                KeyMetadata metadata = index.get(alias);
+                batch.add(StorageRecord.put(alias, entry.getValue().algorithm,
+                        master.unseal(entry.getValue().sealed, alias), metadata.getCreationDate()));
+                if (batch.size() == 1024) {
+                    log.append(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                log.append(batch);
+            }
+        } finally {
+            readLock.unlock();
+        }
+        log.deleteSegmentsUpTo(compactedSegment);
+        storeTimer.recordSince(start);
+        LOGGER.fine("Keystore log compacted up to segment " + compactedSegment);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (compactor != null) {
+            compactor.shutdown();
+        }
+        if (log != null) {
+            writeLock.lock();
+            try {
+                log.close();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,561 @@
+package io.github.leleueri.keyring.provider;
+
+import io.github.leleueri.keyring.bean.KeyMetadata;
+import io.github.leleueri.keyring.exception.KeyringConfigurationException;
+import io.github.leleueri.keyring.metrics.Histogram;
+import io.github.leleueri.keyring.metrics.KeyringMetrics;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Storage in a memory mapped file : a hash table (open addressing, linear probing) whose slots are fixed layout
+ * records. A lookup hashes the alias and reads one or a few slots of the mapping, the key is unsealed from a slice of
+ * the mapping : the file is never deserialized and the key material stays in the page cache, outside of the heap.
+ *
+ * File layout : a header (magic, version, salt of the sealing key, capacity) followed by the slots.
+ * Slot layout ({@value #SLOT_SIZE} bytes) :
+ * <pre>
+ * state (1) | alias length (2) | algorithm length (1) | sealed length (2) | crc32 (4) | creation date (8) | hash (4)
+ * | alias (up to {@value #MAX_ALIAS}) | algorithm (up to {@value #MAX_ALGORITHM}) | sealed key (up to {@value #MAX_SEALED})
+ * </pre>
+ * The key is sealed with AES/GCM under a key derived from the key password, the alias being the associated data.
+ *
+ * The writes are first appended to a journal ("&lt;path&gt;.wal.&lt;sequence&gt;", see {@link KeystoreJournal})
+ * then applied to the mapping, the keys are sealed and the table grown before the append so a journaled record
+ * is always applied. The mapping is forced to the disk in background once the journal contains enough records
+ * (checkpoint), the journal is then deleted. On startup, the journal is replayed on the mapping, a slot torn by a
+ * crash (invalid checksum) is dropped. The table is rebuilt with a double capacity once it is 3/4 full,
+ * deleted slots included.
+ *
+ * The alias index of the provider is filled at startup by a sequential read of the slot headers, without unsealing
+ * any key.
+ */
+public class MappedStorage implements KeyStorage {
+
+    private final Logger LOGGER = Logger.getLogger(getClass().getName());
+
+    private static final int MAGIC = 0x4B524D4D; // "KRMM"
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int CAPACITY_OFFSET = 4 + 1 + KeyringCipher.SALT_LENGTH;
+    private static final int MIN_CAPACITY = 1024;
+
+    static final int SLOT_SIZE = 320;
+    static final int MAX_ALIAS = 128;
+    static final int MAX_ALGORITHM = 32;
+    private static final int STATE = 0;
+    private static final int ALIAS_LENGTH = 1;
+    private static final int ALGORITHM_LENGTH = 3;
+    private static final int SEALED_LENGTH = 4;
+    private static final int CRC = 6;
+    private static final int CREATION_DATE = 10;
+    private static final int HASH = 18;
+    private static final int ALIAS = 22;
+    private static final int ALGORITHM = ALIAS + MAX_ALIAS;
+    private static final int SEALED = ALGORITHM + MAX_ALGORITHM;
+    static final int MAX_SEALED = SLOT_SIZE - SEALED;
+
+    private static final byte FREE = 0;
+    private static final byte USED = 1;
+    private static final byte DELETED = 2;
+
+    private static final String FORMAT = "RAW";
+
+    private final Path path;
+    private final String keyPassword;
+    private final int checkpointThreshold;
+    private final KeyringMetrics metrics;
+
+    private FileChannel channel;
+    private volatile MappedByteBuffer mapped;
+    private int capacity;
+    // slots USED or DELETED, the probe sequences end on a FREE slot
+    private int occupied;
+    private KeyringCipher cipher;
+    private KeystoreJournal journal;
+    private AliasIndex index;
+    private Lock readLock;
+    private Lock writeLock;
+    private ExecutorService checkpointer;
+    private final AtomicBoolean checkpointing = new AtomicBoolean();
+
+    private final Histogram storeTimer;
+    private final Histogram reloadTimer;
+    private final Histogram journalTimer;
+
+    /**
+     * @param path                path of the mapped file
+     * @param keypwd              password of the sealing key
+     * @param checkpointThreshold number of journal records triggering a checkpoint
+     */
+    public MappedStorage(String path, String keypwd, int checkpointThreshold, KeyringMetrics metrics) {
+        if (path == null) {
+            throw new KeyringConfigurationException("Keystore Path is required");
+        }
+        if (keypwd == null) {
+            throw new KeyringConfigurationException("Key Password is required");
+        }
+        if (checkpointThreshold <= 0) {
+            throw new KeyringConfigurationException("The checkpoint threshold must be positive");
+        }
+        this.path = Paths.get(path);
+        this.keyPassword = keypwd;
+        this.checkpointThreshold = checkpointThreshold;
+        this.metrics = metrics;
+
+        String help = "Duration of the keystore operations";
+        storeTimer = metrics.histogram("keyring_keystore_operation_seconds", help, "operation", "store");
+        reloadTimer = metrics.histogram("keyring_keystore_operation_seconds", help, "operation", "reload");
+        journalTimer = metrics.histogram("keyring_keystore_operation_seconds", help, "operation", "journal_append");
+    }
+
+    @Override
+    public void open(ReentrantReadWriteLock lock, AliasIndex index) {
+        this.readLock = lock.readLock();
+        this.writeLock = lock.writeLock();
+        this.index = index;
+
+        long start = System.nanoTime();
+        try {
+            if (!Files.exists(path)) {
+                create(path, MIN_CAPACITY, KeyringCipher.newSalt());
+            }
+            map();
+            scan();
+            journal = new KeystoreJournal(path.toString(), ".wal.", keyPassword);
+            journal.replay(record -> {
+                try {
+                    List<StorageRecord> replayed = Collections.singletonList(record);
+                    ensureCapacity(replayed);
+                    apply(record, encode(record));
+                } catch (IOException e) {
+                    throw new KeyringConfigurationException("Unable to replay the journal record of alias '" + record.getAlias() + "'", e);
+                }
+            });
+        } catch (IOException e) {
+            throw new KeyringConfigurationException("Unable to open the mapped keystore '" + path + "'", e);
+        }
+        reloadTimer.recordSince(start);
+
+        checkpointer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "keyring-mapped-checkpoint");
+            t.setDaemon(true);
+            return t;
+        });
+        metrics.gauge("keyring_journal_records", "Journal records written since the last compaction", journal::getRecords);
+        metrics.gauge("keyring_mapped_slots", "Slots of the mapped hash table", () -> capacity);
+        maybeCheckpoint();
+    }
+
+    /**
+     * Writes an empty table.
+     */
+    private static void create(Path file, int capacity, byte[] salt) throws IOException {
+        Path tmp = Paths.get(file + ".tmp");
+        try (FileChannel fc = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).put(VERSION).put(salt).putInt(capacity).rewind();
+            while (header.hasRemaining()) {
+                fc.write(header);
+            }
+            // the slots are zeros (FREE)
+            fc.write(ByteBuffer.allocate(1), HEADER_SIZE + (long) capacity * SLOT_SIZE - 1);
+            fc.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void map() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        if (buffer.getInt(0) != MAGIC || buffer.get(4) != VERSION) {
+            throw new KeyringConfigurationException("'" + path + "' is not a mapped keystore");
+        }
+        byte[] salt = new byte[KeyringCipher.SALT_LENGTH];
+        ByteBuffer header = buffer.duplicate();
+        header.position(5);
+        header.get(salt);
+        capacity = buffer.getInt(CAPACITY_OFFSET);
+        if (Integer.bitCount(capacity) != 1 || channel.size() < HEADER_SIZE + (long) capacity * SLOT_SIZE) {
+            throw new KeyringConfigurationException("'" + path + "' is truncated");
+        }
+        cipher = new KeyringCipher(keyPassword, salt);
+        mapped = buffer;
+    }
+
+    /**
+     * Fills the index with the metadata of the slots in use, drops the torn slots.
+     */
+    private void scan() {
+        index.clear();
+        occupied = 0;
+        int torn = 0;
+        byte[] slot = new byte[SLOT_SIZE];
+        for (int i = 0; i < capacity; i++) {
+            int offset = offset(i);
+            byte state = mapped.get(offset + STATE);
+            if (state == FREE) {
+                continue;
+            }
+            occupied++;
+            if (state != USED) {
+                continue;
+            }
+            ByteBuffer view = mapped.duplicate();
+            view.position(offset);
+            view.get(slot);
+            if (checksum(slot) != ByteBuffer.wrap(slot).getInt(CRC)) {
+                // torn by a crash, the journal contains the record if it was acknowledged
+                mapped.put(offset + STATE, DELETED);
+                torn++;
+                continue;
+            }
+            ByteBuffer b = ByteBuffer.wrap(slot);
+            String alias = new String(slot, ALIAS, b.getShort(ALIAS_LENGTH), StandardCharsets.UTF_8);
+            String algorithm = new String(slot, ALGORITHM, b.get(ALGORITHM_LENGTH), StandardCharsets.UTF_8);
+            index.put(new KeyMetadata(alias, algorithm, FORMAT, b.getLong(CREATION_DATE)));
+        }
+        if (torn > 0) {
+            LOGGER.warning(torn + " torn slots dropped from '" + path + "'");
+        }
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static int hash(byte[] alias) {
+        int h = 1;
+        for (byte b : alias) {
+            h = 31 * h + b;
+        }
+        // spreads the low bits used by the table
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return the slot of the alias if present, otherwise -(slot where it can be inserted) - 1
+     */
+    private int find(MappedByteBuffer table, byte[] alias, int hash) {
+        int mask = capacity - 1;
+        int insertion = -1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int offset = offset(i);
+            byte state = table.get(offset + STATE);
+            if (state == FREE) {
+                return -(insertion == -1 ? i : insertion) - 1;
+            }
+            if (state == DELETED) {
+                if (insertion == -1) {
+                    insertion = i;
+                }
+            } else if (table.getInt(offset + HASH) == hash && sameAlias(table, offset, alias)) {
+                return i;
+            }
+        }
+    }
+
+    private static boolean sameAlias(MappedByteBuffer table, int offset, byte[] alias) {
+        if (table.getShort(offset + ALIAS_LENGTH) != alias.length) {
+            return false;
+        }
+        for (int i = 0; i < alias.length; i++) {
+            if (table.get(offset + ALIAS + i) != alias[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Optional<String> validate(StorageRecord record) {
+        if (record.getAlias().getBytes(StandardCharsets.UTF_8).length > MAX_ALIAS) {
+            return Optional.of("Alias is longer than " + MAX_ALIAS + " bytes");
+        }
+        if (record.getAlgorithm().getBytes(StandardCharsets.UTF_8).length > MAX_ALGORITHM) {
+            return Optional.of("Algorithm is longer than " + MAX_ALGORITHM + " bytes");
+        }
+        if (KeyringCipher.sealedLength(record.getKey().length) > MAX_SEALED) {
+            return Optional.of("Key is too long");
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public Key get(String alias) {
+        MappedByteBuffer table = mapped;
+        byte[] aliasBytes = alias.getBytes(StandardCharsets.UTF_8);
+        if (aliasBytes.length > MAX_ALIAS) {
+            return null;
+        }
+        int slot = find(table, aliasBytes, hash(aliasBytes));
+        if (slot < 0) {
+            return null;
+        }
+        int offset = offset(slot);
+        byte[] algorithm = new byte[table.get(offset + ALGORITHM_LENGTH)];
+        for (int i = 0; i < algorithm.length; i++) {
+            algorithm[i] = table.get(offset + ALGORITHM + i);
+        }
+        // the sealed key is read from the mapping
+        ByteBuffer sealed = table.duplicate();
+        sealed.position(offset + SEALED).limit(offset + SEALED + table.getShort(offset + SEALED_LENGTH));
+        byte[] raw = cipher.unseal(sealed, alias);
+        try {
+            return new SecretKeySpec(raw, new String(algorithm, StandardCharsets.UTF_8));
+        } finally {
+            // the spec holds its own copy
+            Arrays.fill(raw, (byte) 0);
+        }
+    }
+
+    @Override
+    public void write(List<StorageRecord> records) throws IOException {
+        long now = System.currentTimeMillis();
+        List<StorageRecord> dated = new ArrayList<>(records.size());
+        for (StorageRecord record : records) {
+            if (record.getOperation() == StorageRecord.Operation.PUT && record.getCreationDate() == 0) {
+                record = StorageRecord.put(record.getAlias(), record.getAlgorithm(), record.getKey(), now);
+            }
+            dated.add(record);
+        }
+        // everything which may fail is done before the append : the table is rebuilt if it lacks room for the new
+        // aliases and the slots are encoded, the records are then applied to the mapping without any I/O
+        ensureCapacity(dated);
+        List<byte[]> slots = new ArrayList<>(dated.size());
+        for (StorageRecord record : dated) {
+            slots.add(encode(record));
+        }
+        // the records are on the disk before the changes are visible
+        long start = System.nanoTime();
+        journal.append(dated);
+        journalTimer.recordSince(start);
+        for (int i = 0; i < dated.size(); i++) {
+            apply(dated.get(i), slots.get(i));
+        }
+        maybeCheckpoint();
+    }
+
+    /**
+     * Rebuilds the table if the aliases added by the records would fill more than 3/4 of it. The rebuild keeps the
+     * content of the table, it doesn't change the state of the storage.
+     */
+    private void ensureCapacity(List<StorageRecord> records) throws IOException {
+        Set<String> added = new HashSet<>();
+        for (StorageRecord record : records) {
+            if (record.getOperation() == StorageRecord.Operation.PUT && index.get(record.getAlias()) == null) {
+                added.add(record.getAlias());
+            }
+        }
+        if ((occupied + added.size()) * 4L > capacity * 3L) {
+            rebuild(Math.max(MIN_CAPACITY, Integer.highestOneBit((index.size() + added.size()) * 4)));
+        }
+    }
+
+    /**
+     * @return the content of the slot of a PUT record (the state excepted), null for a DELETE record
+     */
+    private byte[] encode(StorageRecord record) {
+        if (record.getOperation() == StorageRecord.Operation.DELETE) {
+            return null;
+        }
+        byte[] alias = record.getAlias().getBytes(StandardCharsets.UTF_8);
+        byte[] algorithm = record.getAlgorithm().getBytes(StandardCharsets.UTF_8);
+        byte[] sealed = cipher.seal(record.getKey(), record.getAlias());
+        ByteBuffer content = ByteBuffer.allocate(SLOT_SIZE);
+        content.putShort(ALIAS_LENGTH, (short) alias.length)
+                .put(ALGORITHM_LENGTH, (byte) algorithm.length)
+                .putShort(SEALED_LENGTH, (short) sealed.length)
+                .putLong(CREATION_DATE, record.getCreationDate())
+                .putInt(HASH, hash(alias));
+        System.arraycopy(alias, 0, content.array(), ALIAS, alias.length);
+        System.arraycopy(algorithm, 0, content.array(), ALGORITHM, algorithm.length);
+        System.arraycopy(sealed, 0, content.array(), SEALED, sealed.length);
+        content.putInt(CRC, checksum(content.array()));
+        return content.array();
+    }
+
+    /**
+     * Applies a record to the mapping and to the index. The table has room for the record, see
+     * {@link #ensureCapacity(List)}.
+     */
+    private void apply(StorageRecord record, byte[] content) {
+        byte[] alias = record.getAlias().getBytes(StandardCharsets.UTF_8);
+        int slot = find(mapped, alias, hash(alias));
+        if (record.getOperation() == StorageRecord.Operation.DELETE) {
+            if (slot >= 0) {
+                mapped.put(offset(slot) + STATE, DELETED);
+                index.remove(record.getAlias());
+            }
+            return;
+        }
+
+        if (slot < 0) {
+            slot = -slot - 1;
+            if (mapped.get(offset(slot) + STATE) == FREE) {
+                occupied++;
+            }
+        }
+        // the state is written last : a slot is never USED with a partial content (except after a crash)
+        int offset = offset(slot);
+        ByteBuffer target = mapped.duplicate();
+        target.position(offset + 1);
+        target.put(content, 1, SLOT_SIZE - 1);
+        mapped.put(offset + STATE, USED);
+        index.put(new KeyMetadata(record.getAlias(), record.getAlgorithm(), FORMAT, record.getCreationDate()));
+    }
+
+    /**
+     * @return the checksum of the slot, state and checksum excluded
+     */
+    private static int checksum(byte[] slot) {
+        CRC32 crc = new CRC32();
+        crc.update(slot, ALIAS_LENGTH, CRC - ALIAS_LENGTH);
+        crc.update(slot, CREATION_DATE, SLOT_SIZE - CREATION_DATE);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Copies the slots in use into a new table of the given capacity, which replaces the current file.
+     * Must be called with the write lock held.
+     */
+    private void rebuild(int newCapacity) throws IOException {
+        long start = System.nanoTime();
+        byte[] salt = new byte[KeyringCipher.SALT_LENGTH];
+        ByteBuffer header = mapped.duplicate();
+        header.position(5);
+        header.get(salt);
+
+        Path tmp = Paths.get(path + ".rebuild");
+        create(tmp, newCapacity, salt);
+        int count = 0;
+        try (FileChannel fc = FileChannel.open(tmp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer table = fc.map(FileChannel.MapMode.READ_WRITE, 0, fc.size());
+            byte[] slot = new byte[SLOT_SIZE];
+            int mask = newCapacity - 1;
+            for (int i = 0; i < capacity; i++) {
+                int offset = offset(i);
+                if (mapped.get(offset + STATE) != USED) {
+                    continue;
+                }
+                ByteBuffer view = mapped.duplicate();
+                view.position(offset);
+                view.get(slot);
+                // the sealed keys are moved as is, the sealing key and the aliases don't change
+                int target = mapped.getInt(offset + HASH) & mask;
+                while (table.get(offset(target) + STATE) != FREE) {
+                    target = (target + 1) & mask;
+                }
+                ByteBuffer out = table.duplicate();
+                out.position(offset(target));
+                out.put(slot);
+                count++;
+            }
+            table.force();
+        }
+        channel.close();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        map();
+        occupied = count;
+        storeTimer.recordSince(start);
+        LOGGER.info("Mapped keystore rebuilt with " + newCapacity + " slots for " + count + " keys");
+    }
+
+    /**
+     * Submits a checkpoint if the journal reaches the threshold and if no checkpoint is running.
+     */
+    private void maybeCheckpoint() {
+        if (journal.getRecords() >= checkpointThreshold && checkpointing.compareAndSet(false, true)) {
+            checkpointer.submit(() -> {
+                try {
+                    checkpoint();
+                } catch (Exception e) {
+                    LOGGER.log(Level.SEVERE, "Unable to checkpoint the mapped keystore", e);
+                } finally {
+                    checkpointing.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Forces the mapping to the disk then deletes the journal it contains. Under the read lock : the writers are
+     * blocked, not the readers.
+     */
+    private void checkpoint() throws IOException {
+        long start = System.nanoTime();
+        readLock.lock();
+        try {
+            mapped.force();
+            journal.deleteSegmentsUpTo(journal.rotate());
+        } finally {
+            readLock.unlock();
+        }
+        storeTimer.recordSince(start);
+    }
+
+    /**
+     * Rebuilds the table without the deleted slots and checkpoints it.
+     */
+    @Override
+    public void snapshot() throws IOException {
+        writeLock.lock();
+        try {
+            rebuild(Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, index.size()) * 4)));
+            journal.deleteSegmentsUpTo(journal.rotate());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (checkpointer != null) {
+            checkpointer.shutdown();
+        }
+        if (writeLock == null) {
+            // never opened
+            return;
+        }
+        writeLock.lock();
+        try {
+            if (mapped != null) {
+                mapped.force();
+            }
+            if (journal != null) {
+                journal.close();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+}
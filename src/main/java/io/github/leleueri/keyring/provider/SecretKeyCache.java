@@ -0,0 +1,309 @@
+package io.github.leleueri.keyring.provider;
+
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import io.github.leleueri.keyring.bean.CacheStats;
+import io.github.leleueri.keyring.bean.SecretKey;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of the decoded {@link SecretKey} views, placed in front of the keystore
+ * to avoid the password based unsealing of the JCEKS entries on each read.
+ *
+ * Entries are evicted in approximate least-recently-used order once the maximum size is reached and,
+ * if a TTL is configured, are discarded on access once they are older than this TTL.
+ * A maximum size of 0 disables the cache.
+ *
+ * The reads don't take any lock : the entries are kept in a concurrent map and only record the time of their last
+ * access. The puts beyond the maximum size evict, under a lock of their own, the least recently used of a sample of
+ * {@link #EVICTION_SAMPLE} entries, the sample being taken where the previous one stopped.
+ *
+ * An entry may also hold the {@link EncodedKey} of its key, it is discarded with the entry.
+ *
+ * With a {@link KeyArena}, the keys are kept off-heap : an entry only holds the JSON form of its key in a block of
+ * the arena, the block is wiped once the entry is evicted, expired or invalidated and the responses still writing it
+ * are written. A cached key is then read by decoding its block, while the encoded keys returned are written from the
+ * block itself.
+ */
+public class SecretKeyCache {
+
+    static final int EVICTION_SAMPLE = 8;
+
+    private final int maxSize;
+    private final long ttlMillis;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private final KeyArena arena;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Object evictionLock = new Object();
+    private Iterator<Map.Entry<String, Entry>> evictionCursor;
+
+    private static final class Entry {
+        private final SecretKey key;
+        private final long loadedAt;
+        private volatile long accessedAt;
+        private volatile EncodedKey encoded;
+        private final KeyArena.Block block;
+        private final String etag;
+
+        private Entry(SecretKey key, long loadedAt) {
+            this.key = key;
+            this.loadedAt = loadedAt;
+            this.accessedAt = System.nanoTime();
+            this.block = null;
+            this.etag = null;
+        }
+
+        private Entry(KeyArena.Block block, String etag, long loadedAt) {
+            this.key = null;
+            this.loadedAt = loadedAt;
+            this.accessedAt = System.nanoTime();
+            this.block = block;
+            this.etag = etag;
+        }
+    }
+
+    public SecretKeyCache(int maxSize, long ttlMillis) {
+        this(maxSize, ttlMillis, null);
+    }
+
+    /**
+     * @param arena arena of the off-heap entries, null to keep the keys on heap
+     */
+    public SecretKeyCache(int maxSize, long ttlMillis, KeyArena arena) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException("Cache TTL must be positive");
+        }
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.arena = arena;
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    public boolean isOffHeap() {
+        return arena != null;
+    }
+
+    /**
+     * @return the arena of the off-heap entries, null if the keys are kept on heap
+     */
+    public KeyArena getArena() {
+        return arena;
+    }
+
+    /**
+     * @return the cached key or null if the alias is unknown or its entry has expired
+     */
+    public SecretKey get(String alias) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Entry entry = entry(alias);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.block == null) {
+            hits.increment();
+            return entry.key;
+        }
+        // the block is retained while it is decoded, an eviction meanwhile can't wipe it
+        if (!arena.retain(entry.block)) {
+            misses.increment();
+            return null;
+        }
+        try {
+            hits.increment();
+            return decode(entry.block);
+        } finally {
+            arena.releaseRetained(entry.block);
+        }
+    }
+
+    private static SecretKey decode(KeyArena.Block block) {
+        try {
+            return Json.mapper.readValue(new ByteBufferBackedInputStream(block.content()), SecretKey.class);
+        } catch (IOException e) {
+            throw new DecodeException("Failed to decode the cached key: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Counted as a hit when the encoded form is returned, not counted otherwise : the key is then read with
+     * {@link #get(String)}. The encoded key returned must be released ({@link EncodedKey#release()}) once written.
+     *
+     * @return the encoded form of the cached key, null if the key is not cached or has not been encoded yet
+     */
+    public EncodedKey getEncoded(String alias) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Entry entry = entry(alias);
+        if (entry == null) {
+            return null;
+        }
+        // null if the block has been wiped by an eviction meanwhile
+        EncodedKey encoded = entry.block == null ? entry.encoded : EncodedKey.retain(arena, entry.block, entry.etag);
+        if (encoded != null) {
+            hits.increment();
+        }
+        return encoded;
+    }
+
+    /**
+     * Attaches the encoded form of a key to its entry, if the entry still holds this key instance : a key read
+     * before a write of its alias is never attached to the entry loaded after this write. The off-heap entries are
+     * encoded when they are put, nothing is attached to them.
+     */
+    public void putEncoded(String alias, SecretKey key, EncodedKey encoded) {
+        Entry entry = entries.get(alias);
+        if (entry != null && entry.key == key) {
+            entry.encoded = encoded;
+        }
+    }
+
+    /**
+     * @return the entry of the alias, null if it is absent or expired (it is then removed)
+     */
+    private Entry entry(String alias) {
+        Entry entry = entries.get(alias);
+        if (entry == null) {
+            return null;
+        }
+        if (ttlMillis > 0 && System.currentTimeMillis() - entry.loadedAt > ttlMillis) {
+            evict(alias, entry);
+            return null;
+        }
+        entry.accessedAt = System.nanoTime();
+        return entry;
+    }
+
+    /**
+     * @param creationDate creation date of the key in the keystore, for the entity tag of the off-heap entries
+     */
+    public void put(String alias, SecretKey key, long creationDate) {
+        if (!isEnabled()) {
+            return;
+        }
+        Entry entry;
+        if (arena == null) {
+            entry = new Entry(key, System.currentTimeMillis());
+        } else {
+            byte[] json = EncodedKey.toJson(key);
+            KeyArena.Block block = arena.allocate(json);
+            String etag = EncodedKey.etag(json, creationDate);
+            Arrays.fill(json, (byte) 0);
+            if (block == null) {
+                // too large for the arena, not cached
+                invalidate(alias);
+                return;
+            }
+            entry = new Entry(block, etag, System.currentTimeMillis());
+        }
+        release(entries.put(alias, entry));
+        if (entries.size() > maxSize) {
+            evictEldest();
+        }
+    }
+
+    /**
+     * Evicts the least recently used entry of successive samples until the cache is back to its maximum size.
+     */
+    private void evictEldest() {
+        synchronized (evictionLock) {
+            while (entries.size() > maxSize) {
+                Map.Entry<String, Entry> eldest = null;
+                for (int i = 0; i < EVICTION_SAMPLE; i++) {
+                    if (evictionCursor == null || !evictionCursor.hasNext()) {
+                        // weakly consistent iterator : goes on while the map is modified
+                        evictionCursor = entries.entrySet().iterator();
+                        if (!evictionCursor.hasNext()) {
+                            break;
+                        }
+                    }
+                    Map.Entry<String, Entry> candidate = evictionCursor.next();
+                    if (eldest == null || candidate.getValue().accessedAt - eldest.getValue().accessedAt < 0) {
+                        eldest = candidate;
+                    }
+                }
+                if (eldest == null) {
+                    return;
+                }
+                evict(eldest.getKey(), eldest.getValue());
+            }
+        }
+    }
+
+    private void evict(String alias, Entry entry) {
+        if (entries.remove(alias, entry)) {
+            evictions.increment();
+            release(entry);
+        }
+    }
+
+    public void invalidate(String alias) {
+        release(entries.remove(alias));
+    }
+
+    public void invalidateAll() {
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (entries.remove(entry.getKey(), entry.getValue())) {
+                release(entry.getValue());
+            }
+        }
+    }
+
+    private void release(Entry entry) {
+        if (entry != null && entry.block != null) {
+            arena.release(entry.block);
+        }
+    }
+
+    /**
+     * @return true if a key can be put without evicting another one
+     */
+    public boolean hasRoom() {
+        return entries.size() < maxSize;
+    }
+
+    /**
+     * @return the aliases of the cached keys, the most recently used first
+     */
+    public List<String> aliases() {
+        List<Map.Entry<String, Long>> accesses = new ArrayList<>();
+        entries.forEach((alias, entry) -> accesses.add(new AbstractMap.SimpleImmutableEntry<>(alias, entry.accessedAt)));
+        accesses.sort((a, b) -> Long.signum(b.getValue() - a.getValue()));
+        List<String> aliases = new ArrayList<>(accesses.size());
+        accesses.forEach(access -> aliases.add(access.getKey()));
+        return aliases;
+    }
+
+    public CacheStats getStats() {
+        CacheStats stats = new CacheStats();
+        stats.setMaxSize(maxSize);
+        stats.setSize(entries.size());
+        stats.setHits(hits.sum());
+        stats.setMisses(misses.sum());
+        stats.setEvictions(evictions.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,56 @@
+package io.github.leleueri.keyring.provider;
+
+/**
+ * A change written to a {@link KeyStorage} : a key stored (PUT) or removed (DELETE).
+ */
+public final class StorageRecord {
+
+    public enum Operation {
+        PUT, DELETE
+    }
+
+    private final Operation operation;
+    private final String alias;
+    private final String algorithm;
+    private final byte[] key;
+    private final long creationDate;
+
+    private StorageRecord(Operation operation, String alias, String algorithm, byte[] key, long creationDate) {
+        this.operation = operation;
+        this.alias = alias;
+        this.algorithm = algorithm;
+        this.key = key;
+        this.creationDate = creationDate;
+    }
+
+    /**
+     * @param creationDate in milliseconds, 0 if unknown (the storage sets the date of the write)
+     */
+    public static StorageRecord put(String alias, String algorithm, byte[] key, long creationDate) {
+        return new StorageRecord(Operation.PUT, alias, algorithm, key, creationDate);
+    }
+
+    public static StorageRecord delete(String alias) {
+        return new StorageRecord(Operation.DELETE, alias, null, null, 0);
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public String getAlias() {
+        return alias;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public byte[] getKey() {
+        return key;
+    }
+
+    public long getCreationDate() {
+        return creationDate;
+    }
+}
@@ -0,0 +1,53 @@
+package io.github.leleueri.keyring.replication;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Replication over the Vert.x event bus : the messages are published to all the nodes on "keyring.replication" and
+ * sent to a node on "keyring.replication.&lt;node&gt;".
+ *
+ * The nodes see each other once Vert.x is started in cluster mode (-cluster option) with a cluster manager on the
+ * classpath (vertx-hazelcast for instance). The keys are sealed by the {@link Replicator}, the aliases and the
+ * versions are sent in clear.
+ */
+public class EventBusTransport implements ReplicationTransport {
+
+    public static final String ADDRESS = "keyring.replication";
+
+    private Vertx vertx;
+    private String node;
+    private MessageConsumer<JsonObject> broadcast;
+    private MessageConsumer<JsonObject> direct;
+
+    @Override
+    public void start(Vertx vertx, String node, JsonObject config, Handler<JsonObject> handler) {
+        this.vertx = vertx;
+        this.node = node;
+        broadcast = vertx.eventBus().consumer(ADDRESS, message -> {
+            // published messages are also received by their sender
+            if (!node.equals(message.body().getString(NODE))) {
+                handler.handle(message.body());
+            }
+        });
+        direct = vertx.eventBus().consumer(ADDRESS + "." + node, message -> handler.handle(message.body()));
+    }
+
+    @Override
+    public void publish(JsonObject message) {
+        vertx.eventBus().publish(ADDRESS, message.put(NODE, node));
+    }
+
+    @Override
+    public void send(String node, JsonObject message) {
+        vertx.eventBus().send(ADDRESS + "." + node, message.put(NODE, this.node));
+    }
+
+    @Override
+    public void close() {
+        broadcast.unregister();
+        direct.unregister();
+    }
+}
@@ -0,0 +1,190 @@
+package io.github.leleueri.keyring.replication;
+
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Versions of the entries of the local replica, deleted entries (tombstones) included, with the clock of the node.
+ *
+ * The clock is a hybrid logical clock : the versions given by {@link #next(boolean)} follow the wall clock but are
+ * always greater than the previous versions of the node and than the versions received from the other nodes, so a
+ * write always wins over the writes it has seen, even with skewed clocks.
+ *
+ * The digest summarizes the versions, it is maintained incrementally (XOR of a hash of each entry) so two replicas
+ * can be compared without exchanging their versions. The state is confined to the KeystoreVerticle context, it is
+ * not thread safe.
+ */
+public class ReplicaState {
+
+    private final String node;
+    private long clock;
+    private final Map<String, Version> versions = new HashMap<>();
+    private long digest;
+
+    public ReplicaState(String node) {
+        this.node = node;
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    /**
+     * @return the version of a new write of this node
+     */
+    public Version next(boolean deleted) {
+        clock = Math.max(System.currentTimeMillis(), clock + 1);
+        return new Version(clock, node, deleted);
+    }
+
+    /**
+     * Advances the clock past a version received from another node.
+     */
+    public void observe(Version version) {
+        clock = Math.max(clock, version.getTimestamp());
+    }
+
+    public Version get(String alias) {
+        return versions.get(alias);
+    }
+
+    public void put(String alias, Version version) {
+        Version previous = versions.put(alias, version);
+        if (previous != null) {
+            digest ^= hash(alias, previous);
+        }
+        digest ^= hash(alias, version);
+    }
+
+    public void remove(String alias) {
+        Version previous = versions.remove(alias);
+        if (previous != null) {
+            digest ^= hash(alias, previous);
+        }
+    }
+
+    public Map<String, Version> getVersions() {
+        return Collections.unmodifiableMap(versions);
+    }
+
+    public int size() {
+        return versions.size();
+    }
+
+    public long getDigest() {
+        return digest;
+    }
+
+    /**
+     * Forgets the tombstones older than the given time : a write of the alias older than the deletion, received
+     * after this purge, would be applied again.
+     *
+     * @return the number of tombstones removed
+     */
+    public int purgeTombstones(long before) {
+        List<String> purged = new ArrayList<>();
+        for (Map.Entry<String, Version> entry : versions.entrySet()) {
+            if (entry.getValue().isDeleted() && entry.getValue().getTimestamp() < before) {
+                purged.add(entry.getKey());
+            }
+        }
+        purged.forEach(this::remove);
+        return purged.size();
+    }
+
+    /**
+     * Same hash on every node (String.hashCode is specified), mixed so the XOR of many entries stays well spread.
+     */
+    private static long hash(String alias, Version version) {
+        long h = alias.hashCode() * 0x9E3779B97F4A7C15L;
+        h ^= version.getTimestamp() * 0xC2B2AE3D27D4EB4FL;
+        h ^= version.getNode().hashCode() * 0x165667B19E3779F9L;
+        h ^= version.isDeleted() ? 0x27D4EB2F165667C5L : 0;
+        // final mix of MurmurHash3
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Persisted form of the state
+     */
+    public static class Snapshot {
+        private String node;
+        private long clock;
+        private Map<String, Version> versions = new HashMap<>();
+
+        public String getNode() {
+            return node;
+        }
+
+        public void setNode(String node) {
+            this.node = node;
+        }
+
+        public long getClock() {
+            return clock;
+        }
+
+        public void setClock(long clock) {
+            this.clock = clock;
+        }
+
+        public Map<String, Version> getVersions() {
+            return versions;
+        }
+
+        public void setVersions(Map<String, Version> versions) {
+            this.versions = versions;
+        }
+    }
+
+    /**
+     * Writes the state in a temporary file moved over the previous one.
+     */
+    public void save(Path file) throws IOException {
+        Snapshot snapshot = new Snapshot();
+        snapshot.setNode(node);
+        snapshot.setClock(clock);
+        snapshot.setVersions(versions);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, Json.encode(snapshot).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param node the identifier of the node, if null the identifier saved in the file is kept (a new one is
+     *             generated if there is no file)
+     * @return the state saved in the file, an empty state if the file doesn't exist or can't be read
+     */
+    public static ReplicaState load(Path file, String node) throws IOException {
+        Snapshot snapshot = null;
+        if (Files.exists(file)) {
+            try {
+                snapshot = Json.decodeValue(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), Snapshot.class);
+            } catch (DecodeException e) {
+                Logger.getLogger(ReplicaState.class.getName()).warning("Ignore the unreadable replica state : " + e.getMessage());
+            }
+        }
+        if (node == null) {
+            node = snapshot != null && snapshot.getNode() != null ? snapshot.getNode() : UUID.randomUUID().toString();
+        }
+        ReplicaState state = new ReplicaState(node);
+        if (snapshot != null) {
+            state.clock = snapshot.getClock();
+            snapshot.getVersions().forEach(state::put);
+        }
+        return state;
+    }
+}
@@ -0,0 +1,36 @@
+package io.github.leleueri.keyring.replication;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Channel between the {@link Replicator} of the nodes. The messages are JSON objects carrying the identifier of
+ * their sender in the "node" field.
+ *
+ * An implementation must have a public no-arg constructor, it is chosen by the "cluster.transport" configuration.
+ * The handler must be called on the context that started the transport.
+ */
+public interface ReplicationTransport {
+
+    String NODE = "node";
+
+    /**
+     * @param node    identifier of this node
+     * @param config  configuration of the KeystoreVerticle
+     * @param handler receives the messages of the other nodes
+     */
+    void start(Vertx vertx, String node, JsonObject config, Handler<JsonObject> handler);
+
+    /**
+     * Sends the message to all the other nodes reachable, without acknowledgment.
+     */
+    void publish(JsonObject message);
+
+    /**
+     * Sends the message to the given node, dropped if the node is not reachable.
+     */
+    void send(String node, JsonObject message);
+
+    void close();
+}
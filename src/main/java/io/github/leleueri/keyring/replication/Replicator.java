@@ -0,0 +1,355 @@
+package io.github.leleueri.keyring.replication;
+
+import io.github.leleueri.keyring.bean.KeyMetadata;
+import io.github.leleueri.keyring.bean.SecretKey;
+import io.github.leleueri.keyring.exception.KeyringApplicativeException;
+import io.github.leleueri.keyring.exception.KeyringConfigurationException;
+import io.github.leleueri.keyring.metrics.Counter;
+import io.github.leleueri.keyring.metrics.KeyringMetrics;
+import io.github.leleueri.keyring.provider.KeyringCipher;
+import io.github.leleueri.keyring.provider.KeystoreMutation;
+import io.github.leleueri.keyring.provider.KeystoreProvider;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static io.github.leleueri.keyring.ConfigConstants.*;
+
+/**
+ * Replicates the mutations of the local keystore to the other nodes and applies theirs, each node keeps a full
+ * replica and serves the reads locally.
+ *
+ * Each entry has a {@link Version}, the most recent write of an alias wins (last writer wins), a deletion is kept
+ * as a tombstone during "cluster.tombstone.retention" milliseconds. The writes are published to the other nodes
+ * once committed. The messages lost (partition, node stopped) are repaired by the anti-entropy : every
+ * "cluster.sync.interval" milliseconds each node publishes the digest of its versions, a node with a different
+ * digest replies with all its versions and receives the entries it is missing. A partition longer than the tombstone
+ * retention may bring deleted keys back.
+ *
+ * The key material of the entries is sealed with a {@link KeyringCipher} derived from the key password
+ * ("app.keystore.secret-key.password", the same on all the nodes), the alias being the associated data. The salt of
+ * the sender is part of each message of entries.
+ *
+ * The versions are saved next to the keystore ("&lt;keystore path&gt;.replica"). The replicator must be used from
+ * the context of the KeystoreVerticle, the only one committing mutations.
+ */
+public class Replicator {
+
+    private final Logger LOGGER = Logger.getLogger(getClass().getName());
+
+    static final String TYPE = "type";
+    static final String TYPE_ENTRIES = "entries";
+    static final String TYPE_DIGEST = "digest";
+    static final String TYPE_VERSIONS = "versions";
+    static final String SALT = "salt";
+
+    /**
+     * Maximum number of ciphers of the other nodes kept, by salt
+     */
+    private static final int MAX_CIPHERS = 16;
+
+    /**
+     * Maximum number of entries sent in one message by the anti-entropy
+     */
+    static final int CHUNK_SIZE = 100;
+
+    private final Vertx vertx;
+    private final KeystoreProvider provider;
+    private final JsonObject config;
+    private final Path stateFile;
+
+    private ReplicaState state;
+    private ReplicationTransport transport;
+    private String password;
+    private String salt;
+    private KeyringCipher cipher;
+    private final Map<String, KeyringCipher> ciphers = new LinkedHashMap<String, KeyringCipher>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, KeyringCipher> eldest) {
+            return size() > MAX_CIPHERS;
+        }
+    };
+    private final Consumer<List<KeystoreMutation>> commitListener = this::committed;
+    private boolean applying;
+    private long syncTimer = -1;
+    private long tombstoneRetention;
+
+    private final Counter applied;
+    private final Counter sent;
+
+    public Replicator(Vertx vertx, KeystoreProvider provider, KeyringMetrics metrics, JsonObject config, Path stateFile) {
+        this.vertx = vertx;
+        this.provider = provider;
+        this.config = config;
+        this.stateFile = stateFile;
+        this.applied = metrics.counter("keyring_replication_entries_applied_total", "Entries received from other nodes and applied");
+        this.sent = metrics.counter("keyring_replication_entries_sent_total", "Entries sent to other nodes");
+        metrics.gauge("keyring_replication_entries", "Entries of the replica, tombstones included", () -> state == null ? 0 : state.size());
+    }
+
+    public void start() {
+        tombstoneRetention = config.getLong(CLUSTER_TOMBSTONE_RETENTION, CLUSTER_DEFAULT_TOMBSTONE_RETENTION);
+        long syncInterval = config.getLong(CLUSTER_SYNC_INTERVAL, CLUSTER_DEFAULT_SYNC_INTERVAL);
+        if (tombstoneRetention <= 0 || syncInterval <= 0) {
+            throw new KeyringConfigurationException("Invalid cluster configuration, the sync interval and the tombstone retention must be greater than 0");
+        }
+        password = config.getString(APP_KEYSTORE_SECRET_KEY_PWD);
+        if (password == null) {
+            throw new KeyringConfigurationException("The key password is required by the replication, it seals the replicated keys");
+        }
+        byte[] saltBytes = KeyringCipher.newSalt();
+        salt = Base64.getEncoder().encodeToString(saltBytes);
+        cipher = new KeyringCipher(password, saltBytes);
+        ciphers.put(salt, cipher);
+        String transportClass = config.getString(CLUSTER_TRANSPORT, CLUSTER_DEFAULT_TRANSPORT);
+        try {
+            transport = (ReplicationTransport) Class.forName(transportClass).newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new KeyringConfigurationException("Replication transport '" + transportClass + "' can't be instantiated : " + e.getMessage());
+        }
+
+        try {
+            state = ReplicaState.load(stateFile, config.getString(CLUSTER_NODE_ID));
+        } catch (IOException e) {
+            throw new KeyringConfigurationException("Unable to read the replica state '" + stateFile + "' : " + e.getMessage());
+        }
+        // the keystore is the reference : versions of the keys written before the replication was enabled
+        // and versions of keys no longer present (replica state older than the keystore) are fixed
+        Set<String> aliases = provider.listAlias();
+        for (String alias : aliases) {
+            if (state.get(alias) == null || state.get(alias).isDeleted()) {
+                KeyMetadata metadata = provider.getKeyMetadata(alias);
+                Version version = new Version(metadata.getCreationDate(), state.getNode(), false);
+                state.observe(version);
+                state.put(alias, version);
+            }
+        }
+        for (String alias : new ArrayList<>(state.getVersions().keySet())) {
+            if (!state.get(alias).isDeleted() && !aliases.contains(alias)) {
+                state.remove(alias);
+            }
+        }
+        save();
+        LOGGER.info("Replication of node " + state.getNode() + " started with " + state.size() + " entries");
+
+        provider.addCommitListener(commitListener);
+        transport.start(vertx, state.getNode(), config, this::handle);
+        syncTimer = vertx.setPeriodic(syncInterval, id -> sync());
+        sync();
+    }
+
+    public String getNode() {
+        return state.getNode();
+    }
+
+    /**
+     * Versions the local mutations and publishes them.
+     */
+    private void committed(List<KeystoreMutation> mutations) {
+        if (applying) {
+            return;
+        }
+        JsonArray entries = new JsonArray();
+        for (KeystoreMutation mutation : mutations) {
+            boolean deleted = mutation.getStatus() == KeystoreMutation.Status.DELETED;
+            Version version = state.next(deleted);
+            state.put(mutation.getAlias(), version);
+            entries.add(toEntry(mutation.getAlias(), version, deleted ? null : mutation.getKey()));
+        }
+        save();
+        sent.add(entries.size());
+        transport.publish(entriesMessage(entries));
+    }
+
+    private void handle(JsonObject message) {
+        String from = message.getString(ReplicationTransport.NODE);
+        try {
+            switch (message.getString(TYPE, "")) {
+                case TYPE_ENTRIES:
+                    apply(message.getJsonArray(TYPE_ENTRIES), cipher(message.getString(SALT)));
+                    break;
+                case TYPE_DIGEST:
+                    if (message.getLong(TYPE_DIGEST) != state.getDigest() || message.getInteger("size") != state.size()) {
+                        LOGGER.fine(() -> "Replica of " + from + " differs, send the versions");
+                        transport.send(from, new JsonObject().put(TYPE, TYPE_VERSIONS).put(TYPE_VERSIONS, versions()));
+                    }
+                    break;
+                case TYPE_VERSIONS:
+                    repair(from, message.getJsonObject(TYPE_VERSIONS));
+                    break;
+                default:
+                    LOGGER.warning("Ignore the replication message of unknown type " + message.getString(TYPE));
+            }
+        } catch (ClassCastException | NullPointerException | IllegalArgumentException e) {
+            LOGGER.warning("Ignore the malformed replication message from " + from + " : " + e);
+        } catch (KeyringApplicativeException e) {
+            // not applied, the key password of the sender differs
+            LOGGER.log(Level.WARNING, "Ignore the replication message from " + from + ", its keys can't be unsealed", e);
+        }
+    }
+
+    /**
+     * @return the cipher of the sender of a message, derived from its salt
+     */
+    private KeyringCipher cipher(String salt) {
+        KeyringCipher senderCipher = ciphers.get(salt);
+        if (senderCipher == null) {
+            senderCipher = new KeyringCipher(password, Base64.getDecoder().decode(salt));
+            ciphers.put(salt, senderCipher);
+        }
+        return senderCipher;
+    }
+
+    /**
+     * Applies the entries more recent than the local versions, in one commit.
+     *
+     * @param senderCipher cipher of the sender, unseals the keys of the entries
+     */
+    private void apply(JsonArray entries, KeyringCipher senderCipher) {
+        long purged = System.currentTimeMillis() - tombstoneRetention;
+        List<KeystoreMutation> mutations = new ArrayList<>();
+        Map<String, Version> versions = new HashMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            JsonObject entry = entries.getJsonObject(i);
+            String alias = entry.getString("alias");
+            Version version = new Version(entry.getLong("timestamp"), entry.getString("node"), entry.getBoolean("deleted", false));
+            state.observe(version);
+            Version current = versions.containsKey(alias) ? versions.get(alias) : state.get(alias);
+            if (!version.isNewerThan(current) || version.isDeleted() && version.getTimestamp() < purged) {
+                continue;
+            }
+            versions.put(alias, version);
+            if (version.isDeleted()) {
+                mutations.add(KeystoreMutation.delete(alias));
+            } else {
+                SecretKey key = new SecretKey();
+                key.setAlias(alias);
+                key.setAlgorithm(entry.getString("algorithm"));
+                key.setFormat(entry.getString("format"));
+                byte[] raw = senderCipher.unseal(entry.getBinary("sealedKey"), alias);
+                key.setB64Key(Base64.getEncoder().encodeToString(raw));
+                Arrays.fill(raw, (byte) 0);
+                mutations.add(KeystoreMutation.put(key));
+            }
+        }
+        if (mutations.isEmpty()) {
+            return;
+        }
+
+        applying = true;
+        try {
+            provider.commit(mutations);
+        } catch (KeyringApplicativeException e) {
+            // not recorded, the entries will be received again by the next anti-entropy
+            LOGGER.log(Level.WARNING, "Unable to apply the replicated entries", e);
+            return;
+        } finally {
+            applying = false;
+        }
+        for (KeystoreMutation mutation : mutations) {
+            if (mutation.getStatus() != KeystoreMutation.Status.INVALID) {
+                state.put(mutation.getAlias(), versions.get(mutation.getAlias()));
+                applied.increment();
+            }
+        }
+        save();
+        LOGGER.fine(() -> "Applied " + mutations.size() + " replicated entries");
+    }
+
+    /**
+     * Sends to a node the entries more recent than its versions.
+     */
+    private void repair(String to, JsonObject remote) {
+        JsonArray entries = new JsonArray();
+        for (Map.Entry<String, Version> local : state.getVersions().entrySet()) {
+            String alias = local.getKey();
+            Version version = local.getValue();
+            JsonObject other = remote.getJsonObject(alias);
+            Version otherVersion = other == null ? null :
+                    new Version(other.getLong("timestamp"), other.getString("node"), other.getBoolean("deleted", false));
+            if (!version.isNewerThan(otherVersion)) {
+                continue;
+            }
+            SecretKey key = null;
+            if (!version.isDeleted()) {
+                // read from the storage, the keys of the other nodes are not worth caching
+                key = provider.readSecretKey(alias);
+                if (key == null) {
+                    continue;
+                }
+            }
+            entries.add(toEntry(alias, version, key));
+            if (entries.size() == CHUNK_SIZE) {
+                sendEntries(to, entries);
+                entries = new JsonArray();
+            }
+        }
+        if (!entries.isEmpty()) {
+            sendEntries(to, entries);
+        }
+    }
+
+    private void sendEntries(String to, JsonArray entries) {
+        sent.add(entries.size());
+        transport.send(to, entriesMessage(entries));
+    }
+
+    private JsonObject entriesMessage(JsonArray entries) {
+        return new JsonObject().put(TYPE, TYPE_ENTRIES).put(SALT, salt).put(TYPE_ENTRIES, entries);
+    }
+
+    private void sync() {
+        if (state.purgeTombstones(System.currentTimeMillis() - tombstoneRetention) > 0) {
+            save();
+        }
+        transport.publish(new JsonObject().put(TYPE, TYPE_DIGEST).put(TYPE_DIGEST, state.getDigest()).put("size", state.size()));
+    }
+
+    private JsonObject versions() {
+        JsonObject versions = new JsonObject();
+        state.getVersions().forEach((alias, version) -> versions.put(alias, new JsonObject()
+                .put("timestamp", version.getTimestamp())
+                .put("node", version.getNode())
+                .put("deleted", version.isDeleted())));
+        return versions;
+    }
+
+    private JsonObject toEntry(String alias, Version version, SecretKey key) {
+        JsonObject entry = new JsonObject()
+                .put("alias", alias)
+                .put("timestamp", version.getTimestamp())
+                .put("node", version.getNode())
+                .put("deleted", version.isDeleted());
+        if (key != null) {
+            byte[] raw = Base64.getDecoder().decode(key.getB64Key());
+            entry.put("algorithm", key.getAlgorithm()).put("format", key.getFormat()).put("sealedKey", cipher.seal(raw, alias));
+            Arrays.fill(raw, (byte) 0);
+        }
+        return entry;
+    }
+
+    private void save() {
+        try {
+            state.save(stateFile);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to save the replica state '" + stateFile + "'", e);
+        }
+    }
+
+    public void close() {
+        if (syncTimer != -1) {
+            vertx.cancelTimer(syncTimer);
+        }
+        provider.removeCommitListener(commitListener);
+        if (transport != null) {
+            transport.close();
+        }
+    }
+}
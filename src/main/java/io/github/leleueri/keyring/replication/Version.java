@@ -0,0 +1,81 @@
+package io.github.leleueri.keyring.replication;
+
+/**
+ * Version of a replicated entry : the time of its last write given by the clock of the node that wrote it
+ * (see {@link ReplicaState#next(boolean)}), the node breaking the ties. A deleted entry keeps its version
+ * (tombstone) so an older write of the alias received later is ignored.
+ */
+public class Version implements Comparable<Version> {
+
+    private long timestamp;
+    private String node;
+    private boolean deleted;
+
+    public Version() {
+    }
+
+    public Version(long timestamp, String node, boolean deleted) {
+        this.timestamp = timestamp;
+        this.node = node;
+        this.deleted = deleted;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    public void setNode(String node) {
+        this.node = node;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(boolean deleted) {
+        this.deleted = deleted;
+    }
+
+    /**
+     * @return true if this version wins over the other one (last writer wins), always true if other is null
+     */
+    public boolean isNewerThan(Version other) {
+        return other == null || compareTo(other) > 0;
+    }
+
+    @Override
+    public int compareTo(Version other) {
+        int byTime = Long.compare(timestamp, other.timestamp);
+        return byTime != 0 ? byTime : node.compareTo(other.node);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Version)) {
+            return false;
+        }
+        Version other = (Version) o;
+        return timestamp == other.timestamp && deleted == other.deleted && node.equals(other.node);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Long.hashCode(timestamp) + node.hashCode()) + (deleted ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return timestamp + "@" + node + (deleted ? " (deleted)" : "");
+    }
+}
@@ -0,0 +1,331 @@
+package io.github.leleueri.keyring.tls;
+
+import io.github.leleueri.keyring.exception.KeyringConfigurationException;
+import io.github.leleueri.keyring.metrics.Counter;
+import io.github.leleueri.keyring.metrics.Histogram;
+import io.github.leleueri.keyring.metrics.KeyringMetrics;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.Shareable;
+
+import javax.net.ssl.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static io.github.leleueri.keyring.ConfigConstants.*;
+
+/**
+ * SSL context of the HTTP server, built from the same configuration as the SSL options of Vert.x and installed in
+ * place of the context Vert.x would create (see {@link #install(HttpServer)}).
+ *
+ * <ul>
+ *     <li>the sessions are cached ("ssl.session.cache.size", "ssl.session.timeout") : a client reconnecting with
+ *     the id of its session resumes it, without the exchange of keys nor the validation of its certificate</li>
+ *     <li>the context delegates to a context of the JDK built from the stores : when a store is modified,
+ *     {@link #reloadIfModified()} builds a new context of the JDK, used by the next handshakes. The new context
+ *     starts with an empty session cache (the cached sessions were validated by the previous truststore), the
+ *     connections already open keep the context they were created with. A store that can't be loaded is reported
+ *     and the current context is kept.</li>
+ *     <li>the handshakes are counted, full or resumed, as well as the time spent validating the client
+ *     certificates</li>
+ * </ul>
+ *
+ * Shared by the instances of the HTTP verticle, so they share the session cache.
+ */
+public class ServerSslContext implements Shareable {
+
+    private final String keystoreType;
+    private final Path keystorePath;
+    private final String keystorePassword;
+    private final boolean clientAuth;
+    private final String truststoreType;
+    private final Path truststorePath;
+    private final String truststorePassword;
+
+    private final int sessionCacheSize;
+    private final int sessionTimeout;
+    private long keystoreModified;
+    private long truststoreModified;
+
+    private volatile SSLContext jdkContext;
+    private final SSLContext context;
+
+    private final Counter fullHandshakes;
+    private final Counter resumedHandshakes;
+    private final Counter reloads;
+    private final Counter reloadFailures;
+    private final Histogram clientValidation;
+
+    private final Logger LOGGER = Logger.getLogger(getClass().getName());
+
+    public ServerSslContext(JsonObject config, KeyringMetrics metrics) {
+        keystoreType = config.getString(SERVER_SSL_KEYSTORE_TYPE, SERVER_SSL_TYPE_JKS);
+        keystorePath = path(config.getString(SERVER_SSL_KEYSTORE_PATH), "SSL keystore path is missing");
+        keystorePassword = config.getString(SERVER_SSL_KEYSTORE_PWD);
+        clientAuth = config.getBoolean(SERVER_SSL_CLIENT_AUTH, false);
+        truststoreType = config.getString(SERVER_SSL_TRUSTSTORE_TYPE, SERVER_SSL_TYPE_JKS);
+        truststorePath = clientAuth ? path(config.getString(SERVER_SSL_TRUSTSTORE_PATH), "SSL truststore path is missing") : null;
+        truststorePassword = config.getString(SERVER_SSL_TRUSTSTORE_PWD);
+        sessionCacheSize = config.getInteger(SERVER_SSL_SESSION_CACHE_SIZE, SERVER_SSL_DEFAULT_SESSION_CACHE_SIZE);
+        sessionTimeout = config.getInteger(SERVER_SSL_SESSION_TIMEOUT, SERVER_SSL_DEFAULT_SESSION_TIMEOUT);
+        if (sessionCacheSize < 0 || sessionTimeout < 0) {
+            throw new KeyringConfigurationException("Invalid SSL session configuration, the cache size and the timeout must be positive");
+        }
+
+        fullHandshakes = metrics.counter("keyring_tls_handshakes_total", "TLS handshakes completed by the server, full or resumed session", "type", "full");
+        resumedHandshakes = metrics.counter("keyring_tls_handshakes_total", "TLS handshakes completed by the server, full or resumed session", "type", "resumed");
+        reloads = metrics.counter("keyring_tls_reloads_total", "Reloads of the SSL stores, by result", "result", "success");
+        reloadFailures = metrics.counter("keyring_tls_reloads_total", "Reloads of the SSL stores, by result", "result", "failure");
+        clientValidation = metrics.histogram("keyring_tls_client_validation_seconds", "Validation of the client certificates by the truststore (full handshakes)");
+
+        try {
+            load();
+        } catch (GeneralSecurityException | IOException e) {
+            throw new KeyringConfigurationException("Unable to create the SSL context", e);
+        }
+        context = new SSLContext(new MeteredContextSpi(), jdkContext.getProvider(), jdkContext.getProtocol()) {
+        };
+    }
+
+    private static Path path(String path, String error) {
+        if (path == null) {
+            throw new KeyringConfigurationException(error);
+        }
+        return Paths.get(path);
+    }
+
+    /**
+     * Makes the server use this context instead of creating its own, must be called before the server listens.
+     * The context of Vert.x can't be configured by its API, it is replaced in the SSL helper of the server.
+     *
+     * @return false if the context can't be installed (the server then uses the context of Vert.x)
+     */
+    public boolean install(HttpServer server) {
+        try {
+            Field helperField = server.getClass().getDeclaredField("sslHelper");
+            helperField.setAccessible(true);
+            Object helper = helperField.get(server);
+            Field contextField = helper.getClass().getDeclaredField("sslContext");
+            contextField.setAccessible(true);
+            contextField.set(helper, context);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Unable to install the SSL context, the server uses the context of Vert.x (no session settings, no reload)", e);
+            return false;
+        }
+    }
+
+    /**
+     * Reloads the stores if one of them was modified since it was loaded. Blocking (reads the stores).
+     *
+     * @return true if the stores were reloaded
+     */
+    public synchronized boolean reloadIfModified() {
+        try {
+            if (Files.getLastModifiedTime(keystorePath).toMillis() == keystoreModified
+                    && (truststorePath == null || Files.getLastModifiedTime(truststorePath).toMillis() == truststoreModified)) {
+                return false;
+            }
+            load();
+        } catch (GeneralSecurityException | IOException e) {
+            reloadFailures.increment();
+            LOGGER.log(Level.SEVERE, "Unable to reload the SSL stores, the current ones are kept", e);
+            return false;
+        }
+        reloads.increment();
+        LOGGER.info("SSL stores reloaded");
+        return true;
+    }
+
+    /**
+     * Builds a context of the JDK from the stores, then makes it the current one.
+     */
+    private synchronized void load() throws GeneralSecurityException, IOException {
+        long modified = Files.getLastModifiedTime(keystorePath).toMillis();
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(loadStore(keystoreType, keystorePath, keystorePassword),
+                keystorePassword == null ? null : keystorePassword.toCharArray());
+        X509ExtendedKeyManager loadedKeyManager = null;
+        for (KeyManager manager : keyManagers.getKeyManagers()) {
+            if (manager instanceof X509ExtendedKeyManager) {
+                loadedKeyManager = (X509ExtendedKeyManager) manager;
+            }
+        }
+        X509ExtendedTrustManager loadedTrustManager = null;
+        long trustModified = 0;
+        if (clientAuth) {
+            trustModified = Files.getLastModifiedTime(truststorePath).toMillis();
+            TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManagers.init(loadStore(truststoreType, truststorePath, truststorePassword));
+            for (TrustManager manager : trustManagers.getTrustManagers()) {
+                if (manager instanceof X509ExtendedTrustManager) {
+                    loadedTrustManager = (X509ExtendedTrustManager) manager;
+                }
+            }
+        }
+        if (loadedKeyManager == null || (clientAuth && loadedTrustManager == null)) {
+            throw new GeneralSecurityException("No X509 key or trust manager");
+        }
+        SSLContext loaded = SSLContext.getInstance("TLS");
+        loaded.init(new KeyManager[]{loadedKeyManager},
+                clientAuth ? new TrustManager[]{new MeteredTrustManager(loadedTrustManager)} : null, null);
+        loaded.getServerSessionContext().setSessionCacheSize(sessionCacheSize);
+        loaded.getServerSessionContext().setSessionTimeout(sessionTimeout);
+        jdkContext = loaded;
+        keystoreModified = modified;
+        truststoreModified = trustModified;
+    }
+
+    private static KeyStore loadStore(String type, Path path, String password) throws GeneralSecurityException, IOException {
+        KeyStore store;
+        switch (type) {
+            case SERVER_SSL_TYPE_JKS:
+                store = KeyStore.getInstance("JKS");
+                break;
+            case SERVER_SSL_TYPE_PKCS12:
+                store = KeyStore.getInstance("PKCS12");
+                break;
+            default:
+                throw new KeyringConfigurationException("SSL store type is invalid, expected JKS or P12");
+        }
+        try (InputStream in = Files.newInputStream(path)) {
+            store.load(in, password == null ? null : password.toCharArray());
+        }
+        return store;
+    }
+
+    /**
+     * A session created before the engine of the connection is resumed. Its creation time is kept whether the
+     * session is resumed from the cache or from a session ticket (JDK 13+), unlike its attributes : a session
+     * decoded from a ticket is a new instance.
+     */
+    private void handshakeCompleted(SSLSession session, long engineCreatedAt) {
+        if (session.getCreationTime() < engineCreatedAt) {
+            resumedHandshakes.increment();
+        } else {
+            fullHandshakes.increment();
+        }
+    }
+
+    private class MeteredContextSpi extends SSLContextSpi {
+
+        @Override
+        protected void engineInit(KeyManager[] km, TrustManager[] tm, SecureRandom sr) {
+            throw new UnsupportedOperationException("The SSL context of the server is already initialized");
+        }
+
+        @Override
+        protected SSLSocketFactory engineGetSocketFactory() {
+            return jdkContext.getSocketFactory();
+        }
+
+        @Override
+        protected SSLServerSocketFactory engineGetServerSocketFactory() {
+            return jdkContext.getServerSocketFactory();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine() {
+            return new MeteredSSLEngine(jdkContext.createSSLEngine(), ServerSslContext.this::handshakeCompleted);
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine(String host, int port) {
+            return new MeteredSSLEngine(jdkContext.createSSLEngine(host, port), ServerSslContext.this::handshakeCompleted);
+        }
+
+        @Override
+        protected SSLSessionContext engineGetServerSessionContext() {
+            return jdkContext.getServerSessionContext();
+        }
+
+        @Override
+        protected SSLSessionContext engineGetClientSessionContext() {
+            return jdkContext.getClientSessionContext();
+        }
+
+        @Override
+        protected SSLParameters engineGetDefaultSSLParameters() {
+            return jdkContext.getDefaultSSLParameters();
+        }
+
+        @Override
+        protected SSLParameters engineGetSupportedSSLParameters() {
+            return jdkContext.getSupportedSSLParameters();
+        }
+    }
+
+    /**
+     * Times the validation of the client certificates.
+     */
+    private class MeteredTrustManager extends X509ExtendedTrustManager {
+
+        private final X509ExtendedTrustManager trustManager;
+
+        private MeteredTrustManager(X509ExtendedTrustManager trustManager) {
+            this.trustManager = trustManager;
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            long start = System.nanoTime();
+            try {
+                trustManager.checkClientTrusted(chain, authType);
+            } finally {
+                clientValidation.recordSince(start);
+            }
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+            long start = System.nanoTime();
+            try {
+                trustManager.checkClientTrusted(chain, authType, socket);
+            } finally {
+                clientValidation.recordSince(start);
+            }
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+            long start = System.nanoTime();
+            try {
+                trustManager.checkClientTrusted(chain, authType, engine);
+            } finally {
+                clientValidation.recordSince(start);
+            }
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            trustManager.checkServerTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+            trustManager.checkServerTrusted(chain, authType, socket);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+            trustManager.checkServerTrusted(chain, authType, engine);
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return trustManager.getAcceptedIssuers();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package io.github.leleueri.keyring;
+
+import io.github.leleueri.keyring.AdmissionControl.Operation;
+import io.github.leleueri.keyring.exception.KeyringConfigurationException;
+import io.github.leleueri.keyring.metrics.KeyringMetrics;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import static io.github.leleueri.keyring.ConfigConstants.*;
+import static org.junit.Assert.*;
+
+public class TestAdmissionControl {
+
+    private AdmissionControl admission(KeyringMetrics metrics) {
+        return new AdmissionControl(new JsonObject()
+                .put(ADMISSION_READ_LIMIT, 4)
+                .put(ADMISSION_LIST_LIMIT, 1)
+                .put(ADMISSION_WRITE_LIMIT, 2)
+                .put(ADMISSION_RETRY_AFTER, 2), metrics);
+    }
+
+    @Test
+    public void testLimits() {
+        KeyringMetrics metrics = new KeyringMetrics();
+        AdmissionControl admission = admission(metrics);
+        assertEquals("2", admission.getRetryAfter());
+
+        assertTrue(admission.tryAcquire(Operation.WRITE));
+        assertTrue(admission.tryAcquire(Operation.WRITE));
+        assertFalse(admission.tryAcquire(Operation.WRITE));
+        admission.release(Operation.WRITE);
+        assertTrue(admission.tryAcquire(Operation.WRITE));
+        assertEquals(2, admission.getInFlight(Operation.WRITE));
+
+        assertTrue(admission.tryAcquire(Operation.LIST));
+        assertFalse(admission.tryAcquire(Operation.LIST));
+        // the continuation of an admitted stream is not limited
+        admission.acquire(Operation.LIST);
+        assertEquals(2, admission.getInFlight(Operation.LIST));
+
+        String text = metrics.writePrometheus();
+        assertTrue(text.contains("keyring_admission_rejected_total{operation=\"write\"} 1\n"));
+        assertTrue(text.contains("keyring_admission_rejected_total{operation=\"list\"} 1\n"));
+        assertTrue(text.contains("keyring_admission_in_flight{operation=\"write\"} 2"));
+    }
+
+    @Test
+    public void testReadsHaveThePriority() {
+        AdmissionControl admission = admission(new KeyringMetrics());
+        assertTrue(admission.tryAcquire(Operation.READ));
+        assertTrue(admission.tryAcquire(Operation.LIST));
+        admission.release(Operation.LIST);
+        // half of the read limit is reached, the lists and the writes are rejected
+        assertTrue(admission.tryAcquire(Operation.READ));
+        assertFalse(admission.tryAcquire(Operation.LIST));
+        assertFalse(admission.tryAcquire(Operation.WRITE));
+        assertTrue(admission.tryAcquire(Operation.READ));
+        assertTrue(admission.tryAcquire(Operation.READ));
+        assertFalse(admission.tryAcquire(Operation.READ));
+        admission.release(Operation.READ);
+        admission.release(Operation.READ);
+        admission.release(Operation.READ);
+        assertTrue(admission.tryAcquire(Operation.WRITE));
+    }
+
+    @Test
+    public void testOperations() {
+        assertEquals(Operation.READ, AdmissionControl.operation(KeystoreVerticle.GET_SECRET_KEY));
+        assertEquals(Operation.READ, AdmissionControl.operation(KeystoreVerticle.GET_SECRET_KEYS));
+        assertEquals(Operation.LIST, AdmissionControl.operation(KeystoreVerticle.LIST_SECRET_KEYS));
+        assertEquals(Operation.WRITE, AdmissionControl.operation(KeystoreVerticle.IMPORT_SECRET_KEYS));
+        assertNull(AdmissionControl.operation(KeystoreVerticle.CACHE_STATS));
+    }
+
+    @Test(expected = KeyringConfigurationException.class)
+    public void testInvalidLimit() {
+        new AdmissionControl(new JsonObject().put(ADMISSION_LIST_LIMIT, 0), new KeyringMetrics());
+    }
+}
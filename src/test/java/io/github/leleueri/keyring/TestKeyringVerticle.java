@@ -1,5 +1,7 @@
 package io.github.leleueri.keyring;
 
+import io.github.leleueri.keyring.bean.CacheStats;
+import io.github.leleueri.keyring.bean.ImportResult;
 import io.github.leleueri.keyring.bean.SecretKey;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Vertx;
@@ -18,6 +20,8 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static io.github.leleueri.keyring.ConfigConstants.*;
 /**
@@ -57,12 +61,13 @@ public class TestKeyringVerticle {
 
         DeploymentOptions options = new DeploymentOptions()
                 .setConfig(new JsonObject().put("http.port", port)
+                        .put(SERVER_HTTP_INSTANCES, 2) // the requests are spread over both instances
                         .put(APP_KEYSTORE_PATH, path)
                         .put(APP_KEYSTORE_PWD, "simplemotdepasse")
                         .put(APP_KEYSTORE_SECRET_KEY_PWD, "simplemotdepassecle"));
 
         vertx = Vertx.vertx();
-        vertx.deployVerticle(KeyringVerticle.class.getName(), options, context.asyncAssertSuccess());
+        vertx.deployVerticle(MainVerticle.class.getName(), options, context.asyncAssertSuccess());
 
         httpClient = vertx.createHttpClient();
     }
@@ -181,4 +186,627 @@ public class TestKeyringVerticle {
         });
     }
 
+    @Test
+    public void testCacheStats(TestContext context) throws Exception {
+        final SecretKey key = generateKey("cached");
+
+        final Async asyncPost = context.async();
+        httpClient.post(port, "localhost", "/keyring/secret-keys").putHeader("Content-Type", "application/json")
+                .setChunked(true)
+                .handler(response -> {
+                    context.assertEquals(201, response.statusCode());
+                    asyncPost.complete();
+                }).end(Json.encodePrettily(key));
+        asyncPost.awaitSuccess();
+
+        for (int i = 0; i < 2; i++) {
+            final Async asyncReadKey = context.async();
+            httpClient.getNow(port, "localhost", "/keyring/secret-key/" + key.getAlias(), response -> {
+                context.assertEquals(200, response.statusCode());
+                asyncReadKey.complete();
+            });
+            asyncReadKey.awaitSuccess();
+        }
+
+        final Async asyncStats = context.async();
+        httpClient.getNow(port, "localhost", "/keyring/cache/stats", response -> {
+            context.assertEquals(200, response.statusCode());
+            response.bodyHandler(body -> {
+                final CacheStats stats = Json.decodeValue(body.toString(), CacheStats.class);
+                context.assertEquals(1L, stats.getMisses());
+                context.assertEquals(1L, stats.getHits());
+                context.assertEquals(1, stats.getSize());
+                asyncStats.complete();
+            });
+        });
+    }
+
+    @Test
+    public void testETag(TestContext context) throws Exception {
+        final SecretKey key = generateKey("etag");
+        postKey(context, key);
+
+        // the first read encodes the key, the next ones write the same cached buffer
+        final String[] etag = new String[1];
+        for (int i = 0; i < 3; i++) {
+            final Async asyncReadKey = context.async();
+            httpClient.getNow(port, "localhost", "/keyring/secret-key/" + key.getAlias(), response -> {
+                context.assertEquals(200, response.statusCode());
+                context.assertNotNull(response.getHeader("ETag"));
+                if (etag[0] == null) {
+                    etag[0] = response.getHeader("ETag");
+                }
+                context.assertEquals(etag[0], response.getHeader("ETag"));
+                response.bodyHandler(body -> {
+                    final SecretKey readKey = Json.decodeValue(body.toString(), SecretKey.class);
+                    context.assertEquals(key.getB64Key(), readKey.getB64Key());
+                    asyncReadKey.complete();
+                });
+            });
+            asyncReadKey.awaitSuccess();
+        }
+
+        final Async asyncNotModified = context.async();
+        httpClient.get(port, "localhost", "/keyring/secret-key/" + key.getAlias(), response -> {
+            context.assertEquals(304, response.statusCode());
+            context.assertEquals(etag[0], response.getHeader("ETag"));
+            asyncNotModified.complete();
+        }).putHeader("If-None-Match", etag[0]).end();
+        asyncNotModified.awaitSuccess();
+
+        // a new key with the same alias has another ETag
+        final Async asyncDelete = context.async();
+        httpClient.delete(port, "localhost", "/keyring/secret-key/" + key.getAlias(), response -> {
+            context.assertEquals(204, response.statusCode());
+            asyncDelete.complete();
+        }).end();
+        asyncDelete.awaitSuccess();
+
+        final SecretKey replacement = generateKey("etag");
+        replacement.setAlias(key.getAlias());
+        postKey(context, replacement);
+
+        final Async asyncModified = context.async();
+        httpClient.get(port, "localhost", "/keyring/secret-key/" + key.getAlias(), response -> {
+            context.assertEquals(200, response.statusCode());
+            context.assertNotEquals(etag[0], response.getHeader("ETag"));
+            response.bodyHandler(body -> {
+                final SecretKey readKey = Json.decodeValue(body.toString(), SecretKey.class);
+                context.assertEquals(replacement.getB64Key(), readKey.getB64Key());
+                asyncModified.complete();
+            });
+        }).putHeader("If-None-Match", etag[0]).end();
+    }
+
+    @Test
+    public void testMetrics(TestContext context) throws Exception {
+        final Async asyncRead = context.async();
+        httpClient.getNow(port, "localhost", "/keyring/secret-key/unknown", response -> {
+            context.assertEquals(404, response.statusCode());
+            asyncRead.complete();
+        });
+        asyncRead.awaitSuccess();
+
+        final Async asyncMetrics = context.async();
+        httpClient.getNow(port, "localhost", "/metrics", response -> {
+            context.assertEquals(200, response.statusCode());
+            context.assertTrue(response.getHeader("content-type").startsWith("text/plain"));
+            response.bodyHandler(body -> {
+                final String metrics = body.toString();
+                context.assertTrue(metrics.contains("# TYPE keyring_http_request_duration_seconds histogram"));
+                context.assertTrue(metrics.contains("keyring_http_request_duration_seconds_count{route=\"/keyring/secret-key/:alias\",method=\"GET\",status=\"404\"} 1"));
+                context.assertTrue(metrics.contains("keyring_eventbus_wait_seconds_count{address=\"" + KeystoreVerticle.GET_SECRET_KEY + "\"} 1"));
+                context.assertTrue(metrics.contains("keyring_eventbus_pending_messages{address=\"" + KeystoreVerticle.GET_SECRET_KEY + "\"} 0"));
+                context.assertTrue(metrics.contains("keyring_cache_misses_total 1"));
+                asyncMetrics.complete();
+            });
+        });
+    }
+
+    @Test
+    public void testImportKeys(TestContext context) throws Exception {
+        final SecretKey key1 = generateKey("import1");
+        final SecretKey key2 = generateKey("import2");
+        final SecretKey invalid = generateKey("import3");
+        invalid.setAlgorithm(null);
+
+        final String ndjson = Json.encode(key1) + "\n" + Json.encode(key2) + "\n" + Json.encode(invalid) + "\n"
+                + "{not json\n" + Json.encode(key1) + "\n";
+
+        final Async asyncImport = context.async();
+        httpClient.post(port, "localhost", "/keyring/secret-keys/import").putHeader("Content-Type", "application/x-ndjson")
+                .handler(response -> {
+                    context.assertEquals(200, response.statusCode());
+                    response.bodyHandler(body -> {
+                        final ImportResult[] results = Json.decodeValue(body.toString(), ImportResult[].class);
+                        context.assertEquals(5, results.length);
+                        context.assertEquals(ImportResult.CREATED, results[0].getStatus());
+                        context.assertEquals(ImportResult.CREATED, results[1].getStatus());
+                        context.assertEquals(ImportResult.INVALID, results[2].getStatus());
+                        context.assertEquals(ImportResult.INVALID, results[3].getStatus());
+                        context.assertEquals(ImportResult.CONFLICT, results[4].getStatus());
+                        asyncImport.complete();
+                    });
+                }).end(ndjson);
+        asyncImport.awaitSuccess();
+
+        final Async asyncReadAliases = context.async();
+        httpClient.getNow(port, "localhost", "/keyring/aliases", response -> {
+            context.assertEquals(200, response.statusCode());
+            response.bodyHandler(body -> {
+                final ArrayList aliases = Json.decodeValue(body.toString(), ArrayList.class);
+                context.assertEquals(2, aliases.size());
+                context.assertTrue(aliases.contains(key1.getAlias()));
+                context.assertTrue(aliases.contains(key2.getAlias()));
+                asyncReadAliases.complete();
+            });
+        });
+    }
+
+    @Test
+    public void testMultiGet(TestContext context) throws Exception {
+        final SecretKey key1 = generateKey("multi1");
+        final SecretKey key2 = generateKey("multi2");
+
+        final Async asyncImport = context.async();
+        httpClient.post(port, "localhost", "/keyring/secret-keys/import").handler(response -> {
+            context.assertEquals(200, response.statusCode());
+            asyncImport.complete();
+        }).end(Json.encode(Arrays.asList(key1, key2)));
+        asyncImport.awaitSuccess();
+
+        final Async asyncGet = context.async();
+        httpClient.post(port, "localhost", "/keyring/secret-keys/get").handler(response -> {
+            context.assertEquals(200, response.statusCode());
+            response.bodyHandler(body -> {
+                final JsonObject batch = new JsonObject(body.toString());
+                final JsonObject keys = batch.getJsonObject("keys");
+                context.assertEquals(2, keys.size());
+                context.assertEquals(key2.getB64Key(), keys.getJsonObject(key2.getAlias()).getString("b64Key"));
+                context.assertEquals(key1.getB64Key(), keys.getJsonObject(key1.getAlias()).getString("b64Key"));
+                context.assertEquals(Arrays.asList("unknown"), batch.getJsonArray("missing").getList());
+                asyncGet.complete();
+            });
+        }).end(Json.encode(Arrays.asList(key2.getAlias(), "unknown", key1.getAlias(), key2.getAlias())));
+        asyncGet.awaitSuccess();
+
+        final Async asyncInvalid = context.async();
+        httpClient.post(port, "localhost", "/keyring/secret-keys/get").handler(response -> {
+            context.assertEquals(400, response.statusCode());
+            asyncInvalid.complete();
+        }).end("[]");
+    }
+
+    private JsonObject getChanges(TestContext context, String query, int status) {
+        final JsonObject[] changes = new JsonObject[1];
+        final Async async = context.async();
+        httpClient.getNow(port, "localhost", "/keyring/changes" + query, response -> {
+            context.assertEquals(status, response.statusCode());
+            response.bodyHandler(body -> {
+                changes[0] = new JsonObject(body.toString());
+                async.complete();
+            });
+        });
+        async.awaitSuccess();
+        return changes[0];
+    }
+
+    @Test
+    public void testChanges(TestContext context) throws Exception {
+        final long revision = getChanges(context, "", 200).getLong("revision");
+
+        // the long poll is answered by the next commit
+        final SecretKey key = generateKey("changes");
+        final Async asyncPoll = context.async();
+        httpClient.getNow(port, "localhost", "/keyring/changes?wait=30&since=" + revision, response -> {
+            context.assertEquals(200, response.statusCode());
+            response.bodyHandler(body -> {
+                final JsonObject page = new JsonObject(body.toString());
+                context.assertEquals(revision + 1, page.getLong("revision"));
+                context.assertEquals(key.getAlias(), page.getJsonArray("changes").getJsonObject(0).getString("alias"));
+                context.assertEquals("put", page.getJsonArray("changes").getJsonObject(0).getString("type"));
+                asyncPoll.complete();
+            });
+        });
+        Thread.sleep(200);
+        postKey(context, key);
+        asyncPoll.awaitSuccess();
+
+        // the changes of an alias are collapsed into its last change
+        final Async asyncDelete = context.async();
+        httpClient.delete(port, "localhost", "/keyring/secret-key/" + key.getAlias(), response -> {
+            context.assertEquals(204, response.statusCode());
+            asyncDelete.complete();
+        }).end();
+        asyncDelete.awaitSuccess();
+        JsonObject page = getChanges(context, "?since=" + revision, 200);
+        context.assertEquals(revision + 2, page.getLong("revision"));
+        context.assertEquals(1, page.getJsonArray("changes").size());
+        context.assertEquals("delete", page.getJsonArray("changes").getJsonObject(0).getString("type"));
+
+        // no change after the current revision, a revision out of the feed must reload the keys
+        context.assertEquals(0, getChanges(context, "?since=" + (revision + 2), 200).getJsonArray("changes").size());
+        context.assertEquals(revision + 2, getChanges(context, "?since=1", 410).getLong("revision"));
+        final Async asyncInvalid = context.async();
+        httpClient.getNow(port, "localhost", "/keyring/changes?since=abc", response -> {
+            context.assertEquals(400, response.statusCode());
+            asyncInvalid.complete();
+        });
+    }
+
+    @Test
+    public void testChangesWithoutLongPoll(TestContext context) throws Exception {
+        int noWaitPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            noWaitPort = socket.getLocalPort();
+        }
+        final String path = "target/KeyringNoWaitKeystore.jceks";
+        Paths.get(path).toFile().delete();
+        Vertx noWaitVertx = Vertx.vertx();
+        DeploymentOptions options = new DeploymentOptions()
+                .setConfig(new JsonObject().put("http.port", noWaitPort)
+                        .put(SERVER_HTTP_INSTANCES, 1)
+                        .put(SERVER_CHANGES_MAX_WAIT, 0)
+                        .put(APP_KEYSTORE_PATH, path)
+                        .put(APP_KEYSTORE_PWD, "simplemotdepasse")
+                        .put(APP_KEYSTORE_SECRET_KEY_PWD, "simplemotdepassecle"));
+
+        // without any allowed wait, a request asking to wait is answered at once
+        final Async async = context.async();
+        noWaitVertx.deployVerticle(MainVerticle.class.getName(), options, context.asyncAssertSuccess(id -> {
+            HttpClient client = noWaitVertx.createHttpClient();
+            client.getNow(noWaitPort, "localhost", "/keyring/changes", current -> current.bodyHandler(revision ->
+                    client.getNow(noWaitPort, "localhost", "/keyring/changes?wait=30&since="
+                            + new JsonObject(revision.toString()).getLong("revision"), response -> {
+                        context.assertEquals(200, response.statusCode());
+                        response.bodyHandler(body -> {
+                            context.assertEquals(0, new JsonObject(body.toString()).getJsonArray("changes").size());
+                            noWaitVertx.close(context.asyncAssertSuccess(v -> async.complete()));
+                        });
+                    })));
+        }));
+        async.awaitSuccess(5_000);
+    }
+
+    @Test
+    public void testFailingCommitListener(TestContext context) throws Exception {
+        // the listeners run once the mutations are persisted, a failing one doesn't fail the write
+        KeystoreVerticle.sharedProvider(vertx).addCommitListener(committed -> {
+            throw new IllegalStateException("unexpected");
+        });
+        final SecretKey key = generateKey("listened");
+        final Async asyncPost = context.async();
+        httpClient.post(port, "localhost", "/keyring/secret-keys").putHeader("Content-Type", "application/json")
+                .handler(response -> {
+                    context.assertEquals(201, response.statusCode());
+                    asyncPost.complete();
+                }).end(Json.encode(key));
+        asyncPost.awaitSuccess(5_000);
+
+        final Async asyncGet = context.async();
+        httpClient.getNow(port, "localhost", "/keyring/secret-key/" + key.getAlias(), response -> {
+            context.assertEquals(200, response.statusCode());
+            asyncGet.complete();
+        });
+        asyncGet.awaitSuccess(5_000);
+    }
+
+    @Test
+    public void testReadsDuringWrites(TestContext context) throws Exception {
+        final SecretKey stable = generateKey("stable");
+        postKey(context, stable);
+        final List<SecretKey> keys = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            keys.add(generateKey("rw" + i + "-"));
+        }
+
+        // the reads are spread over the readers while the keys are created then deleted : a key is either
+        // absent or complete, the key not modified is always read
+        final int readsPerKey = 10;
+        final Async async = context.async();
+        final AtomicInteger remaining = new AtomicInteger(keys.size() * (2 + 2 * readsPerKey));
+        final Runnable done = () -> {
+            if (remaining.decrementAndGet() == 0) {
+                async.complete();
+            }
+        };
+        for (SecretKey key : keys) {
+            httpClient.post(port, "localhost", "/keyring/secret-keys").putHeader("Content-Type", "application/json")
+                    .handler(response -> {
+                        context.assertEquals(201, response.statusCode());
+                        done.run();
+                        httpClient.delete(port, "localhost", "/keyring/secret-key/" + key.getAlias(), deleted -> {
+                            context.assertEquals(204, deleted.statusCode());
+                            done.run();
+                        }).end();
+                    }).end(Json.encode(key));
+            for (int i = 0; i < readsPerKey; i++) {
+                readDuringWrites(context, key, false, done);
+                readDuringWrites(context, stable, true, done);
+            }
+        }
+        async.awaitSuccess();
+    }
+
+    private void readDuringWrites(TestContext context, SecretKey key, boolean present, Runnable done) {
+        httpClient.getNow(port, "localhost", "/keyring/secret-key/" + key.getAlias(), response -> {
+            if (response.statusCode() == 404 && !present) {
+                done.run();
+                return;
+            }
+            context.assertEquals(200, response.statusCode());
+            response.bodyHandler(body -> {
+                final JsonObject read = new JsonObject(body.toString());
+                context.assertEquals(key.getAlias(), read.getString("alias"));
+                context.assertEquals(key.getB64Key(), read.getString("b64Key"));
+                done.run();
+            });
+        });
+    }
+
+    @Test
+    public void testConcurrentWrites(TestContext context) throws Exception {
+        final SecretKey[] keys = {generateKey("group1"), generateKey("group2"), generateKey("group3")};
+        final int[] statuses = new int[4];
+
+        // the requests are sent together so they may be committed in the same group
+        final Async asyncPosts = context.async();
+        final AtomicInteger responses = new AtomicInteger();
+        for (int i = 0; i < 4; i++) {
+            final int index = i;
+            httpClient.post(port, "localhost", "/keyring/secret-keys").putHeader("Content-Type", "application/json")
+                    .setChunked(true)
+                    .handler(response -> {
+                        statuses[index] = response.statusCode();
+                        if (responses.incrementAndGet() == 4) {
+                            asyncPosts.complete();
+                        }
+                    }).end(Json.encode(keys[i % 3]));
+        }
+        asyncPosts.awaitSuccess();
+
+        // the two requests with the same alias may be received in any order
+        context.assertEquals(201 + 409, statuses[0] + statuses[3]);
+        context.assertEquals(201, statuses[1]);
+        context.assertEquals(201, statuses[2]);
+
+        final Async asyncReadAliases = context.async();
+        httpClient.getNow(port, "localhost", "/keyring/aliases", response -> {
+            context.assertEquals(200, response.statusCode());
+            response.bodyHandler(body -> {
+                final ArrayList aliases = Json.decodeValue(body.toString(), ArrayList.class);
+                context.assertEquals(3, aliases.size());
+                asyncReadAliases.complete();
+            });
+        });
+    }
+
+    @Test
+    public void testPaginatedLists(TestContext context) throws Exception {
+        final String[] aliases = {"tenant1-a", "tenant1-b", "tenant1-c", "tenant2-a"};
+        StringBuilder ndjson = new StringBuilder();
+        for (String alias : aliases) {
+            SecretKey key = generateKey(alias);
+            key.setAlias(alias);
+            ndjson.append(Json.encode(key)).append('\n');
+        }
+        final Async asyncImport = context.async();
+        httpClient.post(port, "localhost", "/keyring/secret-keys/import").putHeader("Content-Type", "application/x-ndjson")
+                .handler(response -> {
+                    context.assertEquals(200, response.statusCode());
+                    asyncImport.complete();
+                }).end(ndjson.toString());
+        asyncImport.awaitSuccess();
+
+        final Async asyncFirstPage = context.async();
+        httpClient.getNow(port, "localhost", "/keyring/aliases?prefix=tenant1-&limit=2", response -> {
+            context.assertEquals(200, response.statusCode());
+            context.assertEquals("tenant1-b", response.getHeader("X-Next-Cursor"));
+            response.bodyHandler(body -> {
+                context.assertEquals(Arrays.asList("tenant1-a", "tenant1-b"), Json.decodeValue(body.toString(), ArrayList.class));
+                asyncFirstPage.complete();
+            });
+        });
+        asyncFirstPage.awaitSuccess();
+
+        final Async asyncLastPage = context.async();
+        httpClient.getNow(port, "localhost", "/keyring/secret-keys?prefix=tenant1-&limit=2&cursor=tenant1-b", response -> {
+            context.assertEquals(200, response.statusCode());
+            context.assertNull(response.getHeader("X-Next-Cursor"));
+            response.bodyHandler(body -> {
+                JsonObject keys = new JsonObject(body.toString());
+                context.assertEquals(1, keys.size());
+                context.assertTrue(keys.containsKey("tenant1-c"));
+                asyncLastPage.complete();
+            });
+        });
+        asyncLastPage.awaitSuccess();
+
+        final Async asyncStream = context.async();
+        httpClient.getNow(port, "localhost", "/keyring/secret-keys?stream=true&limit=1", response -> {
+            context.assertEquals(200, response.statusCode());
+            response.bodyHandler(body -> {
+                JsonObject keys = new JsonObject(body.toString());
+                context.assertEquals(4, keys.size());
+                for (String alias : aliases) {
+                    context.assertEquals(alias, keys.getJsonObject(alias).getString("alias"));
+                }
+                asyncStream.complete();
+            });
+        });
+    }
+
+    private void postKey(TestContext context, SecretKey key) {
+        final Async asyncPost = context.async();
+        httpClient.post(port, "localhost", "/keyring/secret-keys").putHeader("Content-Type", "application/json")
+                .handler(response -> {
+                    context.assertEquals(201, response.statusCode());
+                    asyncPost.complete();
+                }).end(Json.encode(key));
+        asyncPost.awaitSuccess();
+    }
+
+    private SecretKey generateKey(String aliasPrefix) throws Exception {
+        KeyGenerator keyGen = KeyGenerator.getInstance("AES");
+        keyGen.init(128);
+        javax.crypto.SecretKey secretKey = keyGen.generateKey();
+
+        final SecretKey key = new SecretKey();
+        key.setAlgorithm("AES");
+        key.setAlias(aliasPrefix + System.currentTimeMillis());
+        key.setFormat(secretKey.getFormat());
+        key.setB64Key(new String(Base64.getEncoder().encode(secretKey.getEncoded())));
+        return key;
+    }
+
+    @Test
+    public void testHealth(TestContext context) {
+        final Async async = context.async();
+        httpClient.getNow(port, "localhost", "/health/live", live -> {
+            context.assertEquals(200, live.statusCode());
+            httpClient.getNow(port, "localhost", "/health/ready", response -> {
+                context.assertEquals(200, response.statusCode());
+                response.bodyHandler(body -> {
+                    context.assertEquals("READY", new JsonObject(body.toString()).getString("status"));
+                    async.complete();
+                });
+            });
+        });
+    }
+
+    @Test
+    public void testOffHeapCache(TestContext context) throws Exception {
+        int offHeapPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            offHeapPort = socket.getLocalPort();
+        }
+        final String path = "target/KeyringOffHeapKeystore.jceks";
+        Paths.get(path).toFile().delete();
+        Vertx offHeapVertx = Vertx.vertx();
+        DeploymentOptions options = new DeploymentOptions()
+                .setConfig(new JsonObject().put("http.port", offHeapPort)
+                        .put(SERVER_HTTP_INSTANCES, 1)
+                        .put(APP_CACHE_OFFHEAP, true)
+                        .put(APP_KEYSTORE_PATH, path)
+                        .put(APP_KEYSTORE_PWD, "simplemotdepasse")
+                        .put(APP_KEYSTORE_SECRET_KEY_PWD, "simplemotdepassecle"));
+        final Async asyncDeploy = context.async();
+        offHeapVertx.deployVerticle(MainVerticle.class.getName(), options, context.asyncAssertSuccess(id -> asyncDeploy.complete()));
+        asyncDeploy.awaitSuccess();
+        HttpClient client = offHeapVertx.createHttpClient();
+
+        final SecretKey key = generateKey("offheap");
+        final Async asyncPost = context.async();
+        client.post(offHeapPort, "localhost", "/keyring/secret-keys").putHeader("Content-Type", "application/json")
+                .handler(response -> {
+                    context.assertEquals(201, response.statusCode());
+                    asyncPost.complete();
+                }).end(Json.encode(key));
+        asyncPost.awaitSuccess();
+
+        // the first read caches the key in the arena, the next ones are written from its block
+        final String[] etag = new String[1];
+        for (int i = 0; i < 3; i++) {
+            final Async asyncGet = context.async();
+            client.getNow(offHeapPort, "localhost", "/keyring/secret-key/" + key.getAlias(), response -> {
+                context.assertEquals(200, response.statusCode());
+                etag[0] = response.getHeader("ETag");
+                response.bodyHandler(body -> {
+                    context.assertEquals(key.getB64Key(), Json.decodeValue(body.toString(), SecretKey.class).getB64Key());
+                    asyncGet.complete();
+                });
+            });
+            asyncGet.awaitSuccess();
+        }
+        final Async asyncNotModified = context.async();
+        client.get(offHeapPort, "localhost", "/keyring/secret-key/" + key.getAlias(), response -> {
+            context.assertEquals(304, response.statusCode());
+            asyncNotModified.complete();
+        }).putHeader("If-None-Match", etag[0]).end();
+        asyncNotModified.awaitSuccess();
+
+        // once deleted, the block is wiped : no response holds it anymore
+        final Async asyncDelete = context.async();
+        client.delete(offHeapPort, "localhost", "/keyring/secret-key/" + key.getAlias(), response -> {
+            context.assertEquals(204, response.statusCode());
+            asyncDelete.complete();
+        }).end();
+        asyncDelete.awaitSuccess();
+        final Async async = context.async();
+        client.getNow(offHeapPort, "localhost", "/metrics", response -> response.bodyHandler(body -> {
+            context.assertTrue(body.toString().contains("keyring_cache_offheap_used_bytes 0"));
+            offHeapVertx.close(context.asyncAssertSuccess(v -> async.complete()));
+        }));
+    }
+
+    @Test
+    public void testHttpProfile(TestContext context) throws Exception {
+        int tunedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            tunedPort = socket.getLocalPort();
+        }
+        final String path = "target/KeyringTunedKeystore.jceks";
+        Paths.get(path).toFile().delete();
+        JsonObject config = new JsonObject().put("http.port", tunedPort)
+                .put(SERVER_HTTP_INSTANCES, 1)
+                .put(APP_KEYSTORE_PATH, path)
+                .put(APP_KEYSTORE_PWD, "simplemotdepasse")
+                .put(APP_KEYSTORE_SECRET_KEY_PWD, "simplemotdepassecle");
+
+        // an unknown profile is a configuration error
+        final Async asyncInvalid = context.async();
+        Vertx invalidVertx = Vertx.vertx();
+        invalidVertx.deployVerticle(MainVerticle.class.getName(),
+                new DeploymentOptions().setConfig(config.copy().put(SERVER_HTTP_PROFILE, "fast")),
+                context.asyncAssertFailure(e -> invalidVertx.close(context.asyncAssertSuccess(v -> asyncInvalid.complete()))));
+        asyncInvalid.awaitSuccess();
+
+        final Async async = context.async();
+        Vertx tunedVertx = Vertx.vertx();
+        DeploymentOptions options = new DeploymentOptions().setConfig(config.copy()
+                .put(SERVER_HTTP_PROFILE, SERVER_HTTP_PROFILE_PERFORMANCE)
+                .put(SERVER_HTTP_IDLE_TIMEOUT, 5));
+        tunedVertx.deployVerticle(MainVerticle.class.getName(), options, context.asyncAssertSuccess(id -> {
+            tunedVertx.createHttpClient().getNow(tunedPort, "localhost", "/keyring/secret-key/unknown", response -> {
+                context.assertEquals(404, response.statusCode());
+                tunedVertx.close(context.asyncAssertSuccess(v -> async.complete()));
+            });
+        }));
+    }
+
+    @Test
+    public void testLazyStartup(TestContext context) throws Exception {
+        int lazyPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            lazyPort = socket.getLocalPort();
+        }
+        final String path = "target/KeyringLazyKeystore.jceks";
+        Paths.get(path).toFile().delete();
+        Vertx lazyVertx = Vertx.vertx();
+        DeploymentOptions options = new DeploymentOptions()
+                .setConfig(new JsonObject().put("http.port", lazyPort)
+                        .put(SERVER_HTTP_INSTANCES, 1)
+                        .put(APP_KEYSTORE_STARTUP, APP_KEYSTORE_STARTUP_LAZY)
+                        .put(APP_KEYSTORE_PATH, path)
+                        .put(APP_KEYSTORE_PWD, "simplemotdepasse")
+                        .put(APP_KEYSTORE_SECRET_KEY_PWD, "simplemotdepassecle"));
+
+        final Async async = context.async();
+        lazyVertx.deployVerticle(MainVerticle.class.getName(), options, context.asyncAssertSuccess(id -> {
+            HttpClient client = lazyVertx.createHttpClient();
+            // the keys are served once the server is ready
+            lazyVertx.setPeriodic(50, timer -> client.getNow(lazyPort, "localhost", "/health/ready", ready -> {
+                if (ready.statusCode() == 503) {
+                    return;
+                }
+                lazyVertx.cancelTimer(timer);
+                context.assertEquals(200, ready.statusCode());
+                client.getNow(lazyPort, "localhost", "/keyring/secret-key/unknown", response -> {
+                    context.assertEquals(404, response.statusCode());
+                    lazyVertx.close(context.asyncAssertSuccess(v -> async.complete()));
+                });
+            }));
+        }));
+    }
+
 }
@@ -0,0 +1,36 @@
+package io.github.leleueri.keyring.codec;
+
+import io.github.leleueri.keyring.bean.AliasPage;
+import io.github.leleueri.keyring.bean.SecretKey;
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TestJsonBeanCodec {
+
+    @Test
+    public void testLocalTransformKeepsTheInstance() {
+        SecretKey key = new SecretKey();
+        key.setAlias("alias");
+        assertSame(key, new JsonBeanCodec<>(SecretKey.class).transform(key));
+    }
+
+    @Test
+    public void testWireRoundTrip() {
+        JsonBeanCodec<AliasPage> codec = new JsonBeanCodec<>(AliasPage.class);
+        AliasPage page = new AliasPage();
+        page.setEntries(Arrays.asList("alias1", "alias2"));
+        page.setNextCursor("alias2");
+
+        // the bean is encoded after some bytes written by the event bus
+        Buffer buffer = Buffer.buffer().appendInt(42);
+        codec.encodeToWire(buffer, page);
+        AliasPage decoded = codec.decodeFromWire(4, buffer);
+
+        assertEquals(page.getEntries(), decoded.getEntries());
+        assertEquals("alias2", decoded.getNextCursor());
+    }
+}
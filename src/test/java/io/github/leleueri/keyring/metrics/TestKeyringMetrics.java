@@ -0,0 +1,45 @@
+package io.github.leleueri.keyring.metrics;
+
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TestKeyringMetrics {
+
+    @Test
+    public void testPrometheusFormat() {
+        KeyringMetrics metrics = new KeyringMetrics();
+        Histogram histogram = metrics.histogram("test_seconds", "Test durations", "operation", "a\"b");
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(50));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        histogram.record(TimeUnit.SECONDS.toNanos(20));
+        metrics.counter("test_total", "Test counter").increment();
+
+        String text = metrics.writePrometheus();
+        assertTrue(text.contains("# TYPE test_seconds histogram\n"));
+        assertTrue(text.contains("test_seconds_bucket{operation=\"a\\\"b\",le=\"1.0E-4\"} 1\n"));
+        assertTrue(text.contains("test_seconds_bucket{operation=\"a\\\"b\",le=\"0.005\"} 2\n"));
+        assertTrue(text.contains("test_seconds_bucket{operation=\"a\\\"b\",le=\"10.0\"} 2\n"));
+        assertTrue(text.contains("test_seconds_bucket{operation=\"a\\\"b\",le=\"+Inf\"} 3\n"));
+        assertTrue(text.contains("test_seconds_count{operation=\"a\\\"b\"} 3\n"));
+        assertTrue(text.contains("# TYPE test_total counter\ntest_total 1\n"));
+    }
+
+    @Test
+    public void testJmx() throws Exception {
+        KeyringMetrics metrics = new KeyringMetrics();
+        metrics.counter("test_jmx_total", "Test counter", "address", "a.b").increment();
+        metrics.enableJmx();
+        ObjectName name = new ObjectName(KeyringMetrics.JMX_DOMAIN + ":type=test_jmx_total,address=" + ObjectName.quote("a.b"));
+        try {
+            assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Count"));
+        } finally {
+            metrics.close();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+}
@@ -0,0 +1,540 @@
+package io.github.leleueri.keyring.provider;
+
+import io.github.leleueri.keyring.bean.Change;
+import io.github.leleueri.keyring.bean.ChangePage;
+import io.github.leleueri.keyring.bean.ListQuery;
+import io.github.leleueri.keyring.bean.SecretKey;
+import io.github.leleueri.keyring.exception.KeyringApplicativeException;
+import io.github.leleueri.keyring.metrics.KeyringMetrics;
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.json.Json;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.crypto.KeyGenerator;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class TestKeystoreProvider {
+
+    private static final String PWD = "simplemotdepasse";
+    private static final String KEY_PWD = "simplemotdepassecle";
+
+    private Path directory;
+    private String path;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory(Paths.get("target"), "provider");
+        path = directory.resolve("keyring.jceks").toString();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File f : directory.toFile().listFiles()) {
+            f.delete();
+        }
+        directory.toFile().delete();
+    }
+
+    private KeystoreProvider journaledProvider(int compaction) {
+        return new KeystoreProvider("JCEKS", PWD, path, KEY_PWD, new SecretKeyCache(10, 0),
+                JceksStorage.StorageMode.JOURNAL, compaction);
+    }
+
+    private KeystoreProvider logProvider(int compaction) {
+        return new KeystoreProvider(new LogStorage(directory.resolve("keyring.db").toString(), KEY_PWD, compaction, new KeyringMetrics()),
+                new SecretKeyCache(10, 0), new KeyringMetrics());
+    }
+
+    private KeystoreProvider mappedProvider(int checkpoint) {
+        return new KeystoreProvider(new MappedStorage(directory.resolve("keyring.map").toString(), KEY_PWD, checkpoint, new KeyringMetrics()),
+                new SecretKeyCache(0, 0), new KeyringMetrics());
+    }
+
+    private SecretKey generateKey(String alias) throws Exception {
+        return generateKey(alias, "AES", 128);
+    }
+
+    private SecretKey generateKey(String alias, String algorithm, int size) throws Exception {
+        KeyGenerator keyGen = KeyGenerator.getInstance(algorithm);
+        keyGen.init(size);
+        final SecretKey key = new SecretKey();
+        key.setAlgorithm(algorithm);
+        key.setAlias(alias);
+        key.setB64Key(Base64.getEncoder().encodeToString(keyGen.generateKey().getEncoded()));
+        return key;
+    }
+
+    private void assertSameKey(SecretKey expected, Optional<SecretKey> actual) {
+        assertTrue(actual.isPresent());
+        assertEquals(expected.getAlgorithm(), actual.get().getAlgorithm());
+        assertArrayEquals(Base64.getMimeDecoder().decode(expected.getB64Key()), Base64.getMimeDecoder().decode(actual.get().getB64Key()));
+    }
+
+    @Test
+    public void testJournalReplay() throws Exception {
+        SecretKey key1 = generateKey("key1");
+        SecretKey key2 = generateKey("key2");
+
+        KeystoreProvider provider = journaledProvider(1000);
+        provider.addSecretKey(key1);
+        provider.addSecretKey(key2);
+        provider.deleteSecretKey("key1");
+        provider.close();
+
+        KeystoreProvider reopened = journaledProvider(1000);
+        assertFalse(reopened.getSecretKey("key1").isPresent());
+        assertSameKey(key2, reopened.getSecretKey("key2"));
+        reopened.close();
+    }
+
+    @Test
+    public void testJournalTornRecordIsDiscarded() throws Exception {
+        SecretKey key1 = generateKey("key1");
+        SecretKey key2 = generateKey("key2");
+
+        KeystoreProvider provider = journaledProvider(1000);
+        provider.addSecretKey(key1);
+        provider.close();
+
+        // simulate a crash in the middle of an append
+        try (FileOutputStream fos = new FileOutputStream(path + ".journal.1", true)) {
+            fos.write(new byte[]{0, 0, 0, 42, 1, 2, 3});
+        }
+
+        KeystoreProvider reopened = journaledProvider(1000);
+        assertSameKey(key1, reopened.getSecretKey("key1"));
+        reopened.addSecretKey(key2);
+        reopened.close();
+
+        KeystoreProvider reopenedAgain = journaledProvider(1000);
+        assertSameKey(key1, reopenedAgain.getSecretKey("key1"));
+        assertSameKey(key2, reopenedAgain.getSecretKey("key2"));
+        reopenedAgain.close();
+    }
+
+    @Test
+    public void testSnapshotWriteFailureIsRolledBack() throws Exception {
+        SecretKey key1 = generateKey("key1");
+        SecretKey key2 = generateKey("key2");
+
+        KeystoreProvider provider = new KeystoreProvider("JCEKS", PWD, path, KEY_PWD, new SecretKeyCache(10, 0));
+        provider.addSecretKey(key1);
+
+        // the temporary file of the snapshot can't be created
+        Path tmp = Files.createDirectory(Paths.get(path + ".tmp"));
+        try {
+            provider.addSecretKey(key2);
+            fail("The keystore file can't be written");
+        } catch (KeyringApplicativeException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        try {
+            provider.deleteSecretKey("key1");
+            fail("The keystore file can't be written");
+        } catch (KeyringApplicativeException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertFalse(provider.getSecretKey("key2").isPresent());
+        assertSameKey(key1, provider.getSecretKey("key1"));
+        assertEquals(Collections.singletonList("key1"), provider.listAlias(new ListQuery()));
+
+        Files.delete(tmp);
+        provider.addSecretKey(key2);
+        provider.close();
+
+        KeystoreProvider reopened = new KeystoreProvider("JCEKS", PWD, path, KEY_PWD);
+        assertSameKey(key1, reopened.getSecretKey("key1"));
+        assertSameKey(key2, reopened.getSecretKey("key2"));
+        reopened.close();
+    }
+
+    @Test
+    public void testJournalCompaction() throws Exception {
+        SecretKey key1 = generateKey("key1");
+        SecretKey key2 = generateKey("key2");
+
+        KeystoreProvider provider = journaledProvider(1000);
+        provider.addSecretKey(key1);
+        provider.addSecretKey(key2);
+        provider.compact();
+        provider.close();
+
+        assertFalse(Files.exists(Paths.get(path + ".journal.1")));
+        assertTrue(Files.exists(Paths.get(path + ".journal.2")));
+
+        // the snapshot alone contains the keys
+        KeystoreProvider snapshot = new KeystoreProvider("JCEKS", PWD, path, KEY_PWD);
+        assertSameKey(key1, snapshot.getSecretKey("key1"));
+        assertSameKey(key2, snapshot.getSecretKey("key2"));
+        snapshot.close();
+    }
+
+    @Test
+    public void testCreationDateSurvivesRestart() throws Exception {
+        SecretKey key1 = generateKey("key1");
+
+        KeystoreProvider provider = journaledProvider(1000);
+        provider.addSecretKey(key1);
+        long creationDate = provider.getKeyMetadata("key1").getCreationDate();
+        String etag = etag(provider, "key1");
+        provider.close();
+        Thread.sleep(20);
+
+        // the record is replayed from the journal
+        KeystoreProvider replayed = journaledProvider(1000);
+        assertEquals(creationDate, replayed.getKeyMetadata("key1").getCreationDate());
+        assertEquals(etag, etag(replayed, "key1"));
+        replayed.compact();
+        replayed.close();
+        Thread.sleep(20);
+
+        // the key is read from the compacted keystore file and its index
+        KeystoreProvider compacted = new KeystoreProvider("JCEKS", PWD, path, KEY_PWD);
+        assertEquals(creationDate, compacted.getKeyMetadata("key1").getCreationDate());
+        assertEquals(etag, etag(compacted, "key1"));
+        compacted.close();
+    }
+
+    private String etag(KeystoreProvider provider, String alias) {
+        EncodedKey encoded = provider.encode(provider.findSecretKey(alias));
+        try {
+            return encoded.getEtag();
+        } finally {
+            encoded.release();
+        }
+    }
+
+    @Test
+    public void testCompactionDuringBackgroundCompaction() throws Exception {
+        // each write triggers a background compaction
+        KeystoreProvider provider = journaledProvider(1);
+        List<SecretKey> keys = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            SecretKey key = generateKey("key" + i);
+            keys.add(key);
+            provider.addSecretKey(key);
+            provider.compact();
+        }
+        provider.close();
+
+        KeystoreProvider reopened = journaledProvider(1000);
+        for (SecretKey key : keys) {
+            assertSameKey(key, reopened.getSecretKey(key.getAlias()));
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void testAliasIndexQueries() throws Exception {
+        KeystoreProvider provider = new KeystoreProvider("JCEKS", PWD, path, KEY_PWD);
+        provider.addSecretKey(generateKey("tenant1.a"));
+        provider.addSecretKey(generateKey("tenant1.b", "HmacSHA256", 256));
+        provider.addSecretKey(generateKey("tenant10.a"));
+        provider.addSecretKey(generateKey("tenant2.a", "HmacSHA256", 256));
+        provider.deleteSecretKey("tenant10.a");
+
+        ListQuery query = new ListQuery();
+        query.setPrefix("tenant1");
+        assertEquals(Arrays.asList("tenant1.a", "tenant1.b"), provider.listAlias(query));
+
+        query = new ListQuery();
+        query.setAlgorithm("hmacsha256");
+        assertEquals(Arrays.asList("tenant1.b", "tenant2.a"), provider.listAlias(query));
+        query.setCursor("tenant1.b");
+        assertEquals(Arrays.asList("tenant2.a"), provider.listAlias(query));
+
+        query = new ListQuery();
+        query.setCreatedAfter(System.currentTimeMillis() + 60_000);
+        assertTrue(provider.listAlias(query).isEmpty());
+        provider.close();
+
+        // the index is saved with the keystore
+        assertTrue(Files.exists(Paths.get(path + ".index")));
+        KeystoreProvider reopened = new KeystoreProvider("JCEKS", PWD, path, KEY_PWD);
+        query = new ListQuery();
+        query.setPrefix("tenant");
+        query.setAlgorithm("AES");
+        assertEquals(Arrays.asList("tenant1.a"), reopened.listAlias(query));
+        reopened.close();
+
+        // a missing index is rebuilt from the keystore
+        Files.delete(Paths.get(path + ".index"));
+        KeystoreProvider rebuilt = new KeystoreProvider("JCEKS", PWD, path, KEY_PWD);
+        assertEquals(Arrays.asList("tenant1.a"), rebuilt.listAlias(query));
+        rebuilt.close();
+    }
+
+    @Test
+    public void testLogStorage() throws Exception {
+        SecretKey key1 = generateKey("key1");
+        SecretKey key2 = generateKey("key2", "HmacSHA256", 256);
+
+        KeystoreProvider provider = logProvider(1000);
+        provider.addSecretKey(key1);
+        provider.addSecretKey(key2);
+        provider.deleteSecretKey("key1");
+        assertFalse(provider.getSecretKey("key1").isPresent());
+        assertSameKey(key2, provider.getSecretKey("key2"));
+        long creationDate = provider.getKeyMetadata("key2").getCreationDate();
+        provider.close();
+
+        KeystoreProvider reopened = logProvider(1000);
+        assertFalse(reopened.getSecretKey("key1").isPresent());
+        assertSameKey(key2, reopened.getSecretKey("key2"));
+        assertEquals(creationDate, reopened.getKeyMetadata("key2").getCreationDate());
+        ListQuery query = new ListQuery();
+        query.setAlgorithm("HmacSHA256");
+        assertEquals(Arrays.asList("key2"), reopened.listAlias(query));
+
+        // the compaction only keeps the live keys
+        reopened.compact();
+        reopened.close();
+        assertFalse(Files.exists(directory.resolve("keyring.db.log.1")));
+        assertTrue(Files.exists(directory.resolve("keyring.db.log.2")));
+
+        KeystoreProvider compacted = logProvider(1000);
+        assertEquals(Arrays.asList("key2"), compacted.listAlias(new ListQuery()));
+        assertSameKey(key2, compacted.getSecretKey("key2"));
+        assertEquals(creationDate, compacted.getKeyMetadata("key2").getCreationDate());
+        compacted.close();
+    }
+
+    @Test
+    public void testMappedStorage() throws Exception {
+        // enough keys to grow the table (1024 slots at first)
+        List<SecretKey> keys = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            keys.add(generateKey("key" + i));
+        }
+        KeystoreProvider provider = mappedProvider(100_000);
+        provider.importSecretKeys(keys);
+        for (int i = 0; i < 500; i++) {
+            provider.deleteSecretKey("key" + i);
+        }
+        SecretKey replaced = generateKey("key999", "HmacSHA256", 256);
+        provider.commit(Collections.singletonList(KeystoreMutation.put(replaced)));
+        KeystoreMutation tooLong = KeystoreMutation.put(generateKey(String.join("", Collections.nCopies(200, "a"))));
+        provider.commit(Collections.singletonList(tooLong));
+        assertEquals(KeystoreMutation.Status.INVALID, tooLong.getStatus());
+        SecretKey notBase64 = generateKey("notBase64");
+        notBase64.setB64Key("not a base64 value");
+        KeystoreMutation invalid = KeystoreMutation.put(notBase64);
+        provider.commit(Collections.singletonList(invalid));
+        assertEquals(KeystoreMutation.Status.INVALID, invalid.getStatus());
+        long creationDate = provider.getKeyMetadata("key500").getCreationDate();
+        provider.close();
+
+        // the changes not yet checkpointed are replayed from the journal
+        KeystoreProvider reopened = mappedProvider(100_000);
+        assertEquals(500, reopened.listAlias().size());
+        assertFalse(reopened.getSecretKey("key0").isPresent());
+        assertSameKey(keys.get(500), reopened.getSecretKey("key500"));
+        assertSameKey(replaced, reopened.getSecretKey("key999"));
+        assertEquals(creationDate, reopened.getKeyMetadata("key500").getCreationDate());
+
+        // the rebuild drops the deleted slots and the journal
+        reopened.compact();
+        reopened.close();
+        assertFalse(Files.exists(directory.resolve("keyring.map.wal.1")));
+
+        KeystoreProvider compacted = mappedProvider(100_000);
+        assertEquals(500, compacted.listAlias().size());
+        assertSameKey(keys.get(750), compacted.getSecretKey("key750"));
+        assertFalse(compacted.getSecretKey("key1000").isPresent());
+        compacted.close();
+    }
+
+    @Test
+    public void testOffHeapCache() throws Exception {
+        KeyArena arena = new KeyArena();
+        KeystoreProvider provider = new KeystoreProvider(new LogStorage(directory.resolve("keyring.db").toString(), KEY_PWD, 100, new KeyringMetrics()),
+                new SecretKeyCache(2, 0, arena), new KeyringMetrics());
+        SecretKey key1 = generateKey("key1");
+        SecretKey key2 = generateKey("key2");
+        SecretKey key3 = generateKey("key3");
+        provider.addSecretKey(key1);
+        provider.addSecretKey(key2);
+        provider.addSecretKey(key3);
+
+        assertNull(provider.getEncodedSecretKey("key1"));
+        assertSameKey(key1, provider.getSecretKey("key1"));
+        // served from the block of the arena
+        assertSameKey(key1, provider.getSecretKey("key1"));
+        EncodedKey encoded = provider.getEncodedSecretKey("key1");
+        assertNotNull(encoded);
+        assertEquals(provider.encode(provider.findSecretKey("key1")).getEtag(), encoded.getEtag());
+        assertSameKey(key1, Optional.of(Json.decodeValue(encoded.getBody().toString(), SecretKey.class)));
+        assertEquals(KeyArena.MIN_BLOCK << 1, arena.getUsedBytes());
+
+        // key1 is evicted by key3, key2 is deleted
+        provider.getSecretKey("key2");
+        provider.getSecretKey("key3");
+        assertNull(provider.getEncodedSecretKey("key1"));
+        // the block of key1 is kept until the encoded key is released
+        assertEquals(3 * (KeyArena.MIN_BLOCK << 1), arena.getUsedBytes());
+        assertSameKey(key1, Optional.of(Json.decodeValue(encoded.getBody().toString(), SecretKey.class)));
+        ByteBuf written = encoded.getBody().getByteBuf();
+        encoded.release();
+        assertEquals(3 * (KeyArena.MIN_BLOCK << 1), arena.getUsedBytes());
+        // then until the responses writing it are written
+        written.release();
+        assertEquals(2 * (KeyArena.MIN_BLOCK << 1), arena.getUsedBytes());
+        provider.deleteSecretKey("key2");
+        assertEquals(KeyArena.MIN_BLOCK << 1, arena.getUsedBytes());
+        provider.close();
+        assertEquals(0, arena.getUsedBytes());
+        assertEquals(KeyArena.SLAB_SIZE, arena.getReservedBytes());
+    }
+
+    @Test
+    public void testConcurrentCache() throws Exception {
+        KeyArena arena = new KeyArena();
+        SecretKeyCache cache = new SecretKeyCache(10, 0, arena);
+        List<SecretKey> keys = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            keys.add(generateKey("key" + i));
+        }
+        // readers and writers over more aliases than the cache holds
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < 8; t++) {
+            final int seed = t;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < 5_000; i++) {
+                        SecretKey key = keys.get((i * 7 + seed) % keys.size());
+                        SecretKey cached = cache.get(key.getAlias());
+                        if (cached == null) {
+                            cache.put(key.getAlias(), key, 0);
+                        } else {
+                            assertEquals(key.getB64Key(), cached.getB64Key());
+                        }
+                        EncodedKey encoded = cache.getEncoded(key.getAlias());
+                        if (encoded != null) {
+                            assertEquals(key.getB64Key(), Json.decodeValue(encoded.getBody().toString(), SecretKey.class).getB64Key());
+                            encoded.release();
+                        }
+                        if (i % 100 == seed) {
+                            cache.invalidate(key.getAlias());
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Collections.emptyList(), failures);
+        // the encoded keys returned are counted as hits too
+        assertTrue(cache.getStats().getHits() + cache.getStats().getMisses() >= 8 * 5_000);
+        assertTrue(cache.getStats().getSize() <= 10);
+        assertTrue(cache.getStats().getEvictions() > 0);
+        // the blocks of the entries evicted are all released
+        assertEquals(cache.getStats().getSize() * (KeyArena.MIN_BLOCK << 1), arena.getUsedBytes());
+        cache.invalidateAll();
+        assertEquals(0, arena.getUsedBytes());
+    }
+
+    @Test
+    public void testKeyArenaWipesReleasedBlocks() throws Exception {
+        KeyArena arena = new KeyArena();
+        byte[] content = new byte[100];
+        Arrays.fill(content, (byte) 42);
+        KeyArena.Block block = arena.allocate(content);
+        ByteBuffer view = block.content();
+        assertEquals(100, block.length());
+        assertEquals(128, arena.getUsedBytes());
+        arena.release(block);
+        arena.release(block);
+        assertEquals(0, arena.getUsedBytes());
+        while (view.hasRemaining()) {
+            assertEquals(0, view.get());
+        }
+        // the block is reused by the next allocation of its class
+        assertEquals(KeyArena.SLAB_SIZE, arena.getReservedBytes());
+        arena.allocate(new byte[65]);
+        assertEquals(KeyArena.SLAB_SIZE, arena.getReservedBytes());
+        assertNull(arena.allocate(new byte[KeyArena.MAX_BLOCK + 1]));
+    }
+
+    @Test
+    public void testLazyOpenAndWarmUp() throws Exception {
+        String db = directory.resolve("keyring.db").toString();
+        KeystoreProvider provider = new KeystoreProvider(new LogStorage(db, KEY_PWD, 100, new KeyringMetrics()),
+                new SecretKeyCache(2, 0), new KeyringMetrics(), false);
+        assertFalse(provider.isOpen());
+        provider.open();
+        assertTrue(provider.isOpen());
+        SecretKey key1 = generateKey("key1");
+        SecretKey key2 = generateKey("key2");
+        provider.addSecretKey(key1);
+        provider.addSecretKey(key2);
+        provider.addSecretKey(generateKey("key3"));
+        provider.getSecretKey("key1");
+        provider.getSecretKey("key3");
+        provider.getSecretKey("key2");
+        assertEquals(Arrays.asList("key2", "key3"), provider.getCachedAliases());
+        provider.close();
+
+        KeystoreProvider reopened = new KeystoreProvider(new LogStorage(db, KEY_PWD, 100, new KeyringMetrics()),
+                new SecretKeyCache(2, 0), new KeyringMetrics(), false);
+        reopened.open();
+        // stops once the cache is full, the unknown aliases are ignored
+        assertEquals(2, reopened.warmUp(Arrays.asList("unknown", "key2", "key1", "key3")));
+        assertEquals(0, reopened.getCacheStats().getHits());
+        assertSameKey(key2, reopened.getSecretKey("key2"));
+        assertSameKey(key1, reopened.getSecretKey("key1"));
+        assertEquals(2, reopened.getCacheStats().getHits());
+        reopened.close();
+    }
+
+    @Test
+    public void testChangeFeed() throws Exception {
+        KeystoreProvider provider = logProvider(100);
+        ChangeFeed feed = new ChangeFeed(3, new KeyringMetrics());
+        provider.addCommitListener(feed::append);
+        long start = feed.getRevision();
+        assertEquals(0, feed.since(start, 10).getChanges().size());
+
+        provider.addSecretKey(generateKey("key1"));
+        provider.addSecretKey(generateKey("key2"));
+        provider.deleteSecretKey("key1");
+        // the last change of each alias, in the order of the revisions
+        ChangePage page = feed.since(start, 10);
+        assertEquals(start + 3, page.getRevision());
+        assertEquals(Arrays.asList("key2", "key1"), Arrays.asList(page.getChanges().get(0).getAlias(), page.getChanges().get(1).getAlias()));
+        assertEquals(Change.PUT, page.getChanges().get(0).getType());
+        assertEquals(Change.DELETE, page.getChanges().get(1).getType());
+        // the page ends at the limit
+        page = feed.since(start, 1);
+        assertEquals(start + 1, page.getRevision());
+        assertEquals("key1", page.getChanges().get(0).getAlias());
+        assertEquals(Change.PUT, page.getChanges().get(0).getType());
+
+        // the oldest change is overwritten, the revisions before it are lost
+        provider.addSecretKey(generateKey("key3"));
+        assertNull(feed.since(start, 10));
+        assertEquals(3, feed.since(start + 1, 10).getChanges().size());
+        assertNull(feed.since(start + 5, 10));
+        provider.close();
+    }
+}
@@ -0,0 +1,82 @@
+package io.github.leleueri.keyring.replication;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Transport between nodes started in the same JVM (one Vertx instance per node), a node can be cut from the others
+ * to simulate a partition.
+ */
+public class InProcessTransport implements ReplicationTransport {
+
+    private static final Map<String, InProcessTransport> NODES = new ConcurrentHashMap<>();
+    private static final Set<String> PARTITIONED = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Messages delivered, as encoded on the wire
+     */
+    static final Queue<String> DELIVERED = new ConcurrentLinkedQueue<>();
+
+    private String node;
+    private Context context;
+    private Handler<JsonObject> handler;
+
+    /**
+     * Drops the messages sent by or to the node until {@link #heal(String)}
+     */
+    public static void partition(String node) {
+        PARTITIONED.add(node);
+    }
+
+    public static void heal(String node) {
+        PARTITIONED.remove(node);
+    }
+
+    @Override
+    public void start(Vertx vertx, String node, JsonObject config, Handler<JsonObject> handler) {
+        this.node = node;
+        this.context = vertx.getOrCreateContext();
+        this.handler = handler;
+        NODES.put(node, this);
+    }
+
+    @Override
+    public void publish(JsonObject message) {
+        message.put(NODE, node);
+        for (String other : NODES.keySet()) {
+            if (!other.equals(node)) {
+                deliver(other, message);
+            }
+        }
+    }
+
+    @Override
+    public void send(String node, JsonObject message) {
+        deliver(node, message.put(NODE, this.node));
+    }
+
+    private void deliver(String to, JsonObject message) {
+        InProcessTransport target = NODES.get(to);
+        if (target == null || PARTITIONED.contains(node) || PARTITIONED.contains(to)) {
+            return;
+        }
+        // copied like a message encoded on the wire
+        JsonObject copy = message.copy();
+        DELIVERED.add(copy.encode());
+        target.context.runOnContext(v -> target.handler.handle(copy));
+    }
+
+    @Override
+    public void close() {
+        NODES.remove(node, this);
+        PARTITIONED.remove(node);
+    }
+}
@@ -0,0 +1,170 @@
+package io.github.leleueri.keyring.replication;
+
+import io.github.leleueri.keyring.MainVerticle;
+import io.github.leleueri.keyring.bean.SecretKey;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.crypto.KeyGenerator;
+import java.net.ServerSocket;
+import java.nio.file.Paths;
+import java.util.Base64;
+
+import static io.github.leleueri.keyring.ConfigConstants.*;
+
+/**
+ * Three nodes in the same JVM replicating through the {@link InProcessTransport}
+ */
+@RunWith(VertxUnitRunner.class)
+public class TestReplication {
+
+    private static final String[] NODES = {"a", "b", "c"};
+
+    private Vertx[] vertx = new Vertx[NODES.length];
+    private int[] ports = new int[NODES.length];
+    private HttpClient httpClient;
+
+    @Before
+    public void setUp(TestContext context) throws Exception {
+        for (int i = 0; i < NODES.length; i++) {
+            ServerSocket socket = new ServerSocket(0);
+            ports[i] = socket.getLocalPort();
+            socket.close();
+
+            final String path = "target/ReplicaKeystore-" + NODES[i] + ".jceks";
+            Paths.get(path).toFile().delete();
+            Paths.get(path + ".replica").toFile().delete();
+
+            DeploymentOptions options = new DeploymentOptions()
+                    .setConfig(new JsonObject().put("http.port", ports[i])
+                            .put(SERVER_HTTP_INSTANCES, 1)
+                            .put(APP_KEYSTORE_READERS, 1)
+                            .put(APP_KEYSTORE_PATH, path)
+                            .put(APP_KEYSTORE_PWD, "simplemotdepasse")
+                            .put(APP_KEYSTORE_SECRET_KEY_PWD, "simplemotdepassecle")
+                            .put(CLUSTER_ENABLED, true)
+                            .put(CLUSTER_NODE_ID, NODES[i])
+                            .put(CLUSTER_TRANSPORT, InProcessTransport.class.getName())
+                            .put(CLUSTER_SYNC_INTERVAL, 200));
+
+            vertx[i] = Vertx.vertx();
+            vertx[i].deployVerticle(MainVerticle.class.getName(), options, context.asyncAssertSuccess());
+        }
+        httpClient = vertx[0].createHttpClient();
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        httpClient.close();
+        for (Vertx node : vertx) {
+            node.close(context.asyncAssertSuccess());
+        }
+    }
+
+    @Test
+    public void testWriteReplicated(TestContext context) throws Exception {
+        SecretKey key = newKey("replicated");
+        postKey(context, 0, key);
+
+        for (int i = 1; i < NODES.length; i++) {
+            awaitStatus(context, i, key.getAlias(), 200);
+        }
+        final Async asyncRead = context.async();
+        httpClient.getNow(ports[2], "localhost", "/keyring/secret-key/" + key.getAlias(), response ->
+                response.bodyHandler(body -> {
+                    context.assertEquals(key.getB64Key(), Json.decodeValue(body.toString(), SecretKey.class).getB64Key());
+                    asyncRead.complete();
+                }));
+        asyncRead.awaitSuccess();
+
+        // the key material is sealed in the messages
+        context.assertTrue(InProcessTransport.DELIVERED.stream().anyMatch(message -> message.contains(key.getAlias())));
+        context.assertFalse(InProcessTransport.DELIVERED.stream().anyMatch(message -> message.contains(key.getB64Key())));
+    }
+
+    @Test
+    public void testConvergenceAfterPartition(TestContext context) throws Exception {
+        SecretKey deleted = newKey("deleted");
+        postKey(context, 0, deleted);
+        awaitStatus(context, 2, deleted.getAlias(), 200);
+
+        InProcessTransport.partition(NODES[2]);
+        try {
+            SecretKey created = newKey("created");
+            postKey(context, 0, created);
+            final Async asyncDelete = context.async();
+            httpClient.delete(ports[1], "localhost", "/keyring/secret-key/" + deleted.getAlias(), response -> {
+                context.assertEquals(204, response.statusCode());
+                asyncDelete.complete();
+            }).end();
+            asyncDelete.awaitSuccess();
+            awaitStatus(context, 0, deleted.getAlias(), 404);
+
+            // the partitioned node still serves its replica
+            awaitStatus(context, 2, deleted.getAlias(), 200);
+            awaitStatus(context, 2, created.getAlias(), 404);
+
+            InProcessTransport.heal(NODES[2]);
+            // repaired by the anti-entropy, the messages sent during the partition are lost
+            awaitStatus(context, 2, created.getAlias(), 200);
+            awaitStatus(context, 2, deleted.getAlias(), 404);
+        } finally {
+            InProcessTransport.heal(NODES[2]);
+        }
+    }
+
+    private SecretKey newKey(String prefix) throws Exception {
+        KeyGenerator keyGen = KeyGenerator.getInstance("AES");
+        keyGen.init(128);
+        javax.crypto.SecretKey secretKey = keyGen.generateKey();
+
+        SecretKey key = new SecretKey();
+        key.setAlgorithm("AES");
+        key.setAlias(prefix + System.nanoTime());
+        key.setFormat(secretKey.getFormat());
+        key.setB64Key(new String(Base64.getEncoder().encode(secretKey.getEncoded())));
+        return key;
+    }
+
+    private void postKey(TestContext context, int node, SecretKey key) {
+        final Async asyncPost = context.async();
+        httpClient.post(ports[node], "localhost", "/keyring/secret-keys").putHeader("Content-Type", "application/json")
+                .handler(response -> {
+                    context.assertEquals(201, response.statusCode());
+                    asyncPost.complete();
+                }).end(Json.encode(key));
+        asyncPost.awaitSuccess();
+    }
+
+    /**
+     * Reads the key on the node until the expected status is returned, fails after 10 seconds
+     */
+    private void awaitStatus(TestContext context, int node, String alias, int status) {
+        final Async async = context.async();
+        long deadline = System.currentTimeMillis() + 10_000;
+        poll(context, async, node, alias, status, deadline);
+        async.awaitSuccess(15_000);
+    }
+
+    private void poll(TestContext context, Async async, int node, String alias, int status, long deadline) {
+        httpClient.getNow(ports[node], "localhost", "/keyring/secret-key/" + alias, response -> {
+            if (response.statusCode() == status) {
+                async.complete();
+            } else if (System.currentTimeMillis() > deadline) {
+                context.fail("Node " + NODES[node] + " returned " + response.statusCode() + " for " + alias + " instead of " + status);
+            } else {
+                vertx[0].setTimer(50, id -> poll(context, async, node, alias, status, deadline));
+            }
+        });
+    }
+}
@@ -0,0 +1,189 @@
+package io.github.leleueri.keyring.tls;
+
+import io.github.leleueri.keyring.MainVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static io.github.leleueri.keyring.ConfigConstants.*;
+
+/**
+ * Server with the client authentication, the stores are generated with the keytool of the JDK running the tests.
+ */
+@RunWith(VertxUnitRunner.class)
+public class TestServerSslContext {
+
+    private static final Path STORES = Paths.get("target/tls");
+    private static final Path SERVER_STORE = STORES.resolve("server.jks");
+    private static final Path CLIENT_STORE = STORES.resolve("client.jks");
+    private static final String PWD = "simplemotdepasse";
+
+    private Vertx vertx;
+    private SSLContext clientContext;
+    private int port;
+
+    /**
+     * Each store holds its key pair and the certificate of the peer.
+     */
+    @BeforeClass
+    public static void generateStores() throws Exception {
+        Files.createDirectories(STORES);
+        Files.deleteIfExists(SERVER_STORE);
+        Files.deleteIfExists(CLIENT_STORE);
+        keytool("-genkeypair", "-alias", "server", "-keyalg", "RSA", "-dname", "CN=localhost", "-ext", "SAN=dns:localhost",
+                "-keystore", SERVER_STORE.toString());
+        keytool("-genkeypair", "-alias", "client", "-keyalg", "RSA", "-dname", "CN=client", "-keystore", CLIENT_STORE.toString());
+        keytool("-exportcert", "-alias", "server", "-keystore", SERVER_STORE.toString(), "-file", STORES.resolve("server.cer").toString());
+        keytool("-exportcert", "-alias", "client", "-keystore", CLIENT_STORE.toString(), "-file", STORES.resolve("client.cer").toString());
+        keytool("-importcert", "-noprompt", "-alias", "client", "-keystore", SERVER_STORE.toString(), "-file", STORES.resolve("client.cer").toString());
+        keytool("-importcert", "-noprompt", "-alias", "server", "-keystore", CLIENT_STORE.toString(), "-file", STORES.resolve("server.cer").toString());
+    }
+
+    private static void keytool(String... args) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "keytool").toString());
+        command.addAll(Arrays.asList(args));
+        command.addAll(Arrays.asList("-storetype", "JKS", "-storepass", PWD, "-keypass", PWD));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.INHERIT).start();
+        if (process.waitFor() != 0) {
+            throw new IOException("keytool " + args[0] + " failed");
+        }
+    }
+
+    @Before
+    public void setUp(TestContext context) throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        final String path = "target/KeyringTlsKeystore.jceks";
+        Paths.get(path).toFile().delete();
+
+        DeploymentOptions options = new DeploymentOptions()
+                .setConfig(new JsonObject().put("http.port", port)
+                        .put(SERVER_HTTP_INSTANCES, 2)
+                        .put(SERVER_USE_SSL, true)
+                        .put(SERVER_SSL_KEYSTORE_TYPE, SERVER_SSL_TYPE_JKS)
+                        .put(SERVER_SSL_KEYSTORE_PATH, SERVER_STORE.toString())
+                        .put(SERVER_SSL_KEYSTORE_PWD, PWD)
+                        .put(SERVER_SSL_CLIENT_AUTH, true)
+                        .put(SERVER_SSL_TRUSTSTORE_TYPE, SERVER_SSL_TYPE_JKS)
+                        .put(SERVER_SSL_TRUSTSTORE_PATH, SERVER_STORE.toString())
+                        .put(SERVER_SSL_TRUSTSTORE_PWD, PWD)
+                        .put(SERVER_SSL_RELOAD_INTERVAL, 1)
+                        .put(APP_KEYSTORE_PATH, path)
+                        .put(APP_KEYSTORE_PWD, "simplemotdepasse")
+                        .put(APP_KEYSTORE_SECRET_KEY_PWD, "simplemotdepassecle"));
+
+        vertx = Vertx.vertx();
+        vertx.deployVerticle(MainVerticle.class.getName(), options, context.asyncAssertSuccess());
+
+        KeyStore clientStore = KeyStore.getInstance("JKS");
+        try (InputStream in = Files.newInputStream(CLIENT_STORE)) {
+            clientStore.load(in, PWD.toCharArray());
+        }
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(clientStore, PWD.toCharArray());
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(clientStore);
+        // TLS 1.2 whatever the JDK (the recent ones negotiate TLS 1.3 by default) so the test checks the same
+        // handshakes everywhere ; the server resumes the sessions from its cache (JDK 8) or from tickets (JDK 13+)
+        clientContext = SSLContext.getInstance("TLSv1.2");
+        clientContext.init(keyManagers.getKeyManagers(), trustManagers.getTrustManagers(), null);
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    private long metric(String metrics, String sample) {
+        Matcher matcher = Pattern.compile("^" + Pattern.quote(sample) + " (\\d+)", Pattern.MULTILINE).matcher(metrics);
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+
+    /**
+     * GET on a new connection, closed by the client once the response is read : the client offers the session of
+     * its previous connection. The JDK invalidates the session of a connection closed by the server before the
+     * close_notify of the client, it could not be resumed.
+     *
+     * @return the body of the response
+     */
+    private String get(TestContext context, String path, int status) throws IOException {
+        try (SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket("localhost", port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            context.assertTrue(in.readLine().startsWith("HTTP/1.1 " + status + " "));
+            int length = 0;
+            for (String header = in.readLine(); !header.isEmpty(); header = in.readLine()) {
+                if (header.toLowerCase().startsWith("content-length:")) {
+                    length = Integer.parseInt(header.substring("content-length:".length()).trim());
+                }
+            }
+            char[] body = new char[length];
+            int read = 0;
+            while (read < length) {
+                read += in.read(body, read, length - read);
+            }
+            return new String(body);
+        }
+    }
+
+    private String getMetrics(TestContext context) throws IOException {
+        return get(context, "/metrics", 200);
+    }
+
+    @Test
+    public void testSessionResumptionAndReload(TestContext context) throws Exception {
+        for (int i = 0; i < 3; i++) {
+            get(context, "/keyring/secret-key/unknown", 404);
+        }
+        String metrics = getMetrics(context);
+        // the first connection negotiates the session, the next ones resume it
+        context.assertEquals(1L, metric(metrics, "keyring_tls_handshakes_total{type=\"full\"}"));
+        context.assertEquals(3L, metric(metrics, "keyring_tls_handshakes_total{type=\"resumed\"}"));
+        context.assertEquals(1L, metric(metrics, "keyring_tls_client_validation_seconds_count"));
+
+        // a modified store is reloaded by a new context, without the sessions cached by the previous one
+        Files.setLastModifiedTime(SERVER_STORE, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (metric(metrics, "keyring_tls_reloads_total{result=\"success\"}") < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(200);
+            metrics = getMetrics(context);
+        }
+        context.assertEquals(1L, metric(metrics, "keyring_tls_reloads_total{result=\"success\"}"));
+        // the next connection can't resume its session
+        metrics = getMetrics(context);
+        context.assertEquals(2L, metric(metrics, "keyring_tls_handshakes_total{type=\"full\"}"));
+    }
+}